@@ -0,0 +1,283 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.eluder.coveralls.maven.plugin.domain.PersistentSourceCache;
+import org.eluder.coveralls.maven.plugin.domain.SourceCache;
+import org.eluder.coveralls.maven.plugin.domain.SourceIndex;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.httpclient.HttpSourceFetcher;
+
+/**
+ * Base of the goals that parse coverage reports. Holds the parameters for loading sources and
+ * merging coverage, shared by the Coveralls goals and the goals that only prepare coverage.
+ */
+public abstract class AbstractCoverageMojo extends AbstractMojo {
+
+    /**
+     * Source directories.
+     */
+    @Parameter(property = "sourceDirectories")
+    protected List<File> sourceDirectories;
+
+    /**
+     * Source urls.
+     */
+    @Parameter(property = "sourceUrls")
+    protected List<URL> sourceUrls;
+
+    /**
+     * Source file encoding.
+     */
+    @Parameter(property = "sourceEncoding", defaultValue = "${project.build.sourceEncoding}")
+    protected String sourceEncoding;
+
+    /**
+     * Maximum number of coverage reports parsed concurrently. The Cobertura report is split to
+     * shards that are parsed concurrently when the byte scanner is enabled. Values less than 2 parse
+     * the reports sequentially.
+     */
+    @Parameter(property = "parallelism", defaultValue = "1")
+    protected int parallelism;
+
+    /**
+     * Parse XML coverage reports with the memory mapped byte scanner instead of StAX. Reports in
+     * encodings not supported by the scanner are parsed with StAX.
+     */
+    @Parameter(property = "byteScanner", defaultValue = "false")
+    protected boolean byteScanner;
+
+    /**
+     * How the hits of a line covered by multiple merged reports are merged, <code>max</code> or
+     * <code>sum</code>.
+     */
+    @Parameter(property = "mergeHits", defaultValue = "max")
+    protected String mergeHits;
+
+    /**
+     * Megabytes of merged coverage buffered in memory before spilling to disk.
+     */
+    @Parameter(property = "mergeMemoryBudget", defaultValue = "64")
+    protected int mergeMemoryBudget;
+
+    /**
+     * Submit the MD5 digest of each source file instead of the source content.
+     */
+    @Parameter(property = "sourceDigest", defaultValue = "false")
+    protected boolean sourceDigest;
+
+    /**
+     * Index the source directories once before parsing instead of checking each source directory
+     * for every source file. Duplicate source paths in different source directories are reported.
+     */
+    @Parameter(property = "sourceIndex", defaultValue = "false")
+    protected boolean sourceIndex;
+
+    /**
+     * Maximum estimated size in bytes of the source cache shared by all executions in the JVM.
+     * The largest size of the executions is used. Zero disables the cache for this execution.
+     */
+    @Parameter(property = "sourceCacheSize", defaultValue = "0")
+    protected long sourceCacheSize;
+
+    /**
+     * Persist the size, modification time, digest, line count and content of loaded sources
+     * between builds, and read unchanged sources from the persisted cache.
+     */
+    @Parameter(property = "persistentSourceCache", defaultValue = "false")
+    protected boolean persistentSourceCache;
+
+    /**
+     * Index file of the persistent source cache.
+     */
+    @Parameter(property = "persistentSourceCacheFile", defaultValue = "${project.build.directory}/coveralls-sources.cache")
+    protected File persistentSourceCacheFile;
+
+    /**
+     * Maximum number of upcoming sources loaded in the background while parsing XML coverage
+     * reports. Zero loads sources only when parsed.
+     */
+    @Parameter(property = "sourcePrefetch", defaultValue = "0")
+    protected int sourcePrefetch;
+
+    /**
+     * Maximum number of concurrent connections to fetch sources from http source urls.
+     */
+    @Parameter(property = "sourceUrlConnections", defaultValue = "4")
+    protected int sourceUrlConnections;
+
+    /**
+     * Connect and read timeout in milliseconds to fetch sources from http source urls.
+     */
+    @Parameter(property = "sourceUrlTimeout", defaultValue = "10000")
+    protected int sourceUrlTimeout;
+
+    /**
+     * Directory to cache sources fetched from http source urls. Cached sources are revalidated with
+     * the ETag and Last-Modified headers of the server.
+     */
+    @Parameter(property = "sourceUrlCacheDirectory", defaultValue = "${project.build.directory}/coveralls-sources")
+    protected File sourceUrlCacheDirectory;
+
+    /**
+     * Skip the plugin execution.
+     */
+    @Parameter(property = "coveralls.skip", defaultValue = "false")
+    protected boolean skip;
+
+    /**
+     * Maven project for runtime value resolution.
+     */
+    @Component
+    protected MavenProject project;
+
+    /**
+     * Logs and returns whether the plugin execution is skipped.
+     *
+     * @return <code>true</code> if the execution is skipped
+     */
+    protected final boolean isSkipped() {
+        if (skip) {
+            getLog().info("Skip property set, skipping plugin execution");
+        }
+        return skip;
+    }
+
+    /**
+     * @return source loader to create source files
+     * @throws IOException if an I/O error occurs
+     */
+    protected SourceLoader createSourceLoader() throws IOException {
+        return configureSourceLoader(new SourceLoader(sourceDirectories, sourceUrls, sourceEncoding), sourceDirectories, sourceUrls);
+    }
+    
+    /**
+     * Applies the source loading options to a source loader.
+     *
+     * @param sourceLoader the source loader to configure
+     * @param directories the source directories of the loader
+     * @param urls the source urls of the loader
+     * @return the configured source loader, the loader is closed if the options cannot be applied
+     * @throws IOException if an I/O error occurs
+     */
+    protected final SourceLoader configureSourceLoader(final SourceLoader sourceLoader, final List<File> directories, final List<URL> urls) throws IOException {
+        try {
+            return applySourceOptions(sourceLoader, directories, urls);
+        } catch (IOException ex) {
+            sourceLoader.close();
+            throw ex;
+        } catch (RuntimeException ex) {
+            sourceLoader.close();
+            throw ex;
+        }
+    }
+
+    private SourceLoader applySourceOptions(final SourceLoader sourceLoader, final List<File> directories, final List<URL> urls) throws IOException {
+        sourceLoader.withSourceDigest(sourceDigest);
+        sourceLoader.withPrefetchWindow(Math.max(sourcePrefetch, 0));
+        if (sourceCacheSize > 0) {
+            SourceCache cache = SourceCache.getShared();
+            cache.growMaxBytes(sourceCacheSize);
+            sourceLoader.withSourceCache(cache);
+        }
+        if (persistentSourceCache) {
+            PersistentSourceCache cache = PersistentSourceCache.open(persistentSourceCacheFile, sourceEncoding);
+            getLog().info("Opened persistent source cache " + persistentSourceCacheFile.getAbsolutePath() + " with " + cache.getSize() + " sources");
+            sourceLoader.withPersistentSourceCache(cache);
+        }
+        if (sourceIndex && directories != null && !directories.isEmpty()) {
+            long now = System.currentTimeMillis();
+            SourceIndex index = SourceIndex.build(directories, parallelism);
+            for (Entry<String, List<File>> duplicate : index.getDuplicates().entrySet()) {
+                getLog().warn("Source file " + duplicate.getKey() + " found from multiple source directories, using first of " + duplicate.getValue());
+            }
+            getLog().info("Indexed " + index.size() + " files from " + directories.size() + " source directories in " + (System.currentTimeMillis() - now) + "ms");
+            sourceLoader.withSourceIndex(index);
+        }
+        if (urls != null && !urls.isEmpty()) {
+            sourceLoader.withSourceFetcher(new HttpSourceFetcher(urls, sourceUrlCacheDirectory, Math.max(sourceUrlConnections, 1), sourceUrlTimeout));
+        }
+        return sourceLoader;
+    }
+
+    /**
+     * Closes a source loader and reports a persistent source cache that could not be updated.
+     *
+     * @param sourceLoader the source loader to close
+     * @throws IOException if an I/O error occurs
+     */
+    protected final void closeSourceLoader(final SourceLoader sourceLoader) throws IOException {
+        sourceLoader.close();
+        PersistentSourceCache cache = sourceLoader.getPersistentSourceCache();
+        if (cache != null && cache.isReplaceFailed()) {
+            getLog().warn("Could not replace persistent source cache " + cache.getFile().getAbsolutePath() + ", the cache is not updated");
+        }
+    }
+
+    /**
+     * Checks the <code>mergeHits</code> parameter before any coverage is parsed.
+     *
+     * @throws MojoExecutionException if the value is not <code>max</code> or <code>sum</code>
+     */
+    protected final void checkMergeHits() throws MojoExecutionException {
+        for (CoverageMerger.Hits hits : CoverageMerger.Hits.values()) {
+            if (hits.name().equalsIgnoreCase(mergeHits)) {
+                return;
+            }
+        }
+        throw new MojoExecutionException("Invalid mergeHits value '" + mergeHits + "', allowed values are max and sum");
+    }
+
+    /**
+     * @return how the hits of lines covered by multiple reports are merged
+     * @see #checkMergeHits()
+     */
+    protected final CoverageMerger.Hits getMergeHits() {
+        return CoverageMerger.Hits.valueOf(mergeHits.toUpperCase(Locale.ENGLISH));
+    }
+
+    /**
+     * @param sourceLoader the source loader for the merged sources
+     * @param hits how the hits of a line are combined
+     * @return coverage merger within the merge memory budget
+     */
+    protected final CoverageMerger createCoverageMerger(final SourceLoader sourceLoader, final CoverageMerger.Hits hits) {
+        return new CoverageMerger(sourceLoader, hits, mergeMemoryBudget * 1024L * 1024L);
+    }
+}
@@ -29,24 +29,25 @@ package org.eluder.coveralls.maven.plugin;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
-import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.StringUtils;
 import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
 import org.eluder.coveralls.maven.plugin.domain.Git;
 import org.eluder.coveralls.maven.plugin.domain.GitRepository;
 import org.eluder.coveralls.maven.plugin.domain.Job;
+import org.eluder.coveralls.maven.plugin.domain.PersistentSourceCache;
+import org.eluder.coveralls.maven.plugin.domain.SourceCache;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 import org.eluder.coveralls.maven.plugin.httpclient.CoverallsClient;
+import org.eluder.coveralls.maven.plugin.httpclient.StreamingSubmission;
+import org.eluder.coveralls.maven.plugin.json.JobPartitioner;
 import org.eluder.coveralls.maven.plugin.json.JsonWriter;
 import org.eluder.coveralls.maven.plugin.logging.CoverageTracingLogger;
 import org.eluder.coveralls.maven.plugin.logging.DryRunLogger;
@@ -60,7 +61,7 @@ import org.eluder.coveralls.maven.plugin.service.Jenkins;
 import org.eluder.coveralls.maven.plugin.service.ServiceSetup;
 import org.eluder.coveralls.maven.plugin.service.Travis;
 
-public abstract class AbstractCoverallsMojo extends AbstractMojo {
+public abstract class AbstractCoverallsMojo extends AbstractCoverageMojo {
 
     /**
      * File path to write and submit Coveralls data.
@@ -68,6 +69,32 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
     @Parameter(property = "coverallsFile", defaultValue = "${project.build.directory}/coveralls.json")
     protected File coverallsFile;
 
+    /**
+     * Write the Coveralls data gzip compressed to the coveralls file with <code>.gz</code> suffix,
+     * and submit it compressed.
+     */
+    @Parameter(property = "gzip", defaultValue = "false")
+    protected boolean gzip;
+
+    /**
+     * Gzip compression level from 0 to 9.
+     */
+    @Parameter(property = "gzipLevel", defaultValue = "6")
+    protected int gzipLevel;
+
+    /**
+     * Submit the Coveralls data while it is being written, instead of submitting the complete
+     * file afterwards. The data is sent uncompressed.
+     */
+    @Parameter(property = "streamSubmission", defaultValue = "false")
+    protected boolean streamSubmission;
+
+    /**
+     * Write the streamed Coveralls data also to the coveralls file.
+     */
+    @Parameter(property = "streamSubmissionTee", defaultValue = "true")
+    protected boolean streamSubmissionTee;
+
     /**
      * Url for the Coveralls API.
      */
@@ -75,22 +102,23 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
     protected String coverallsUrl;
 
     /**
-     * Source directories.
+     * Url for the Coveralls webhook that completes a build of parallel jobs.
      */
-    @Parameter(property = "sourceDirectories")
-    protected List<File> sourceDirectories;
+    @Parameter(property = "coverallsWebhookUrl", defaultValue = "https://coveralls.io/webhook")
+    protected String coverallsWebhookUrl;
 
     /**
-     * Source urls.
+     * Number of parallel jobs the Coveralls data is split to. Values less than 2 submit the data as
+     * a single job.
      */
-    @Parameter(property = "sourceUrls")
-    protected List<URL> sourceUrls;
+    @Parameter(property = "parallelJobs", defaultValue = "1")
+    protected int parallelJobs;
 
     /**
-     * Source file encoding.
+     * Maximum number of parallel jobs submitted concurrently.
      */
-    @Parameter(property = "sourceEncoding", defaultValue = "${project.build.sourceEncoding}")
-    protected String sourceEncoding;
+    @Parameter(property = "parallelJobConcurrency", defaultValue = "4")
+    protected int parallelJobConcurrency;
 
     /**
      * CI service name.
@@ -153,43 +181,46 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
     protected boolean dryRun;
 
     /**
-     * Skip the plugin execution.
+     * Number of threads that encode sources to JSON. Values less than 2 encode the sources
+     * sequentially.
      */
-    @Parameter(property = "coveralls.skip", defaultValue = "false")
-    protected boolean skip;
+    @Parameter(property = "encodingThreads", defaultValue = "1")
+    protected int encodingThreads;
 
     /**
-     * Maven project for runtime value resolution.
+     * Maximum number of sources parsed in the background while the git metadata of the job is
+     * loaded. Parsing waits when the window is full until the job is ready and the sources are
+     * written. Zero starts parsing only after the job is ready.
      */
-    @Component
-    protected MavenProject project;
+    @Parameter(property = "eagerParseWindow", defaultValue = "0")
+    protected int eagerParseWindow;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        if (skip) {
-            getLog().info("Skip property set, skipping plugin execution");
+        if (isSkipped()) {
             return;
         }
+        checkMergeHits();
 
         try {
             createEnvironment().setup();
             SourceLoader sourceLoader = createSourceLoader();
-            CoverageParser parser = createCoverageParser(sourceLoader);
-            Job job = createJob();
-            job.validate().throwOrInform(getLog());
-            JsonWriter writer = createJsonWriter(job);
-            CoverallsClient client = createCoverallsClient();
-            List<Logger> reporters = new ArrayList<Logger>();
-            reporters.add(new JobLogger(job));
-            SourceCallback sourceCallback = createSourceCallbackChain(writer, reporters);
-            reporters.add(new DryRunLogger(job.isDryRun(), writer.getCoverallsFile()));
-
-            report(reporters, Position.BEFORE);
-            writeCoveralls(writer, sourceLoader, sourceCallback, parser);
-            report(reporters, Position.AFTER);
-
-            if (!job.isDryRun()) {
-                submitData(client, writer.getCoverallsFile());
+            try {
+                CoverageParser parser = createCoverageParser(sourceLoader);
+                EagerCoverageParser eagerParser = null;
+                if (parser != null && eagerParseWindow > 0) {
+                    eagerParser = new EagerCoverageParser(parser, eagerParseWindow).start();
+                    parser = eagerParser;
+                }
+                try {
+                    writeAndSubmit(sourceLoader, parser);
+                } finally {
+                    if (eagerParser != null) {
+                        eagerParser.close();
+                    }
+                }
+            } finally {
+                closeSourceLoader(sourceLoader);
             }
         } catch (ProcessingException ex) {
             throw new MojoFailureException("Processing of input or output data failed", ex);
@@ -200,6 +231,46 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
         }
     }
 
+    private void writeAndSubmit(final SourceLoader sourceLoader, final CoverageParser parser) throws ProcessingException, IOException {
+        Job job = createJob();
+        job.validate().throwOrInform(getLog());
+        if (parallelJobs > 1 && !job.isDryRun() && StringUtils.isBlank(job.getServiceBuildNumber())) {
+            throw new ProcessingException("Parallel jobs require a service build number");
+        }
+        CoverallsClient client = createCoverallsClient();
+        StreamingSubmission submission = null;
+        JsonWriter writer;
+        if (isStreaming(job)) {
+            submission = client.submitStreaming();
+            writer = createStreamingJsonWriter(job, submission);
+        } else {
+            writer = createJsonWriter(job);
+        }
+        List<Logger> reporters = new ArrayList<Logger>();
+        reporters.add(new JobLogger(job));
+        SourceCallback sourceCallback = createSourceCallbackChain(writer, reporters);
+        if (submission == null) {
+            reporters.add(new DryRunLogger(job.isDryRun(), writer.getCoverallsFile()));
+        }
+
+        boolean written = false;
+        try {
+            report(reporters, Position.BEFORE);
+            writeCoveralls(writer, sourceLoader, sourceCallback, parser);
+            written = true;
+        } finally {
+            if (submission != null && !written) {
+                submission.abort();
+            }
+        }
+        report(reporters, Position.AFTER);
+        logSourceCaches(sourceLoader);
+
+        if (!job.isDryRun()) {
+            submitData(client, writer, submission);
+        }
+    }
+
     /**
      * Creates a coverage parser. Must return new instance on every call.
      *
@@ -208,13 +279,6 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
      */
     protected abstract CoverageParser createCoverageParser(SourceLoader sourceLoader);
 
-    /**
-     * @return source loader to create source files
-     */
-    protected SourceLoader createSourceLoader() {
-        return new SourceLoader(sourceDirectories, sourceUrls, sourceEncoding);
-    }
-
     /**
      * @return environment to setup mojo and service specific properties
      */
@@ -262,7 +326,33 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
      * @throws IOException if an I/O error occurs
      */
     protected JsonWriter createJsonWriter(final Job job) throws IOException {
-        return new JsonWriter(job, coverallsFile);
+        if (gzip) {
+            File file = (coverallsFile.getName().endsWith(".gz") ? coverallsFile : new File(coverallsFile.getPath() + ".gz"));
+            return new JsonWriter(job, file, gzipLevel).withParallelEncoding(encodingThreads);
+        }
+        return new JsonWriter(job, coverallsFile).withParallelEncoding(encodingThreads);
+    }
+
+    /**
+     * @param job the job describing the coveralls report
+     * @param submission the streaming submission to write
+     * @return JSON writer that writes the coveralls data to the submission
+     * @throws IOException if an I/O error occurs
+     */
+    protected JsonWriter createStreamingJsonWriter(final Job job, final StreamingSubmission submission) throws IOException {
+        return new JsonWriter(job, (streamSubmissionTee ? coverallsFile : null), submission.getOutputStream()).withParallelEncoding(encodingThreads);
+    }
+
+    /**
+     * @param writer the JSON writer
+     * @return description of the targets the writer writes to
+     */
+    protected final String describeOutput(final JsonWriter writer) {
+        if (writer.getCoverallsFile() == null) {
+            return "Coveralls API";
+        }
+        String file = writer.getCoverallsFile().getAbsolutePath();
+        return (isStreaming(writer.getJob()) ? file + " and Coveralls API" : file);
     }
 
     /**
@@ -288,10 +378,11 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
 
     protected void writeCoveralls(final JsonWriter writer, final SourceLoader sourceLoader, final SourceCallback sourceCallback, final CoverageParser parser) throws ProcessingException, IOException {
         try {
-            getLog().info("Writing Coveralls data to " + writer.getCoverallsFile().getAbsolutePath() + " from coverage report " + parser.getCoverageFile().getAbsolutePath());
+            getLog().info("Writing Coveralls data to " + describeOutput(writer) + " from coverage report " + parser.getCoverageFile().getAbsolutePath());
             long now = System.currentTimeMillis();
             writer.writeStart();
             parser.parse(sourceCallback);
+            logMergedSources(parser);
             writer.writeEnd();
             long duration = System.currentTimeMillis() - now;
             getLog().info("Successfully wrote Coveralls data in " + duration + "ms");
@@ -300,11 +391,68 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
         }
     }
 
-    private void submitData(final CoverallsClient client, final File coverallsFile) throws ProcessingException, IOException {
-        getLog().info("Submitting Coveralls data to API");
+    /**
+     * Creates a parser that merges the coverage of sources found from multiple reports. The merged
+     * parser should load sources with {@link SourceLoader#createCoverageLoader()}.
+     *
+     * @param parser the parser for the merged reports
+     * @param sourceLoader the source loader for the merged sources
+     * @return the merging parser
+     */
+    protected final MergingCoverageParser createMergingCoverageParser(final CoverageParser parser, final SourceLoader sourceLoader) {
+        return createMergingCoverageParser(parser, sourceLoader, getMergeHits());
+    }
+
+    /**
+     * Creates a parser that merges the coverage of sources with the same name.
+     *
+     * @param parser the parser for the merged sources
+     * @param sourceLoader the source loader for the merged sources
+     * @param hits how the hits of a line are combined
+     * @return the merging parser
+     */
+    protected final MergingCoverageParser createMergingCoverageParser(final CoverageParser parser, final SourceLoader sourceLoader, final CoverageMerger.Hits hits) {
+        return new MergingCoverageParser(parser, createCoverageMerger(sourceLoader, hits));
+    }
+
+    protected final void logMergedSources(final CoverageParser parser) {
+        if (parser instanceof EagerCoverageParser) {
+            logMergedSources(((EagerCoverageParser) parser).getParser());
+        } else if (parser instanceof MergingCoverageParser) {
+            CoverageMerger merger = ((MergingCoverageParser) parser).getMerger();
+            getLog().info("Merged " + merger.getMerged() + " sources found from multiple reports, spilled " + merger.getSpills() + " times");
+        }
+    }
+
+    private void logSourceCaches(final SourceLoader sourceLoader) {
+        if (sourceCacheSize > 0) {
+            SourceCache cache = SourceCache.getShared();
+            getLog().info("Source cache has " + cache.getSize() + " sources in " + cache.getBytes() + " bytes, "
+                    + cache.getHits() + " hits, " + cache.getMisses() + " misses and " + cache.getEvictions() + " evictions");
+        }
+        PersistentSourceCache persistentCache = sourceLoader.getPersistentSourceCache();
+        if (persistentCache != null) {
+            getLog().info("Persistent source cache had " + persistentCache.getHits() + " hits and "
+                    + persistentCache.getMisses() + " misses");
+        }
+    }
+
+    private boolean isStreaming(final Job job) {
+        return streamSubmission && parallelJobs < 2 && !job.isDryRun();
+    }
+
+    private void submitData(final CoverallsClient client, final JsonWriter writer, final StreamingSubmission submission) throws ProcessingException, IOException {
+        getLog().info(submission != null ? "Finishing streamed submission of Coveralls data to API" : "Submitting Coveralls data to API");
         long now = System.currentTimeMillis();
         try {
-            CoverallsResponse response = client.submit(coverallsFile);
+            CoverallsResponse response;
+            if (submission != null) {
+                response = submission.finish();
+            } else if (parallelJobs > 1) {
+                response = submitParallelJobs(client, writer);
+            } else {
+                response = client.submit(writer.getCoverallsFile());
+            }
             long duration = System.currentTimeMillis() - now;
             getLog().info("Successfully submitted Coveralls data in " + duration + "ms for " + response.getMessage());
             getLog().info(response.getUrl());
@@ -321,6 +469,17 @@ public abstract class AbstractCoverallsMojo extends AbstractMojo {
         }
     }
 
+    private CoverallsResponse submitParallelJobs(final CoverallsClient client, final JsonWriter writer) throws ProcessingException, IOException {
+        List<File> partitions = new JobPartitioner(parallelJobs).split(writer.getCoverallsFile());
+        getLog().info("Split Coveralls data to " + partitions.size() + " parallel jobs, submitting " + parallelJobConcurrency + " at a time");
+        List<CoverallsResponse> responses = client.submitParallel(partitions, parallelJobConcurrency);
+        for (int i = 0; i < partitions.size(); i++) {
+            getLog().info("  .. submitted " + partitions.get(i).getName() + " for " + responses.get(i).getMessage());
+        }
+        Job job = writer.getJob();
+        return client.completeParallelBuild(coverallsWebhookUrl, job.getRepoToken(), job.getServiceBuildNumber());
+    }
+
     private void report(final List<Logger> reporters, final Position position) {
         for (Logger reporter : reporters) {
             if (position.equals(reporter.getPosition())) {
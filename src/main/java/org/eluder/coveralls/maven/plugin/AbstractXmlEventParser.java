@@ -40,25 +40,193 @@ import org.codehaus.plexus.util.ReaderFactory;
 import org.codehaus.plexus.util.xml.XmlStreamReader;
 import org.eluder.coveralls.maven.plugin.domain.Source;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.NameTable;
+import org.eluder.coveralls.maven.plugin.xml.XmlElement;
+import org.eluder.coveralls.maven.plugin.xml.XmlScanner;
 
+/**
+ * Base class for XML coverage report parsers. Parsers register handlers for the start and end of
+ * the elements they are interested in, and elements whose subtrees are ignored. Each element event
+ * is dispatched with a single name lookup, other elements are passed over.
+ * <p>
+ * Parsers can also register the elements that reference source files. When the source loader has
+ * a prefetch window, a look-ahead reader scans the report ahead of the parser with those
+ * resolvers, and the upcoming sources are loaded in the background while the parser is busy with
+ * the coverage data.
+ */
 public abstract class AbstractXmlEventParser implements CoverageParser {
 
     private final File coverageFile;
     private final SourceLoader sourceLoader;
+    private final boolean byteScanner;
+    private final NameTable<ElementHandlers> handlers = new NameTable<ElementHandlers>();
+    private boolean resolvers;
+    private SourcePrefetcher prefetcher;
     
     public AbstractXmlEventParser(final File coverageFile, final SourceLoader sourceLoader) {
+        this(coverageFile, sourceLoader, false);
+    }
+
+    /**
+     * @param coverageFile the coverage report
+     * @param sourceLoader the source loader
+     * @param byteScanner <code>true</code> to parse the report with the memory mapped
+     *        {@link XmlScanner} when the report encoding is supported, otherwise StAX is used
+     */
+    public AbstractXmlEventParser(final File coverageFile, final SourceLoader sourceLoader, final boolean byteScanner) {
         this.coverageFile = coverageFile;
         this.sourceLoader = sourceLoader;
+        this.byteScanner = byteScanner;
     }
 
     @Override
     public final void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        if (byteScanner && XmlScanner.isSupported(coverageFile)) {
+            parseBytes(callback);
+        } else {
+            parseEvents(callback);
+        }
+    }
+    
+    private void parseBytes(final SourceCallback callback) throws ProcessingException, IOException {
+        parse(XmlScanner.map(coverageFile), callback);
+    }
+    
+    /**
+     * Parses the document or document region of a byte scanner with the registered handlers.
+     *
+     * @param xml the scanner to parse
+     * @param callback the callback handler for parsed sources
+     * @throws ProcessingException if the document is not well-formed
+     * @throws IOException if an I/O error occurs
+     */
+    public final void parse(final XmlScanner xml, final SourceCallback callback) throws ProcessingException, IOException {
+        if (isPrefetching()) {
+            final XmlScanner lookAhead = xml.region(xml.getOffset(), xml.getLength());
+            startPrefetch(new LookAhead() {
+                @Override
+                protected void scan() throws ProcessingException, InterruptedException {
+                    scanBytes(lookAhead);
+                }
+            });
+        }
+        try {
+            parseBytes(xml, callback);
+        } finally {
+            stopPrefetch();
+        }
+    }
+    
+    private void parseBytes(final XmlScanner xml, final SourceCallback callback) throws ProcessingException, IOException {
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                ElementHandlers element = xml.lookup(handlers);
+                if (element != null) {
+                    if (event == XMLStreamConstants.END_ELEMENT) {
+                        element.onEnd(callback);
+                    } else if (element.skip) {
+                        xml.skipElement();
+                    } else {
+                        element.onStart(xml, callback);
+                    }
+                }
+            }
+        }
+        onEndDocument(callback);
+    }
+    
+    private void parseEvents(final SourceCallback callback) throws ProcessingException, IOException {
+        if (isPrefetching()) {
+            startPrefetch(new LookAhead() {
+                @Override
+                protected void scan() throws ProcessingException, IOException, InterruptedException {
+                    scanEvents();
+                }
+            });
+        }
+        try {
+            parseEvents(ReaderFactory.newXmlReader(coverageFile), callback);
+        } finally {
+            stopPrefetch();
+        }
+    }
+    
+    private void parseEvents(final XmlStreamReader reader, final SourceCallback callback) throws ProcessingException, IOException {
+        XMLStreamReader xml = createEventReader(reader);
+        try {
+            XmlElement attributes = new StaxElement(xml);
+            while (xml.hasNext()) {
+                int event = xml.next();
+                if (event == XMLStreamConstants.START_ELEMENT || event == XMLStreamConstants.END_ELEMENT) {
+                    ElementHandlers element = handlers.get(xml.getLocalName());
+                    if (element != null) {
+                        if (event == XMLStreamConstants.END_ELEMENT) {
+                            element.onEnd(callback);
+                        } else if (element.skip) {
+                            skipElement(xml);
+                        } else {
+                            element.onStart(attributes, callback);
+                        }
+                    }
+                }
+            }
+            onEndDocument(callback);
+        } catch (XMLStreamException ex) {
+            throw new ProcessingException(ex);
+        } finally {
+            close(xml);
+            IOUtil.close(reader);
+        }
+    }
+    
+    private boolean isPrefetching() {
+        return resolvers && sourceLoader.getPrefetchWindow() > 0;
+    }
+    
+    private void startPrefetch(final LookAhead lookAhead) {
+        prefetcher = new SourcePrefetcher(sourceLoader, sourceLoader.getPrefetchWindow());
+        prefetcher.start(lookAhead);
+    }
+    
+    private void stopPrefetch() {
+        if (prefetcher != null) {
+            prefetcher.close();
+            prefetcher = null;
+        }
+    }
+    
+    private void scanBytes(final XmlScanner xml) throws ProcessingException, InterruptedException {
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                ElementHandlers element = xml.lookup(handlers);
+                if (element != null) {
+                    if (element.skip) {
+                        xml.skipElement();
+                    } else {
+                        prefetch(element, xml);
+                    }
+                }
+            }
+        }
+    }
+    
+    private void scanEvents() throws ProcessingException, IOException, InterruptedException {
         XmlStreamReader reader = ReaderFactory.newXmlReader(coverageFile);
         XMLStreamReader xml = createEventReader(reader);
         try {
+            XmlElement attributes = new StaxElement(xml);
             while (xml.hasNext()) {
-                xml.next();
-                onEvent(xml, callback);
+                if (xml.next() == XMLStreamConstants.START_ELEMENT) {
+                    ElementHandlers element = handlers.get(xml.getLocalName());
+                    if (element != null) {
+                        if (element.skip) {
+                            skipElement(xml);
+                        } else {
+                            prefetch(element, attributes);
+                        }
+                    }
+                }
             }
         } catch (XMLStreamException ex) {
             throw new ProcessingException(ex);
@@ -68,6 +236,15 @@ public abstract class AbstractXmlEventParser implements CoverageParser {
         }
     }
     
+    private void prefetch(final ElementHandlers element, final XmlElement attributes) throws ProcessingException, InterruptedException {
+        if (element.resolver != null) {
+            String sourceFile = element.resolver.resolve(attributes);
+            if (sourceFile != null) {
+                prefetcher.submit(sourceFile);
+            }
+        }
+    }
+    
     @Override
     public final File getCoverageFile() {
         return coverageFile;
@@ -87,6 +264,18 @@ public abstract class AbstractXmlEventParser implements CoverageParser {
         }
     }
     
+    private void skipElement(final XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+    
     private void close(final XMLStreamReader xml) throws ProcessingException {
         if (xml != null) {
             try {
@@ -97,17 +286,152 @@ public abstract class AbstractXmlEventParser implements CoverageParser {
         }
     }
     
-    protected abstract void onEvent(final XMLStreamReader xml, SourceCallback callback) throws XMLStreamException, ProcessingException, IOException;
+    /**
+     * Registers a handler for the start of an element, replacing the previous start handler.
+     */
+    protected final void onStartElement(final String name, final StartElementHandler handler) {
+        element(name).start = handler;
+    }
+    
+    /**
+     * Registers a handler for the end of an element, replacing the previous end handler.
+     */
+    protected final void onEndElement(final String name, final EndElementHandler handler) {
+        element(name).end = handler;
+    }
+    
+    /**
+     * Skips the whole subtree of an element. Handlers are not called for the skipped element or
+     * any element inside it.
+     */
+    protected final void skipElement(final String name) {
+        element(name).skip = true;
+    }
+    
+    /**
+     * Registers a resolver for the source file referenced by an element. Resolvers are called by
+     * the look-ahead reader from another thread, for the start elements in report order, and must
+     * not share state with the element handlers.
+     */
+    protected final void prefetchSource(final String name, final SourceFileResolver resolver) {
+        element(name).resolver = resolver;
+        resolvers = true;
+    }
+    
+    /**
+     * Called after the whole document or document region is parsed. Parsers that hold back
+     * sources must pass them to the callback handler here.
+     */
+    protected void onEndDocument(final SourceCallback callback) throws ProcessingException, IOException {
+        // nothing by default
+    }
     
     protected final Source loadSource(final String sourceFile) throws IOException {
+        if (prefetcher != null) {
+            return prefetcher.load(sourceFile);
+        }
         return sourceLoader.load(sourceFile);
     }
     
-    protected final boolean isStartElement(final XMLStreamReader xml, final String name) {
-        return (XMLStreamConstants.START_ELEMENT == xml.getEventType() && xml.getLocalName().equals(name));
+    private ElementHandlers element(final String name) {
+        ElementHandlers element = handlers.get(name);
+        if (element == null) {
+            element = new ElementHandlers();
+            handlers.put(name, element);
+        }
+        return element;
+    }
+    
+    protected interface StartElementHandler {
+        
+        void onStart(XmlElement element, SourceCallback callback) throws ProcessingException, IOException;
+        
+    }
+    
+    protected interface EndElementHandler {
+        
+        void onEnd(SourceCallback callback) throws ProcessingException, IOException;
+        
+    }
+    
+    protected interface SourceFileResolver {
+        
+        /**
+         * @param element the start element
+         * @return the source file referenced by the element, or <code>null</code> if none
+         */
+        String resolve(XmlElement element) throws ProcessingException;
+        
+    }
+    
+    /**
+     * Scans the report for upcoming source files. Failures are ignored, the parser reports them
+     * when it reaches the same position.
+     */
+    private abstract static class LookAhead implements Runnable {
+        
+        @Override
+        public final void run() {
+            try {
+                scan();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (ProcessingException ex) {
+                // reported by the parser
+            } catch (IOException ex) {
+                // reported by the parser
+            } catch (RuntimeException ex) {
+                // reported by the parser
+            }
+        }
+        
+        protected abstract void scan() throws ProcessingException, IOException, InterruptedException;
+    }
+    
+    private static final class ElementHandlers {
+        
+        private StartElementHandler start;
+        private EndElementHandler end;
+        private SourceFileResolver resolver;
+        private boolean skip;
+        
+        private void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException, IOException {
+            if (start != null) {
+                start.onStart(element, callback);
+            }
+        }
+        
+        private void onEnd(final SourceCallback callback) throws ProcessingException, IOException {
+            if (end != null) {
+                end.onEnd(callback);
+            }
+        }
     }
     
-    protected final boolean isEndElement(final XMLStreamReader xml, final String name) {
-        return (XMLStreamConstants.END_ELEMENT == xml.getEventType() && xml.getLocalName().equals(name));
+    private static final class StaxElement implements XmlElement {
+        
+        private final XMLStreamReader xml;
+        
+        private StaxElement(final XMLStreamReader xml) {
+            this.xml = xml;
+        }
+        
+        @Override
+        public String getAttributeValue(final String name) {
+            return xml.getAttributeValue(null, name);
+        }
+        
+        @Override
+        public int getIntAttributeValue(final String name) throws ProcessingException {
+            String value = xml.getAttributeValue(null, name);
+            if (value == null) {
+                throw new ProcessingException("Missing attribute " + name + " at line " + xml.getLocation().getLineNumber());
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException ex) {
+                throw new ProcessingException("Invalid integer value for attribute " + name + " at line " + xml.getLocation().getLineNumber(), ex);
+            }
+        }
     }
 }
@@ -0,0 +1,136 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Coverage parser that runs multiple coverage parsers concurrently on a bounded worker pool.
+ * Workers pass the parsed sources through a bounded queue per parser, and the sources are handed
+ * to the callback handler in the calling thread. The callback receives the sources in the order
+ * of the parsers and in the order each parser produced them, so the output is deterministic
+ * regardless of the parallelism. A failing parser is reported with its coverage file.
+ */
+public class ConcurrentCoverageParser implements CoverageParser {
+
+    private static final int DEFAULT_QUEUE_SIZE = 64;
+
+    private final File coverageFile;
+    private final List<CoverageParser> parsers;
+    private final int parallelism;
+    private final int queueSize;
+
+    /**
+     * @param coverageFile the file to describe the combined coverage reports
+     * @param parsers the parsers to run
+     * @param parallelism maximum number of parsers to run concurrently, values less than 2 run
+     *        the parsers sequentially in the calling thread
+     */
+    public ConcurrentCoverageParser(final File coverageFile, final List<? extends CoverageParser> parsers, final int parallelism) {
+        this(coverageFile, parsers, parallelism, DEFAULT_QUEUE_SIZE);
+    }
+
+    public ConcurrentCoverageParser(final File coverageFile, final List<? extends CoverageParser> parsers, final int parallelism, final int queueSize) {
+        if (parsers == null) {
+            throw new IllegalArgumentException("parsers must be defined");
+        }
+        if (queueSize < 1) {
+            throw new IllegalArgumentException("queueSize must be positive");
+        }
+        this.coverageFile = coverageFile;
+        this.parsers = new ArrayList<CoverageParser>(parsers);
+        this.parallelism = parallelism;
+        this.queueSize = queueSize;
+    }
+
+    @Override
+    public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        if (parallelism < 2 || parsers.size() < 2) {
+            for (CoverageParser parser : parsers) {
+                try {
+                    parser.parse(callback);
+                } catch (ProcessingException ex) {
+                    throw failure(parser, ex);
+                } catch (IOException ex) {
+                    throw failure(parser, ex);
+                }
+            }
+        } else {
+            parseConcurrently(callback);
+        }
+    }
+
+    @Override
+    public File getCoverageFile() {
+        return coverageFile;
+    }
+
+    private void parseConcurrently(final SourceCallback callback) throws ProcessingException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, parsers.size()), new DaemonThreadFactory("parser"));
+        try {
+            List<SourceQueue> queues = new ArrayList<SourceQueue>(parsers.size());
+            for (CoverageParser parser : parsers) {
+                SourceQueue queue = new SourceQueue(parser, queueSize);
+                queues.add(queue);
+                executor.execute(queue.createTask());
+            }
+            // tasks are started in submission order, so the parser drained here is always running
+            for (int i = 0; i < parsers.size(); i++) {
+                rethrow(parsers.get(i), queues.get(i).drain(callback));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void rethrow(final CoverageParser parser, final Throwable failure) throws ProcessingException, IOException {
+        if (failure instanceof ProcessingException) {
+            throw failure(parser, (ProcessingException) failure);
+        }
+        if (failure instanceof IOException) {
+            throw failure(parser, (IOException) failure);
+        }
+        SourceQueue.rethrow(failure);
+    }
+
+    private static ProcessingException failure(final CoverageParser parser, final ProcessingException ex) {
+        return new ProcessingException(failureMessage(parser), ex);
+    }
+
+    private static IOException failure(final CoverageParser parser, final IOException ex) {
+        return new IOException(failureMessage(parser), ex);
+    }
+
+    private static String failureMessage(final CoverageParser parser) {
+        return "Failed to parse " + SourceQueue.describe(parser);
+    }
+}
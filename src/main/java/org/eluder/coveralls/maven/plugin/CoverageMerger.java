@@ -0,0 +1,595 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+
+/**
+ * Source callback that merges the coverage of sources with the same name from multiple coverage
+ * reports. Only the coverage of each source is buffered, packed as line and hits pairs of the
+ * relevant lines, so memory is proportional to the relevant lines instead of the source or report
+ * size. The merged sources are loaded once with content when the merged coverage is passed on with
+ * {@link #flush(SourceCallback)}. Sources are merged by name, so classified sources are merged
+ * with the source file they belong to.
+ * <p>
+ * When the buffered coverage exceeds the memory budget, it is spilled to a temporary file sorted
+ * by source name. Flushing merges the spilled runs, the added partials and the buffered coverage
+ * in a single pass, and passes the sources on in source name order. The merged coverage can also
+ * be written to a partial with {@link #writePartial(File)}, to be merged later without parsing
+ * the coverage reports again. Runs and partials share the same format: a header with the hits
+ * mode and the report files of the coverage, and source names in sorted order, each followed by
+ * the delta encoded lines and hits of the source as variable length integers.
+ */
+public class CoverageMerger implements SourceCallback, Closeable {
+
+    /**
+     * Combines the hits of a line covered by multiple reports.
+     */
+    public enum Hits {
+        /** The highest hits of any report. */
+        MAX,
+        /** The sum of hits of all reports. */
+        SUM
+    }
+
+    /**
+     * Header of a coverage partial.
+     */
+    public static final class PartialHeader {
+
+        private final Hits hits;
+        private final List<File> reportFiles;
+
+        private PartialHeader(final Hits hits, final List<File> reportFiles) {
+            this.hits = hits;
+            this.reportFiles = reportFiles;
+        }
+
+        /**
+         * @return how the hits of the partial were merged
+         */
+        public Hits getHits() {
+            return hits;
+        }
+
+        /**
+         * @return absolute paths of the report files of the partial
+         */
+        public List<File> getReportFiles() {
+            return reportFiles;
+        }
+    }
+
+    private static final int MAGIC = 0x43564d32;
+    private static final int ENTRY_OVERHEAD = 64;
+    private static final int BUFFER_SIZE = 65536;
+
+    private final SourceLoader sourceLoader;
+    private final Hits hits;
+    private final long memoryBudget;
+    private final Map<String, int[]> buffered = new HashMap<String, int[]>();
+    private final List<File> runs = new ArrayList<File>();
+    private final List<File> partials = new ArrayList<File>();
+    private long bufferedBytes;
+    private int merged;
+
+    /**
+     * @param sourceLoader the source loader for the merged sources
+     * @param hits how the hits of a line are combined
+     * @param memoryBudget maximum number of bytes of coverage buffered in memory
+     */
+    public CoverageMerger(final SourceLoader sourceLoader, final Hits hits, final long memoryBudget) {
+        if (sourceLoader == null) {
+            throw new IllegalArgumentException("sourceLoader must be defined");
+        }
+        if (hits == null) {
+            throw new IllegalArgumentException("hits must be defined");
+        }
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException("Memory budget must be positive, was " + memoryBudget);
+        }
+        this.sourceLoader = sourceLoader;
+        this.hits = hits;
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public void onSource(final Source source) throws ProcessingException, IOException {
+        int[] coverage = pack(source.getCoverage());
+        int[] existing = buffered.get(source.getName());
+        if (existing == null) {
+            buffered.put(source.getName(), coverage);
+            bufferedBytes += size(source.getName(), coverage);
+        } else {
+            merged++;
+            int[] combined = combine(existing, coverage);
+            buffered.put(source.getName(), combined);
+            bufferedBytes += 4L * (combined.length - existing.length);
+        }
+        if (bufferedBytes > memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * Adds coverage written with {@link #writePartial(File)} to the merge. The partial is read
+     * when the merged coverage is flushed or written.
+     *
+     * @param partial the partial file
+     */
+    public void addPartial(final File partial) {
+        partials.add(partial);
+    }
+
+    /**
+     * Loads the merged sources and passes them to the callback handler in source name order.
+     *
+     * @param callback the callback handler for the merged sources
+     * @throws ProcessingException if the merged coverage does not match a source or a partial is
+     *         invalid
+     * @throws IOException if an I/O error occurs
+     */
+    public void flush(final SourceCallback callback) throws ProcessingException, IOException {
+        merge(new MergeHandler() {
+            @Override
+            public void onMerged(final String name, final int[] coverage) throws ProcessingException, IOException {
+                callback.onSource(load(name, coverage));
+            }
+        });
+    }
+
+    /**
+     * Writes the merged coverage to a partial file without loading the sources. The file is
+     * replaced only after the whole partial has been written.
+     *
+     * @param partial the partial file to write
+     * @throws ProcessingException if an added partial is invalid
+     * @throws IOException if an I/O error occurs
+     */
+    public void writePartial(final File partial) throws ProcessingException, IOException {
+        writePartial(partial, Collections.<File>emptyList());
+    }
+
+    /**
+     * Writes the merged coverage to a partial file without loading the sources. The hits mode and
+     * the report files are written to the header of the partial. The file is replaced only after
+     * the whole partial has been written.
+     *
+     * @param partial the partial file to write
+     * @param reportFiles the report files of the merged coverage
+     * @throws ProcessingException if an added partial is invalid
+     * @throws IOException if an I/O error occurs
+     */
+    public void writePartial(final File partial, final List<File> reportFiles) throws ProcessingException, IOException {
+        File temp = new File(partial.getPath() + ".tmp");
+        final DataOutputStream output = openRun(temp, hits, reportFiles);
+        boolean written = false;
+        try {
+            merge(new MergeHandler() {
+                @Override
+                public void onMerged(final String name, final int[] coverage) throws IOException {
+                    writeEntry(output, name, coverage);
+                }
+            });
+            output.writeBoolean(false);
+            output.close();
+            FileUtils.rename(temp, partial);
+            written = true;
+        } finally {
+            IOUtil.close(output);
+            if (!written) {
+                temp.delete();
+            }
+        }
+    }
+
+    /**
+     * Deletes the spilled coverage.
+     */
+    @Override
+    public void close() {
+        buffered.clear();
+        bufferedBytes = 0;
+        deleteRuns();
+    }
+
+    /**
+     * @return number of times the coverage has been spilled to disk
+     */
+    public int getSpills() {
+        return runs.size();
+    }
+
+    /**
+     * @return number of sources merged to an earlier source with the same name
+     */
+    public int getMerged() {
+        return merged;
+    }
+
+    private void merge(final MergeHandler handler) throws ProcessingException, IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        try {
+            List<File> files = new ArrayList<File>(runs);
+            files.addAll(partials);
+            for (File file : files) {
+                Run run = new FileRun(file);
+                boolean started = false;
+                try {
+                    if (run.next()) {
+                        queue.add(run);
+                    }
+                    started = true;
+                } finally {
+                    if (!started) {
+                        run.close();
+                    }
+                }
+            }
+            Run memory = new MemoryRun(sortBuffered());
+            if (memory.next()) {
+                queue.add(memory);
+            }
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                String name = run.name;
+                int[] coverage = run.coverage;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                while (!queue.isEmpty() && queue.peek().name.equals(name)) {
+                    Run same = queue.poll();
+                    merged++;
+                    coverage = combine(coverage, same.coverage);
+                    if (same.next()) {
+                        queue.add(same);
+                    }
+                }
+                handler.onMerged(name, coverage);
+            }
+        } finally {
+            for (Run run : queue) {
+                run.close();
+            }
+            buffered.clear();
+            bufferedBytes = 0;
+            partials.clear();
+            deleteRuns();
+        }
+    }
+
+    private Source load(final String name, final int[] coverage) throws ProcessingException, IOException {
+        Source source = sourceLoader.load(name);
+        int lines = source.getCoverage().length;
+        for (int i = 0; i < coverage.length; i += 2) {
+            if (coverage[i] >= lines) {
+                throw new ProcessingException("Merged coverage of line " + (coverage[i] + 1) + " does not match " + name + " with " + lines + " lines");
+            }
+            source.addCoverage(coverage[i] + 1, coverage[i + 1]);
+        }
+        return source;
+    }
+
+    /**
+     * Packs the relevant lines of coverage to zero based line and hits pairs, ordered by line.
+     */
+    private static int[] pack(final int[] coverage) {
+        int relevant = 0;
+        for (int i = 0; i < coverage.length; i++) {
+            if (coverage[i] != Source.NOT_RELEVANT) {
+                relevant++;
+            }
+        }
+        int[] packed = new int[relevant * 2];
+        int index = 0;
+        for (int i = 0; i < coverage.length; i++) {
+            if (coverage[i] != Source.NOT_RELEVANT) {
+                packed[index++] = i;
+                packed[index++] = coverage[i];
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Merges two packed coverages to a new packed coverage ordered by line.
+     */
+    private int[] combine(final int[] first, final int[] second) {
+        int[] target = new int[first.length + second.length];
+        int i = 0;
+        int j = 0;
+        int length = 0;
+        while (i < first.length || j < second.length) {
+            if (j == second.length || (i < first.length && first[i] < second[j])) {
+                target[length++] = first[i++];
+                target[length++] = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                target[length++] = second[j++];
+                target[length++] = second[j++];
+            } else {
+                target[length++] = first[i];
+                target[length++] = combine(first[i + 1], second[j + 1]);
+                i += 2;
+                j += 2;
+            }
+        }
+        return (length == target.length ? target : Arrays.copyOf(target, length));
+    }
+
+    private int combine(final int first, final int second) {
+        if (hits == Hits.MAX) {
+            return Math.max(first, second);
+        }
+        long sum = (long) first + second;
+        return (sum > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) sum);
+    }
+
+    private List<Map.Entry<String, int[]>> sortBuffered() {
+        List<Map.Entry<String, int[]>> entries = new ArrayList<Map.Entry<String, int[]>>(buffered.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, int[]>>() {
+            @Override
+            public int compare(final Map.Entry<String, int[]> o1, final Map.Entry<String, int[]> o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return entries;
+    }
+
+    private void spill() throws IOException {
+        File file = File.createTempFile("coveralls-merge", ".tmp");
+        runs.add(file);
+        DataOutputStream output = openRun(file, hits, Collections.<File>emptyList());
+        try {
+            for (Map.Entry<String, int[]> entry : sortBuffered()) {
+                writeEntry(output, entry.getKey(), entry.getValue());
+            }
+            output.writeBoolean(false);
+        } finally {
+            IOUtil.close(output);
+        }
+        buffered.clear();
+        bufferedBytes = 0;
+    }
+
+    private void deleteRuns() {
+        for (File file : runs) {
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Reads the header of a partial written with {@link #writePartial(File, List)}.
+     *
+     * @param partial the partial file
+     * @return the header of the partial, or <code>null</code> if the file is not a valid partial
+     * @throws IOException if an I/O error occurs
+     */
+    public static PartialHeader readPartialHeader(final File partial) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(partial)));
+        try {
+            if (input.readInt() != MAGIC) {
+                return null;
+            }
+            return readHeader(input);
+        } catch (EOFException ex) {
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    private static DataOutputStream openRun(final File file, final Hits hits, final List<File> reportFiles) throws IOException {
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        try {
+            output.writeInt(MAGIC);
+            output.writeUTF(hits.name());
+            writeVarInt(output, reportFiles.size());
+            for (File reportFile : reportFiles) {
+                output.writeUTF(reportFile.getAbsolutePath());
+            }
+        } catch (IOException ex) {
+            IOUtil.close(output);
+            throw ex;
+        }
+        return output;
+    }
+
+    private static PartialHeader readHeader(final DataInputStream input) throws IOException {
+        Hits hits = Hits.valueOf(input.readUTF());
+        int count = readVarInt(input);
+        List<File> reportFiles = new ArrayList<File>(count);
+        for (int i = 0; i < count; i++) {
+            reportFiles.add(new File(input.readUTF()));
+        }
+        return new PartialHeader(hits, reportFiles);
+    }
+
+    private static void writeEntry(final DataOutputStream output, final String name, final int[] coverage) throws IOException {
+        output.writeBoolean(true);
+        output.writeUTF(name);
+        writeVarInt(output, coverage.length / 2);
+        int previous = -1;
+        for (int i = 0; i < coverage.length; i += 2) {
+            writeVarInt(output, coverage[i] - previous - 1);
+            writeVarInt(output, coverage[i + 1]);
+            previous = coverage[i];
+        }
+    }
+
+    private static void writeVarInt(final DataOutputStream output, final int value) throws IOException {
+        int remaining = value;
+        while ((remaining & ~0x7F) != 0) {
+            output.writeByte((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        output.writeByte(remaining);
+    }
+
+    private static int readVarInt(final DataInputStream input) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = input.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    private static long size(final String name, final int[] coverage) {
+        return ENTRY_OVERHEAD + 2L * name.length() + 4L * coverage.length;
+    }
+
+    private interface MergeHandler {
+
+        void onMerged(String name, int[] coverage) throws ProcessingException, IOException;
+
+    }
+
+    /**
+     * Sorted coverage of sources, read one source at a time.
+     */
+    private abstract static class Run implements Comparable<Run> {
+
+        protected String name;
+        protected int[] coverage;
+
+        abstract boolean next() throws ProcessingException, IOException;
+
+        void close() {
+            // nothing by default
+        }
+
+        @Override
+        public int compareTo(final Run other) {
+            return name.compareTo(other.name);
+        }
+    }
+
+    private static final class MemoryRun extends Run {
+
+        private final List<Map.Entry<String, int[]>> entries;
+        private int index;
+
+        private MemoryRun(final List<Map.Entry<String, int[]>> entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        boolean next() {
+            if (index == entries.size()) {
+                return false;
+            }
+            Map.Entry<String, int[]> entry = entries.get(index);
+            entries.set(index++, null);
+            name = entry.getKey();
+            coverage = entry.getValue();
+            return true;
+        }
+    }
+
+    private static final class FileRun extends Run {
+
+        private final File file;
+        private final DataInputStream input;
+        private boolean started;
+
+        private FileRun(final File file) throws IOException {
+            this.file = file;
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        }
+
+        @Override
+        boolean next() throws ProcessingException, IOException {
+            try {
+                if (!started) {
+                    started = true;
+                    if (input.readInt() != MAGIC) {
+                        throw new ProcessingException("Invalid coverage partial " + file.getAbsolutePath());
+                    }
+                    try {
+                        readHeader(input);
+                    } catch (IllegalArgumentException ex) {
+                        throw new ProcessingException("Invalid coverage partial " + file.getAbsolutePath(), ex);
+                    }
+                }
+                if (!input.readBoolean()) {
+                    close();
+                    return false;
+                }
+                String previous = name;
+                name = input.readUTF();
+                if (previous != null && previous.compareTo(name) >= 0) {
+                    throw new ProcessingException("Unsorted coverage partial " + file.getAbsolutePath());
+                }
+                coverage = new int[readVarInt(input) * 2];
+                int line = -1;
+                for (int i = 0; i < coverage.length; i += 2) {
+                    line += readVarInt(input) + 1;
+                    coverage[i] = line;
+                    coverage[i + 1] = readVarInt(input);
+                }
+                return true;
+            } catch (EOFException ex) {
+                throw new ProcessingException("Truncated coverage partial " + file.getAbsolutePath(), ex);
+            }
+        }
+
+        @Override
+        void close() {
+            IOUtil.close(input);
+        }
+    }
+}
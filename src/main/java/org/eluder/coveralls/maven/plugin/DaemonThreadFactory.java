@@ -0,0 +1,60 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory for the worker pools of the plugin. The threads are daemons, so a pool that is
+ * not shut down never keeps the build from exiting, and the threads are named
+ * <code>coveralls-&lt;name&gt;-&lt;pool&gt;-&lt;thread&gt;</code> to identify them in thread dumps.
+ */
+public final class DaemonThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger POOL_SEQUENCE = new AtomicInteger();
+
+    private final String prefix;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * @param name name of the threads created by this factory
+     */
+    public DaemonThreadFactory(final String name) {
+        if (name == null) {
+            throw new IllegalArgumentException("name must be defined");
+        }
+        this.prefix = "coveralls-" + name + "-" + POOL_SEQUENCE.incrementAndGet() + "-";
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(runnable, prefix + sequence.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,123 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coverage parser that starts parsing in a background thread before the consumer of the sources
+ * is ready, e.g. while the job metadata is still loading. Parsed sources are buffered in a bounded
+ * window, and the background parser blocks when the window is full until {@link #parse(SourceCallback)}
+ * hands the sources to the callback handler in the calling thread. The sources are passed in the
+ * order the wrapped parser produced them.
+ */
+public class EagerCoverageParser implements CoverageParser, Closeable {
+
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final CoverageParser parser;
+    private final SourceQueue queue;
+    private ExecutorService executor;
+
+    /**
+     * @param parser the parser to run in the background
+     * @param window maximum number of parsed sources buffered before they are consumed
+     */
+    public EagerCoverageParser(final CoverageParser parser, final int window) {
+        if (parser == null) {
+            throw new IllegalArgumentException("parser must be defined");
+        }
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive, was " + window);
+        }
+        this.parser = parser;
+        this.queue = new SourceQueue(parser, window);
+    }
+
+    /**
+     * Starts parsing in the background. Has no effect if already started.
+     *
+     * @return this parser
+     */
+    public synchronized EagerCoverageParser start() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new DaemonThreadFactory("eager"));
+            executor.execute(queue.createTask());
+        }
+        return this;
+    }
+
+    @Override
+    public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        start();
+        try {
+            SourceQueue.rethrow(queue.drain(callback));
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Stops the background parser if it is still running, and waits for it to stop so that the
+     * source loader of the parser can be closed.
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public File getCoverageFile() {
+        return parser.getCoverageFile();
+    }
+
+    /**
+     * @return the parser run in the background
+     */
+    public CoverageParser getParser() {
+        return parser;
+    }
+
+    /**
+     * @return number of parsed sources waiting to be consumed
+     */
+    public int getBuffered() {
+        return queue.getBuffered();
+    }
+}
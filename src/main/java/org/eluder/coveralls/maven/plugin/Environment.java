@@ -36,7 +36,10 @@ import org.codehaus.plexus.util.StringUtils;
 import org.eluder.coveralls.maven.plugin.service.ServiceSetup;
 
 /**
- * Constructs and setups the project environment and continuous integration service.
+ * Constructs and setups the project environment and continuous integration service. The setup
+ * writes the resolved values to the fields of the mojo, so an environment must only be used with
+ * the mojo instance of a single execution. Maven creates a new mojo instance for every execution,
+ * also in parallel builds.
  */
 public final class Environment {
     
@@ -0,0 +1,72 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Coverage parser that merges the sources parsed by another parser with a coverage merger before
+ * passing them to the callback handler. The parser should load sources without content, see
+ * {@link org.eluder.coveralls.maven.plugin.domain.SourceLoader#createCoverageLoader()}, as the
+ * merger loads the merged sources again with content.
+ */
+public class MergingCoverageParser implements CoverageParser {
+
+    private final CoverageParser parser;
+    private final CoverageMerger merger;
+
+    public MergingCoverageParser(final CoverageParser parser, final CoverageMerger merger) {
+        if (parser == null) {
+            throw new IllegalArgumentException("parser must be defined");
+        }
+        if (merger == null) {
+            throw new IllegalArgumentException("merger must be defined");
+        }
+        this.parser = parser;
+        this.merger = merger;
+    }
+
+    @Override
+    public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        try {
+            parser.parse(merger);
+            merger.flush(callback);
+        } finally {
+            merger.close();
+        }
+    }
+
+    @Override
+    public File getCoverageFile() {
+        return parser.getCoverageFile();
+    }
+
+    public CoverageMerger getMerger() {
+        return merger;
+    }
+}
@@ -0,0 +1,176 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+
+/**
+ * Loads upcoming sources of a coverage report in the background. Source files are submitted in
+ * report order by a look-ahead reader, and taken in the same order by the parser. Submitting
+ * blocks while the window of loaded but not yet taken sources is full. Sources that the parser
+ * passed without taking are discarded, and sources that were not submitted in time are loaded
+ * directly, so the look-ahead can never stall the parser.
+ */
+final class SourcePrefetcher {
+
+    private static final int MAX_THREADS = 4;
+
+    private final SourceLoader sourceLoader;
+    private final Semaphore window;
+    private final ExecutorService executor;
+    private final LinkedList<Prefetch> queue = new LinkedList<Prefetch>();
+    private int hits;
+    private int misses;
+
+    SourcePrefetcher(final SourceLoader sourceLoader, final int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be positive, was " + window);
+        }
+        this.sourceLoader = sourceLoader;
+        this.window = new Semaphore(window);
+        this.executor = Executors.newFixedThreadPool(Math.min(window, MAX_THREADS) + 1, new DaemonThreadFactory("prefetch"));
+    }
+
+    /**
+     * Runs the look-ahead reader in the background.
+     */
+    void start(final Runnable lookAhead) {
+        executor.execute(lookAhead);
+    }
+
+    /**
+     * Submits a source file for loading, blocking while the window is full.
+     */
+    void submit(final String sourceFile) throws InterruptedException {
+        window.acquire();
+        Future<Source> future = executor.submit(new Callable<Source>() {
+            @Override
+            public Source call() throws IOException {
+                return sourceLoader.load(sourceFile);
+            }
+        });
+        synchronized (queue) {
+            queue.add(new Prefetch(sourceFile, future));
+        }
+    }
+
+    /**
+     * Takes the prefetched source, or loads it directly if the source was not submitted yet.
+     */
+    Source load(final String sourceFile) throws IOException {
+        Prefetch prefetch = take(sourceFile);
+        if (prefetch == null) {
+            return sourceLoader.load(sourceFile);
+        }
+        try {
+            return prefetch.future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading source " + sourceFile);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    int getHits() {
+        synchronized (queue) {
+            return hits;
+        }
+    }
+
+    int getMisses() {
+        synchronized (queue) {
+            return misses;
+        }
+    }
+
+    void close() {
+        executor.shutdownNow();
+        synchronized (queue) {
+            queue.clear();
+        }
+    }
+
+    private Prefetch take(final String sourceFile) {
+        synchronized (queue) {
+            int index = 0;
+            for (Prefetch prefetch : queue) {
+                if (prefetch.sourceFile.equals(sourceFile)) {
+                    discard(index);
+                    queue.removeFirst();
+                    window.release();
+                    hits++;
+                    return prefetch;
+                }
+                index++;
+            }
+            // the look-ahead is behind, everything submitted so far was already passed
+            discard(queue.size());
+            misses++;
+            return null;
+        }
+    }
+
+    private void discard(final int count) {
+        Iterator<Prefetch> iter = queue.iterator();
+        for (int i = 0; i < count; i++) {
+            iter.next().future.cancel(true);
+            iter.remove();
+            window.release();
+        }
+    }
+
+    private static final class Prefetch {
+
+        private final String sourceFile;
+        private final Future<Source> future;
+
+        private Prefetch(final String sourceFile, final Future<Source> future) {
+            this.sourceFile = sourceFile;
+            this.future = future;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+
+/**
+ * Bounded queue that hands the sources of a coverage parser running in a worker thread to the
+ * thread consuming them. The worker blocks when the queue is full, and the end of the sources is
+ * marked with the possible failure of the parser.
+ */
+final class SourceQueue {
+
+    private final CoverageParser parser;
+    private final BlockingQueue<Object> queue;
+
+    /**
+     * @param parser the parser producing the sources
+     * @param capacity maximum number of sources waiting to be consumed
+     */
+    SourceQueue(final CoverageParser parser, final int capacity) {
+        this.parser = parser;
+        this.queue = new ArrayBlockingQueue<Object>(capacity);
+    }
+
+    /**
+     * @return task that runs the parser and queues the parsed sources
+     */
+    Runnable createTask() {
+        return new ParserTask();
+    }
+
+    /**
+     * Hands the queued sources to the callback handler until the parser completes. Failures of the
+     * callback handler are thrown as is.
+     *
+     * @param callback the callback handler
+     * @return the failure of the parser, or <code>null</code> if the parser completed normally
+     * @throws ProcessingException if the callback handler fails
+     * @throws IOException if the callback handler fails or the thread is interrupted
+     */
+    Throwable drain(final SourceCallback callback) throws ProcessingException, IOException {
+        try {
+            while (true) {
+                Object next = queue.take();
+                if (next instanceof Completion) {
+                    return ((Completion) next).failure;
+                }
+                callback.onSource((Source) next);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing " + describe(parser));
+        }
+    }
+
+    /**
+     * @return number of sources waiting to be consumed
+     */
+    int getBuffered() {
+        int buffered = 0;
+        for (Object next : queue) {
+            if (next instanceof Source) {
+                buffered++;
+            }
+        }
+        return buffered;
+    }
+
+    static void rethrow(final Throwable failure) throws ProcessingException, IOException {
+        if (failure == null) {
+            return;
+        }
+        if (failure instanceof ProcessingException) {
+            throw (ProcessingException) failure;
+        }
+        if (failure instanceof IOException) {
+            throw (IOException) failure;
+        }
+        if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw new ProcessingException(failure);
+    }
+
+    static String describe(final CoverageParser parser) {
+        File file = parser.getCoverageFile();
+        return "coverage report " + (file == null ? parser.toString() : file.getAbsolutePath());
+    }
+
+    /**
+     * Marks the end of sources, with the possible failure.
+     */
+    private static final class Completion {
+
+        private final Throwable failure;
+
+        private Completion(final Throwable failure) {
+            this.failure = failure;
+        }
+    }
+
+    private final class ParserTask implements Runnable {
+
+        @Override
+        public void run() {
+            Throwable failure = null;
+            try {
+                parser.parse(new SourceCallback() {
+                    @Override
+                    public void onSource(final Source source) throws ProcessingException, IOException {
+                        try {
+                            queue.put(source);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException();
+                        }
+                    }
+                });
+            } catch (Exception ex) {
+                failure = ex;
+            } catch (Error ex) {
+                failure = ex;
+            }
+            try {
+                queue.put(new Completion(failure));
+            } catch (InterruptedException ex) {
+                // consumer has given up, nobody is waiting for the completion
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
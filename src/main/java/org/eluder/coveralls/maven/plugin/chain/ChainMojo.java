@@ -28,10 +28,14 @@ package org.eluder.coveralls.maven.plugin.chain;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
+import org.eluder.coveralls.maven.plugin.ConcurrentCoverageParser;
+import org.eluder.coveralls.maven.plugin.CoverageMerger;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.SourceCallback;
@@ -44,7 +48,7 @@ import org.eluder.coveralls.maven.plugin.saga.SagaParser;
 /**
  * @author Jakub Bednář (27/12/2013 09:57)
  */
-@Mojo(name = "chain", threadSafe = false)
+@Mojo(name = "chain", threadSafe = true)
 public class ChainMojo extends AbstractCoverallsMojo {
 
     /**
@@ -65,40 +69,65 @@ public class ChainMojo extends AbstractCoverallsMojo {
     @Parameter(property = "sagaFile", defaultValue = "${project.build.directory}/saga-coverage/total-coverage.xml")
     protected File sagaFile;
 
+    /**
+     * Merge the coverage of all classes in a Cobertura source file to a single source.
+     */
+    @Parameter(property = "coalesceSources", defaultValue = "false")
+    protected boolean coalesceSources;
+
+    /**
+     * Merge the coverage of sources found from multiple reports to a single source.
+     */
+    @Parameter(property = "mergeSources", defaultValue = "false")
+    protected boolean mergeSources;
+
+    private int coverageSources;
+
     @Override
     protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
-        return null;
+        List<CoverageParser> parsers = new ArrayList<CoverageParser>();
+        SourceLoader parserLoader = (mergeSources ? sourceLoader.createCoverageLoader() : sourceLoader);
+
+        if (coberturaFile != null && coberturaFile.exists()) {
+            getLog().info("  .. from Cobertura report: " + coberturaFile.getAbsolutePath());
+            if (coalesceSources) {
+                // the merger merges the classes of a file by name
+                CoverageParser parser = new CoberturaParser(coberturaFile, parserLoader.createCoverageLoader(), byteScanner);
+                parsers.add(createMergingCoverageParser(parser, parserLoader, CoverageMerger.Hits.SUM));
+            } else {
+                parsers.add(new CoberturaParser(coberturaFile, parserLoader, byteScanner));
+            }
+        }
+
+        if (jacocoFile != null && jacocoFile.exists()) {
+            getLog().info("  .. from JaCoCo report: " + jacocoFile.getAbsolutePath());
+            parsers.add(new JaCoCoParser(jacocoFile, parserLoader, byteScanner));
+        }
+
+        if (sagaFile != null && sagaFile.exists()) {
+            getLog().info("  .. from Saga report: " + sagaFile.getAbsolutePath());
+            parsers.add(new SagaParser(sagaFile, parserLoader, byteScanner));
+        }
+
+        coverageSources = parsers.size();
+        CoverageParser chained = new ConcurrentCoverageParser(project.getBasedir(), parsers, parallelism);
+        if (mergeSources) {
+            chained = createMergingCoverageParser(chained, sourceLoader);
+        }
+        return chained;
     }
 
     @Override
     protected void writeCoveralls(final JsonWriter writer, final SourceLoader sourceLoader, final SourceCallback sourceCallback, final CoverageParser parser) throws ProcessingException, IOException {
         try {
-            getLog().info("Writing Coveralls data to " + writer.getCoverallsFile().getAbsolutePath());
+            getLog().info("Writing Coveralls data to " + describeOutput(writer));
             long now = System.currentTimeMillis();
             writer.writeStart();
-            int sources = 0;
-
-            if (coberturaFile != null && coberturaFile.exists()) {
-                sources++;
-                getLog().info("  .. from Cobertura report: " + coberturaFile.getAbsolutePath());
-                new CoberturaParser(coberturaFile, sourceLoader).parse(sourceCallback);
-            }
-
-            if (jacocoFile != null && jacocoFile.exists()) {
-                sources++;
-                getLog().info("  .. from JaCoCo report: " + jacocoFile.getAbsolutePath());
-                new JaCoCoParser(jacocoFile, sourceLoader).parse(sourceCallback);
-            }
-
-            if (sagaFile != null && sagaFile.exists()) {
-                sources++;
-                getLog().info("  .. from Saga report: " + sagaFile.getAbsolutePath());
-                new SagaParser(sagaFile, sourceLoader).parse(sourceCallback);
-            }
-
+            parser.parse(sourceCallback);
+            logMergedSources(parser);
             writer.writeEnd();
             long duration = System.currentTimeMillis() - now;
-            getLog().info("Successfully wrote Coveralls data in " + duration + "ms from " + sources + " coverage sources");
+            getLog().info("Successfully wrote Coveralls data in " + duration + "ms from " + coverageSources + " coverage sources");
         } finally {
             writer.close();
         }
@@ -31,10 +31,11 @@ import java.io.File;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
+import org.eluder.coveralls.maven.plugin.CoverageMerger;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 
-@Mojo(name = "cobertura", threadSafe = false, aggregator = true)
+@Mojo(name = "cobertura", threadSafe = true, aggregator = true)
 public class CoberturaMojo extends AbstractCoverallsMojo {
 
     /**
@@ -43,9 +44,27 @@ public class CoberturaMojo extends AbstractCoverallsMojo {
     @Parameter(property = "coverageFile", defaultValue = "${project.reporting.outputDirectory}/cobertura/coverage.xml")
     protected File coverageFile;
     
+    /**
+     * Merge the coverage of all classes in a source file to a single source.
+     */
+    @Parameter(property = "coalesceSources", defaultValue = "false")
+    protected boolean coalesceSources;
+    
     @Override
     protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
-        return new CoberturaParser(coverageFile, sourceLoader);
+        if (coalesceSources) {
+            // the merger merges the classes of a file by name
+            CoverageParser parser = createCoberturaParser(sourceLoader.createCoverageLoader());
+            return createMergingCoverageParser(parser, sourceLoader, CoverageMerger.Hits.SUM);
+        }
+        return createCoberturaParser(sourceLoader);
+    }
+
+    private CoverageParser createCoberturaParser(final SourceLoader sourceLoader) {
+        if (parallelism > 1 && byteScanner) {
+            return new ShardedCoberturaParser(coverageFile, sourceLoader, parallelism);
+        }
+        return new CoberturaParser(coverageFile, sourceLoader, byteScanner);
     }
 
 }
@@ -29,54 +29,73 @@ package org.eluder.coveralls.maven.plugin.cobertura;
 import java.io.File;
 import java.io.IOException;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
-
 import org.eluder.coveralls.maven.plugin.AbstractXmlEventParser;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.SourceCallback;
 import org.eluder.coveralls.maven.plugin.domain.Source;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.XmlElement;
 
+/**
+ * Parser for Cobertura coverage reports. Each <code>&lt;class&gt;</code> element is passed to the
+ * callback handler as its own source, with inner classes identified by a classifier. The classes
+ * of a source file can be merged to a single source with a
+ * {@link org.eluder.coveralls.maven.plugin.CoverageMerger}, which merges sources by name.
+ */
 public class CoberturaParser extends AbstractXmlEventParser {
 
     protected Source source;
-    protected boolean inMethods;
     
     public CoberturaParser(final File coverageFile, final SourceLoader sourceLoader) {
-        super(coverageFile, sourceLoader);
+        this(coverageFile, sourceLoader, false);
     }
     
-    @Override
-    protected void onEvent(final XMLStreamReader xml, final SourceCallback callback) throws XMLStreamException, ProcessingException, IOException {
-        if (isStartElement(xml, "class")) {
-            source = loadSource(xml.getAttributeValue(null, "filename"));
-            String className = xml.getAttributeValue(null, "name");
-            int classifierPosition = className.indexOf('$');
-            if (classifierPosition > 0) {
-                source.setClassifier(className.substring(classifierPosition));
+    public CoberturaParser(final File coverageFile, final SourceLoader sourceLoader, final boolean byteScanner) {
+        super(coverageFile, sourceLoader, byteScanner);
+        // method lines duplicate the class lines
+        skipElement("methods");
+        skipElement("conditions");
+        onStartElement("class", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException, IOException {
+                source = loadSource(element.getAttributeValue("filename"));
+                String className = element.getAttributeValue("name");
+                int classifierPosition = className.indexOf('$');
+                if (classifierPosition > 0) {
+                    source.setClassifier(className.substring(classifierPosition));
+                }
+            }
+        });
+        onStartElement("line", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException {
+                if (source == null) {
+                    return;
+                }
+                int number = element.getIntAttributeValue("number");
+                int lines = source.getCoverage().length;
+                if (number < 1 || number > lines) {
+                    throw new ProcessingException("Line " + number + " of " + getCoverageFile().getAbsolutePath()
+                            + " does not match " + source.getName() + " with " + lines + " lines");
+                }
+                source.addCoverage(number, element.getIntAttributeValue("hits"));
+            }
+        });
+        onEndElement("class", new EndElementHandler() {
+            @Override
+            public void onEnd(final SourceCallback callback) throws ProcessingException, IOException {
+                if (source != null) {
+                    callback.onSource(source);
+                }
+                source = null;
+            }
+        });
+        prefetchSource("class", new SourceFileResolver() {
+            @Override
+            public String resolve(final XmlElement element) throws ProcessingException {
+                return element.getAttributeValue("filename");
             }
-        } else
-        
-        if (isStartElement(xml, "methods") && source != null) {
-            inMethods = true;
-        } else
-        
-        if (isEndElement(xml, "methods") && source != null) {
-            inMethods = false;
-        } else
-        
-        if (isStartElement(xml, "line") && !inMethods && source != null) {
-            source.addCoverage(
-                    Integer.parseInt(xml.getAttributeValue(null, "number")),
-                    Integer.valueOf(xml.getAttributeValue(null, "hits"))
-            );
-        } else
-        
-        if (isEndElement(xml, "class") && source != null) {
-            callback.onSource(source);
-            source = null;
-        }
+        });
     }
 
 }
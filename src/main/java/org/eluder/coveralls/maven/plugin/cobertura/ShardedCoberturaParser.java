@@ -0,0 +1,163 @@
+package org.eluder.coveralls.maven.plugin.cobertura;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLStreamConstants;
+
+import org.eluder.coveralls.maven.plugin.ConcurrentCoverageParser;
+import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.XmlScanner;
+
+/**
+ * Parses a single Cobertura report concurrently. The report is first indexed for the byte offsets
+ * of the <code>&lt;class&gt;</code> elements, and the classes are split to contiguous shards of
+ * about equal size. Shards are parsed with the byte scanner on a bounded worker pool, and the
+ * sources are passed to the callback handler in the document order. Reports not supported by the
+ * byte scanner are parsed sequentially with StAX.
+ */
+public class ShardedCoberturaParser implements CoverageParser {
+
+    private static final byte[] CLASS = XmlScanner.name("class");
+
+    /** Number of shards per worker thread, to balance classes of different size. */
+    private static final int SHARDS_PER_THREAD = 4;
+
+    private final File coverageFile;
+    private final SourceLoader sourceLoader;
+    private final int parallelism;
+
+    /**
+     * @param coverageFile the Cobertura report
+     * @param sourceLoader the source loader
+     * @param parallelism maximum number of shards parsed concurrently
+     */
+    public ShardedCoberturaParser(final File coverageFile, final SourceLoader sourceLoader, final int parallelism) {
+        this.coverageFile = coverageFile;
+        this.sourceLoader = sourceLoader;
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        if (parallelism < 2 || !XmlScanner.isSupported(coverageFile)) {
+            createParser().parse(callback);
+            return;
+        }
+        XmlScanner xml = XmlScanner.map(coverageFile);
+        List<CoverageParser> shards = createShards(xml, indexClasses(xml));
+        new ConcurrentCoverageParser(coverageFile, shards, parallelism).parse(callback);
+    }
+
+    @Override
+    public File getCoverageFile() {
+        return coverageFile;
+    }
+
+    protected CoberturaParser createParser() {
+        return new CoberturaParser(coverageFile, sourceLoader, true);
+    }
+
+    /**
+     * @return the start and end offsets of all class elements, in pairs
+     */
+    private int[] indexClasses(final XmlScanner xml) throws ProcessingException {
+        int[] offsets = new int[256];
+        int count = 0;
+        while (xml.hasNext()) {
+            if (xml.next() == XMLStreamConstants.START_ELEMENT && xml.isStartElement(CLASS)) {
+                if (count + 2 > offsets.length) {
+                    int[] grown = new int[offsets.length * 2];
+                    System.arraycopy(offsets, 0, grown, 0, count);
+                    offsets = grown;
+                }
+                offsets[count++] = xml.getTagOffset();
+                // classes do not nest, so the end tag can be searched without scanning the lines
+                xml.skipToEndElement();
+                offsets[count++] = xml.getOffset();
+            }
+        }
+        int[] index = new int[count];
+        System.arraycopy(offsets, 0, index, 0, count);
+        return index;
+    }
+
+    private List<CoverageParser> createShards(final XmlScanner xml, final int[] index) {
+        int classes = index.length / 2;
+        List<CoverageParser> shards = new ArrayList<CoverageParser>();
+        if (classes == 0) {
+            return shards;
+        }
+        int firstOffset = index[0];
+        long totalBytes = index[index.length - 1] - firstOffset;
+        int shardCount = (int) Math.min(classes, (long) parallelism * SHARDS_PER_THREAD);
+        int shardStart = 0;
+        for (int shard = 1; shard <= shardCount; shard++) {
+            // shard boundary at the first class ending after the shard's share of bytes
+            long target = firstOffset + totalBytes * shard / shardCount;
+            int shardEnd = shardStart;
+            while (shardEnd < classes - 1 && index[shardEnd * 2 + 1] < target) {
+                shardEnd++;
+            }
+            if (shard == shardCount) {
+                shardEnd = classes - 1;
+            }
+            shards.add(new Shard(xml.region(index[shardStart * 2], index[shardEnd * 2 + 1])));
+            shardStart = shardEnd + 1;
+            if (shardStart >= classes) {
+                break;
+            }
+        }
+        return shards;
+    }
+
+    private final class Shard implements CoverageParser {
+
+        private final XmlScanner region;
+
+        private Shard(final XmlScanner region) {
+            this.region = region;
+        }
+
+        @Override
+        public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+            createParser().parse(region, callback);
+        }
+
+        @Override
+        public File getCoverageFile() {
+            return coverageFile;
+        }
+    }
+}
@@ -0,0 +1,464 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.InflaterInputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Reads the git details of a repository directly from the git directory, without initializing
+ * JGit. HEAD is resolved from loose refs and <code>packed-refs</code>, the HEAD commit is read from
+ * its loose object and the remotes from the repository config. Linked worktrees are supported
+ * with the <code>commondir</code> file of the worktree git directory.
+ * <p>
+ * Returns <code>null</code> for anything this reader does not handle, e.g. a packed HEAD commit,
+ * a commit with an explicit encoding or an unborn branch, so that the caller can fall back to
+ * JGit. The parsed commit and remotes are memoized per git directory for the lifetime of the JVM.
+ * HEAD is resolved again on every read, and the remotes are parsed again when the config file
+ * changes.
+ */
+final class GitDirectoryReader {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String REF_PREFIX = "ref: ";
+    private static final String GITDIR_PREFIX = "gitdir:";
+    private static final int MAX_SYMBOLIC_REFS = 5;
+    private static final int OBJECT_ID_LENGTH = 40;
+
+    private static final ConcurrentMap<String, Snapshot> SNAPSHOTS = new ConcurrentHashMap<String, Snapshot>();
+
+    private GitDirectoryReader() {
+        // static methods only
+    }
+
+    /**
+     * Finds the git directory of a working tree directory or any of its parents. A
+     * <code>.git</code> file is followed to the git directory it names.
+     *
+     * @param directory the directory in the working tree
+     * @return the git directory, or <code>null</code> if not found
+     * @throws IOException if an I/O error occurs
+     */
+    static File findGitDir(final File directory) throws IOException {
+        for (File current = directory.getAbsoluteFile(); current != null; current = current.getParentFile()) {
+            File dotGit = new File(current, ".git");
+            if (dotGit.isDirectory()) {
+                return (new File(dotGit, "HEAD").isFile() ? dotGit : null);
+            }
+            if (dotGit.isFile()) {
+                String line = readLine(dotGit);
+                if (line == null || !line.startsWith(GITDIR_PREFIX)) {
+                    return null;
+                }
+                File gitDir = resolve(current, line.substring(GITDIR_PREFIX.length()).trim());
+                return (new File(gitDir, "HEAD").isFile() ? gitDir : null);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param gitDir the git directory
+     * @return the git details, or <code>null</code> if the repository must be read with JGit
+     * @throws IOException if an I/O error occurs
+     */
+    static Git read(final File gitDir) throws IOException {
+        File commonDir = gitDir;
+        String common = readLine(new File(gitDir, "commondir"));
+        if (common != null) {
+            commonDir = resolve(gitDir, common.trim());
+        }
+
+        String head = readLine(new File(gitDir, "HEAD"));
+        if (head == null) {
+            return null;
+        }
+        String id;
+        String branch;
+        if (head.startsWith(REF_PREFIX)) {
+            String ref = head.substring(REF_PREFIX.length()).trim();
+            branch = shortenRefName(ref);
+            id = resolveRef(gitDir, commonDir, ref);
+        } else {
+            id = head.trim();
+            branch = id;
+        }
+        if (!isObjectId(id)) {
+            return null;
+        }
+
+        String key = gitDir.getCanonicalPath();
+        Snapshot snapshot = SNAPSHOTS.get(key);
+        File config = new File(commonDir, "config");
+        long configModified = config.lastModified();
+        long configLength = config.length();
+
+        Git.Head commit = (snapshot != null && snapshot.id.equals(id) ? snapshot.head : readCommit(commonDir, id));
+        if (commit == null) {
+            return null;
+        }
+        List<Git.Remote> remotes;
+        if (snapshot != null && snapshot.configModified == configModified && snapshot.configLength == configLength) {
+            remotes = snapshot.remotes;
+        } else {
+            remotes = readRemotes(config);
+            if (remotes == null) {
+                return null;
+            }
+        }
+        SNAPSHOTS.put(key, new Snapshot(id, commit, configModified, configLength, remotes));
+        return new Git(commit, branch, remotes);
+    }
+
+    private static String resolveRef(final File gitDir, final File commonDir, final String name) throws IOException {
+        String ref = name;
+        for (int i = 0; i < MAX_SYMBOLIC_REFS; i++) {
+            String value = readLine(new File(gitDir, ref));
+            if (value == null && !commonDir.equals(gitDir)) {
+                value = readLine(new File(commonDir, ref));
+            }
+            if (value == null) {
+                return findPackedRef(commonDir, ref);
+            }
+            if (!value.startsWith(REF_PREFIX)) {
+                return value.trim();
+            }
+            ref = value.substring(REF_PREFIX.length()).trim();
+        }
+        return null;
+    }
+
+    private static String findPackedRef(final File commonDir, final String ref) throws IOException {
+        File packedRefs = new File(commonDir, "packed-refs");
+        if (!packedRefs.isFile()) {
+            return null;
+        }
+        for (String line : readLines(packedRefs)) {
+            if (line.length() > OBJECT_ID_LENGTH && line.charAt(OBJECT_ID_LENGTH) == ' ' && line.substring(OBJECT_ID_LENGTH + 1).equals(ref)) {
+                return line.substring(0, OBJECT_ID_LENGTH);
+            }
+        }
+        return null;
+    }
+
+    private static Git.Head readCommit(final File commonDir, final String id) throws IOException {
+        File object = new File(commonDir, "objects/" + id.substring(0, 2) + "/" + id.substring(2));
+        if (!object.isFile()) {
+            return null;
+        }
+        byte[] raw = inflate(object);
+        int header = indexOf(raw, (byte) 0, 0);
+        if (header < 0 || !new String(raw, 0, header, UTF_8).startsWith("commit ")) {
+            return null;
+        }
+        String content = decode(raw, header + 1, raw.length - header - 1);
+        if (content == null) {
+            return null;
+        }
+        String[] author = null;
+        String[] committer = null;
+        int position = 0;
+        int end;
+        while ((end = content.indexOf('\n', position)) > position) {
+            String line = content.substring(position, end);
+            if (line.startsWith("author ")) {
+                author = parseIdent(line.substring("author ".length()));
+            } else if (line.startsWith("committer ")) {
+                committer = parseIdent(line.substring("committer ".length()));
+            } else if (line.startsWith("encoding ")) {
+                return null;
+            }
+            position = end + 1;
+        }
+        if (author == null || committer == null) {
+            return null;
+        }
+        String message = (end == position ? content.substring(end + 1) : "");
+        return new Git.Head(id, author[0], author[1], committer[0], committer[1], message);
+    }
+
+    private static String[] parseIdent(final String ident) {
+        int emailStart = ident.indexOf('<');
+        int emailEnd = ident.indexOf('>', emailStart + 1);
+        if (emailStart < 0 || emailEnd < 0) {
+            return null;
+        }
+        int nameEnd = emailStart;
+        while (nameEnd > 0 && Character.isWhitespace(ident.charAt(nameEnd - 1))) {
+            nameEnd--;
+        }
+        return new String[] { ident.substring(0, nameEnd), ident.substring(emailStart + 1, emailEnd) };
+    }
+
+    /**
+     * Reads the remotes in the order of their first section, with the first url of each remote.
+     * Returns <code>null</code> for config syntax that is not handled.
+     */
+    private static List<Git.Remote> readRemotes(final File config) throws IOException {
+        Map<String, String> urls = new LinkedHashMap<String, String>();
+        if (!config.isFile()) {
+            return Collections.<Git.Remote>emptyList();
+        }
+        String remote = null;
+        for (String rawLine : readLines(config)) {
+            String line = rawLine.trim();
+            if (line.isEmpty() || line.charAt(0) == '#' || line.charAt(0) == ';') {
+                continue;
+            }
+            if (line.endsWith("\\")) {
+                return null;
+            }
+            if (line.charAt(0) == '[') {
+                int close = line.lastIndexOf(']');
+                if (close < 0) {
+                    return null;
+                }
+                String section = line.substring(1, close).trim();
+                if (section.toLowerCase(Locale.ENGLISH).startsWith("include")) {
+                    return null;
+                }
+                remote = parseRemoteSection(section);
+                if (remote != null && !urls.containsKey(remote)) {
+                    urls.put(remote, null);
+                }
+                String rest = line.substring(close + 1).trim();
+                if (rest.isEmpty() || rest.charAt(0) == '#' || rest.charAt(0) == ';') {
+                    continue;
+                }
+                line = rest;
+            }
+            if (remote != null) {
+                int equals = line.indexOf('=');
+                String name = (equals < 0 ? line : line.substring(0, equals)).trim();
+                if ("url".equalsIgnoreCase(name) && equals >= 0 && urls.get(remote) == null) {
+                    String value = parseValue(line.substring(equals + 1));
+                    if (value == null) {
+                        return null;
+                    }
+                    urls.put(remote, value);
+                }
+            }
+        }
+        List<Git.Remote> remotes = new ArrayList<Git.Remote>(urls.size());
+        for (Map.Entry<String, String> url : urls.entrySet()) {
+            remotes.add(new Git.Remote(url.getKey(), url.getValue()));
+        }
+        return Collections.unmodifiableList(remotes);
+    }
+
+    private static String parseRemoteSection(final String section) {
+        int quote = section.indexOf('"');
+        if (quote < 0) {
+            int dot = section.indexOf('.');
+            if (dot > 0 && "remote".equalsIgnoreCase(section.substring(0, dot))) {
+                return section.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+            }
+            return null;
+        }
+        if (!"remote".equalsIgnoreCase(section.substring(0, quote).trim()) || !section.endsWith("\"")) {
+            return null;
+        }
+        StringBuilder name = new StringBuilder();
+        for (int i = quote + 1; i < section.length() - 1; i++) {
+            char c = section.charAt(i);
+            if (c == '\\' && i + 1 < section.length() - 1) {
+                c = section.charAt(++i);
+            }
+            name.append(c);
+        }
+        return name.toString();
+    }
+
+    private static String parseValue(final String raw) {
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        int trailing = 0;
+        String text = raw.trim();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (!quoted && (c == '#' || c == ';')) {
+                break;
+            }
+            if (c == '"') {
+                quoted = !quoted;
+                trailing = 0;
+                continue;
+            }
+            if (c == '\\') {
+                if (++i == text.length()) {
+                    return null;
+                }
+                char escaped = text.charAt(i);
+                switch (escaped) {
+                    case 'n': c = '\n'; break;
+                    case 't': c = '\t'; break;
+                    case 'b': c = '\b'; break;
+                    case '\\': c = '\\'; break;
+                    case '"': c = '"'; break;
+                    default: return null;
+                }
+                trailing = 0;
+                value.append(c);
+                continue;
+            }
+            if (!quoted && Character.isWhitespace(c)) {
+                trailing++;
+            } else {
+                trailing = 0;
+            }
+            value.append(c);
+        }
+        if (quoted) {
+            return null;
+        }
+        value.setLength(value.length() - trailing);
+        return value.toString();
+    }
+
+    private static String shortenRefName(final String ref) {
+        String[] prefixes = { "refs/heads/", "refs/tags/", "refs/remotes/" };
+        for (String prefix : prefixes) {
+            if (ref.startsWith(prefix)) {
+                return ref.substring(prefix.length());
+            }
+        }
+        return ref;
+    }
+
+    private static boolean isObjectId(final String id) {
+        if (id == null || id.length() != OBJECT_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static File resolve(final File base, final String path) {
+        File file = new File(path);
+        return (file.isAbsolute() ? file : new File(base, path));
+    }
+
+    private static String readLine(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        List<String> lines = readLines(file);
+        return (lines.isEmpty() ? null : lines.get(0));
+    }
+
+    private static List<String> readLines(final File file) throws IOException {
+        InputStream input = new FileInputStream(file);
+        try {
+            String content = decode(IOUtil.toByteArray(input), 0, (int) file.length());
+            if (content == null) {
+                throw new IOException("Invalid UTF-8 in " + file.getAbsolutePath());
+            }
+            List<String> lines = new ArrayList<String>();
+            for (String line : content.split("\r?\n")) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    private static byte[] inflate(final File object) throws IOException {
+        InputStream input = new InflaterInputStream(new FileInputStream(object));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) object.length() * 2);
+            IOUtil.copy(input, bytes);
+            return bytes.toByteArray();
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    private static String decode(final byte[] bytes, final int offset, final int length) {
+        try {
+            return UTF_8.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPORT)
+                    .onUnmappableCharacter(CodingErrorAction.REPORT)
+                    .decode(ByteBuffer.wrap(bytes, offset, Math.min(length, bytes.length - offset)))
+                    .toString();
+        } catch (CharacterCodingException ex) {
+            return null;
+        }
+    }
+
+    private static int indexOf(final byte[] bytes, final byte value, final int from) {
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Parsed commit and remotes of a git directory.
+     */
+    private static final class Snapshot {
+
+        private final String id;
+        private final Git.Head head;
+        private final long configModified;
+        private final long configLength;
+        private final List<Git.Remote> remotes;
+
+        private Snapshot(final String id, final Git.Head head, final long configModified, final long configLength, final List<Git.Remote> remotes) {
+            this.id = id;
+            this.head = head;
+            this.configModified = configModified;
+            this.configLength = configLength;
+            this.remotes = remotes;
+        }
+    }
+}
@@ -47,7 +47,25 @@ public class GitRepository {
         this.sourceDirectory = sourceDirectory;
     }
     
+    /**
+     * Loads the git details. The git directory is read directly when possible, and with JGit when
+     * the repository has packed HEAD commit or other details the direct reader does not handle.
+     *
+     * @return the git details
+     * @throws IOException if an I/O error occurs
+     */
     public Git load() throws IOException {
+        File gitDir = GitDirectoryReader.findGitDir(this.sourceDirectory);
+        if (gitDir != null) {
+            Git git = GitDirectoryReader.read(gitDir);
+            if (git != null) {
+                return git;
+            }
+        }
+        return loadWithJGit();
+    }
+
+    Git loadWithJGit() throws IOException {
         Repository repository = new RepositoryBuilder().findGitDir(this.sourceDirectory).build();
         try {
             Git.Head head = getHead(repository);
@@ -61,7 +79,13 @@ public class GitRepository {
 
     private Git.Head getHead(final Repository repository) throws IOException {
         ObjectId revision = repository.resolve(Constants.HEAD);
-        RevCommit commit = new RevWalk(repository).parseCommit(revision);
+        RevWalk walk = new RevWalk(repository);
+        RevCommit commit;
+        try {
+            commit = walk.parseCommit(revision);
+        } finally {
+            walk.release();
+        }
         Git.Head head = new Git.Head(
                 revision.getName(),
                 commit.getAuthorIdent().getName(),
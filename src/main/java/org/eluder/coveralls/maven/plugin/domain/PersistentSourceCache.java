@@ -0,0 +1,414 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.plexus.util.IOUtil;
+
+/**
+ * Source cache persisted to a binary index file between builds. For each source file the index
+ * stores the file size and modification time, the MD5 digest of the file, the number of lines,
+ * and optionally the normalized source content encoded in UTF-8. The index is memory mapped when
+ * opened and entries are read from the mapping on demand, so unchanged sources are created from
+ * the cached bytes without reading or decoding the source file.
+ * <p>
+ * Sources loaded during the build are added to the index when the cache is closed. Entries of
+ * deleted source files are dropped. The index is ignored if it was written with another source
+ * encoding.
+ * <p>
+ * A mapped file can not be unmapped or replaced on all platforms while the mapping is alive, so
+ * the index alternates between the index file and an alternate file with <code>.alt</code>
+ * suffix. The index with the higher generation is opened, and the updated index is written to the
+ * other file.
+ * <p>
+ * File format, all numbers big-endian:
+ * <pre>
+ * int magic, int version, long generation, short encoding length, encoding, int entry count
+ * entries: short path length, path (UTF-8), long size, long mtime, 16 bytes MD5, int lines,
+ *          int content length (-1 if not cached), content (UTF-8)
+ * </pre>
+ */
+public final class PersistentSourceCache implements Closeable {
+
+    private static final int MAGIC = 0x43565343;
+    private static final int VERSION = 2;
+    private static final int DIGEST_LENGTH = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final String encoding;
+    private final File mapped;
+    private final long generation;
+    private final ByteBuffer index;
+    private final Map<String, int[]> entries;
+    private final ConcurrentMap<String, Entry> updates = new ConcurrentHashMap<String, Entry>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private boolean replaceFailed;
+
+    private PersistentSourceCache(final File file, final String encoding, final File mapped, final long generation, final ByteBuffer index, final Map<String, int[]> entries) {
+        this.file = file;
+        this.encoding = encoding;
+        this.mapped = mapped;
+        this.generation = generation;
+        this.index = index;
+        this.entries = entries;
+    }
+
+    /**
+     * Opens the cache. A missing, corrupted or incompatible index file results to an empty cache,
+     * and is replaced when the cache is closed.
+     *
+     * @param file the index file
+     * @param encoding the source encoding
+     * @return the cache
+     * @throws IOException if an I/O error occurs
+     */
+    public static PersistentSourceCache open(final File file, final String encoding) throws IOException {
+        File mapped = null;
+        long generation = 0;
+        for (File candidate : new File[] { file, alternate(file) }) {
+            long candidateGeneration = readGeneration(candidate);
+            if (candidateGeneration > generation) {
+                mapped = candidate;
+                generation = candidateGeneration;
+            }
+        }
+        Map<String, int[]> entries = new HashMap<String, int[]>();
+        ByteBuffer index = null;
+        if (mapped != null) {
+            index = map(mapped);
+            try {
+                if (!readIndex(index, encoding, entries)) {
+                    entries.clear();
+                }
+            } catch (BufferUnderflowException ex) {
+                entries.clear();
+            } catch (IllegalArgumentException ex) {
+                entries.clear();
+            }
+        }
+        return new PersistentSourceCache(file, encoding, mapped, generation, index, entries);
+    }
+
+    private static File alternate(final File file) {
+        return new File(file.getPath() + ".alt");
+    }
+
+    /**
+     * @return generation of the index file, or 0 if the file is missing or not an index file
+     */
+    private static long readGeneration(final File file) throws IOException {
+        if (!file.isFile() || file.length() > Integer.MAX_VALUE) {
+            return 0;
+        }
+        DataInputStream input = new DataInputStream(new FileInputStream(file));
+        try {
+            if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                return 0;
+            }
+            return Math.max(input.readLong(), 0);
+        } catch (EOFException ex) {
+            return 0;
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    private static ByteBuffer map(final File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    private static boolean readIndex(final ByteBuffer index, final String encoding, final Map<String, int[]> entries) {
+        // magic, version and generation are checked when the file is selected
+        index.position(4 + 4 + 8);
+        if (!encoding.equals(readString(index))) {
+            return false;
+        }
+        int count = index.getInt();
+        for (int i = 0; i < count; i++) {
+            int start = index.position();
+            String path = readString(index);
+            index.position(index.position() + 8 + 8 + DIGEST_LENGTH + 4);
+            int contentLength = index.getInt();
+            index.position(index.position() + Math.max(contentLength, 0));
+            entries.put(path, new int[] { start, index.position() });
+        }
+        return true;
+    }
+
+    /**
+     * Creates a source from a cached entry.
+     *
+     * @param path the canonical path of the source file
+     * @param length the current length of the source file
+     * @param lastModified the current modification time of the source file
+     * @param name the name of the created source
+     * @param digest <code>true</code> to create a source identified by digest
+     * @return new source, or <code>null</code> if not cached, the file has changed or content is
+     *         not cached
+     */
+    Source get(final String path, final long length, final long lastModified, final String name, final boolean digest) {
+        Entry entry = updates.get(path);
+        if (entry == null) {
+            entry = read(path);
+        }
+        if (entry == null || entry.length != length || entry.lastModified != lastModified || (!digest && entry.content == null)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (digest) {
+            return new Source(name, entry.lines, SourceLoader.toHex(entry.digest));
+        }
+        return new Source(name, entry.content, entry.lines);
+    }
+
+    /**
+     * Adds a loaded source to the cache.
+     *
+     * @param path the canonical path of the source file
+     * @param length the length of the source file
+     * @param lastModified the modification time of the source file
+     * @param digest the MD5 digest of the source file
+     * @param source the loaded source, with or without content
+     */
+    void put(final String path, final long length, final long lastModified, final byte[] digest, final Source source) {
+        byte[] content = source.getUtf8Source();
+        if (content == null && source.getSource() != null) {
+            content = source.getSource().getBytes(UTF_8);
+        }
+        if (content == null) {
+            // keep the cached content of an unchanged file loaded by digest
+            Entry previous = updates.get(path);
+            if (previous == null) {
+                previous = read(path);
+            }
+            if (previous != null && previous.length == length && previous.lastModified == lastModified) {
+                content = previous.content;
+            }
+        }
+        updates.put(path, new Entry(length, lastModified, digest, source.getCoverage().length, content));
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return number of sources in the index file and added during the build
+     */
+    public int getSize() {
+        int size = entries.size();
+        for (String path : updates.keySet()) {
+            if (!entries.containsKey(path)) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return <code>true</code> if the updated index could not replace the previous index file when
+     *         the cache was closed, e.g. because the file was still mapped by another cache
+     */
+    public boolean isReplaceFailed() {
+        return replaceFailed;
+    }
+
+    /**
+     * Writes the index file if sources were added during the build. The index is written to the
+     * file that is not mapped by this cache. A file that can not be replaced is left as is, and is
+     * reported by {@link #isReplaceFailed()}.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (updates.isEmpty()) {
+            return;
+        }
+        File target = (file.equals(mapped) ? alternate(file) : file);
+        File parent = target.getAbsoluteFile().getParentFile();
+        if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Could not create source cache directory " + parent.getAbsolutePath());
+        }
+        File temp = File.createTempFile(target.getName(), ".tmp", parent);
+        DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        try {
+            writeIndex(output);
+        } catch (IOException ex) {
+            IOUtil.close(output);
+            temp.delete();
+            throw ex;
+        } finally {
+            IOUtil.close(output);
+        }
+        if (!temp.renameTo(target) && (!target.delete() || !temp.renameTo(target))) {
+            temp.delete();
+            replaceFailed = true;
+        }
+        updates.clear();
+    }
+
+    private void writeIndex(final DataOutputStream output) throws IOException {
+        Map<String, int[]> retained = new HashMap<String, int[]>();
+        for (Map.Entry<String, int[]> entry : entries.entrySet()) {
+            if (!updates.containsKey(entry.getKey()) && new File(entry.getKey()).isFile()) {
+                retained.put(entry.getKey(), entry.getValue());
+            }
+        }
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(generation + 1);
+        writeString(output, encoding);
+        output.writeInt(retained.size() + updates.size());
+        byte[] buffer = new byte[8192];
+        for (int[] range : retained.values()) {
+            // unchanged entries are copied as is
+            ByteBuffer copy = index.duplicate();
+            copy.position(range[0]);
+            int remaining = range[1] - range[0];
+            while (remaining > 0) {
+                int count = Math.min(remaining, buffer.length);
+                copy.get(buffer, 0, count);
+                output.write(buffer, 0, count);
+                remaining -= count;
+            }
+        }
+        for (Map.Entry<String, Entry> update : updates.entrySet()) {
+            Entry entry = update.getValue();
+            writeString(output, update.getKey());
+            output.writeLong(entry.length);
+            output.writeLong(entry.lastModified);
+            output.write(entry.digest);
+            output.writeInt(entry.lines);
+            if (entry.content == null) {
+                output.writeInt(-1);
+            } else {
+                output.writeInt(entry.content.length);
+                output.write(entry.content);
+            }
+        }
+    }
+
+    private Entry read(final String path) {
+        int[] range = entries.get(path);
+        if (range == null) {
+            return null;
+        }
+        try {
+            return read(range);
+        } catch (BufferUnderflowException ex) {
+            return null;
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+
+    private Entry read(final int[] range) {
+        ByteBuffer entry = index.duplicate();
+        entry.position(range[0]);
+        entry.position(entry.position() + 2 + (entry.getShort() & 0xFFFF));
+        long length = entry.getLong();
+        long lastModified = entry.getLong();
+        byte[] digest = new byte[DIGEST_LENGTH];
+        entry.get(digest);
+        int lines = entry.getInt();
+        int contentLength = entry.getInt();
+        byte[] content = null;
+        if (contentLength >= 0) {
+            content = new byte[contentLength];
+            entry.get(content);
+        }
+        return new Entry(length, lastModified, digest, lines, content);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static void writeString(final DataOutputStream output, final String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("Too long path " + value + " for source cache");
+        }
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final byte[] digest;
+        private final int lines;
+        private final byte[] content;
+
+        private Entry(final long length, final long lastModified, final byte[] digest, final int lines, final byte[] content) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.digest = digest;
+            this.lines = lines;
+            this.content = content;
+        }
+    }
+}
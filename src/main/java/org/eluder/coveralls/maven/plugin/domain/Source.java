@@ -26,56 +26,182 @@ package org.eluder.coveralls.maven.plugin.domain;
  * %[license]
  */
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.fasterxml.jackson.annotation.JsonProperty;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
+/**
+ * Source file with line coverage. Coverage is stored as hits per line, lines that are not relevant
+ * for coverage have the value {@link #NOT_RELEVANT}. Sources are serialized to JSON with
+ * {@link org.eluder.coveralls.maven.plugin.json.JsonObjectWriter}.
+ */
 public final class Source implements JsonObject {
     
-    private static final Pattern NEWLINE = Pattern.compile("\r\n|\r|\n");
+    /** Coverage value of lines that are not relevant for coverage. */
+    public static final int NOT_RELEVANT = -1;
+    
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
     
     private final String name;
-    private final String source;
-    private final Integer[] coverage;
+    private final byte[] utf8Source;
+    private final String digest;
+    private String source;
+    private final int[] coverage;
     private String classifier;
     
     public Source(final String name, final String source) {
+        this.name = name;
+        this.source = normalize(source);
+        this.utf8Source = null;
+        this.digest = null;
+        this.coverage = createCoverage(countLines(this.source));
+    }
+    
+    /**
+     * @param name the source name
+     * @param source the source content with LF line separators only
+     * @param lines number of lines in the source
+     */
+    Source(final String name, final String source, final int lines) {
+        this.name = name;
+        this.source = source;
+        this.utf8Source = null;
+        this.digest = null;
+        this.coverage = createCoverage(lines);
+    }
+    
+    /**
+     * Creates a source from UTF-8 encoded content, decoded only if the content is requested as
+     * string.
+     *
+     * @param name the source name
+     * @param utf8Source the UTF-8 encoded source content with LF line separators only
+     * @param lines number of lines in the source
+     */
+    Source(final String name, final byte[] utf8Source, final int lines) {
+        this.name = name;
+        this.source = null;
+        this.utf8Source = utf8Source;
+        this.digest = null;
+        this.coverage = createCoverage(lines);
+    }
+    
+    /**
+     * Creates a source without content, identified by the digest of the content.
+     *
+     * @param name the source name
+     * @param lines number of lines in the source
+     * @param digest hex encoded MD5 digest of the source content
+     */
+    Source(final String name, final int lines, final String digest) {
+        this.name = name;
+        this.source = null;
+        this.utf8Source = null;
+        this.digest = digest;
+        this.coverage = createCoverage(lines);
+    }
+    
+    /**
+     * Creates a source from decoded characters. CR and CRLF line separators are replaced with LF in
+     * place, and lines are counted in the same pass.
+     *
+     * @param name the source name
+     * @param chars buffer with the source content, modified by this method
+     * @param length length of the source content in the buffer
+     * @return the source
+     */
+    static Source fromChars(final String name, final char[] chars, final int length) {
         int lines = 1;
-        StringBuffer replaced = new StringBuffer(source.length());
-        Matcher matcher = NEWLINE.matcher(source);
-        while (matcher.find()) {
+        int write = 0;
+        for (int read = 0; read < length; read++) {
+            char c = chars[read];
+            if (c == '\r') {
+                c = '\n';
+                if (read + 1 < length && chars[read + 1] == '\n') {
+                    read++;
+                }
+            }
+            if (c == '\n') {
+                lines++;
+            }
+            chars[write++] = c;
+        }
+        return new Source(name, new String(chars, 0, write), lines);
+    }
+    
+    private static String normalize(final String source) {
+        if (source.indexOf('\r') < 0) {
+            return source;
+        }
+        char[] chars = source.toCharArray();
+        int write = 0;
+        for (int read = 0; read < chars.length; read++) {
+            char c = chars[read];
+            if (c == '\r') {
+                c = '\n';
+                if (read + 1 < chars.length && chars[read + 1] == '\n') {
+                    read++;
+                }
+            }
+            chars[write++] = c;
+        }
+        return new String(chars, 0, write);
+    }
+    
+    private static int[] createCoverage(final int lines) {
+        int[] coverage = new int[lines];
+        Arrays.fill(coverage, NOT_RELEVANT);
+        return coverage;
+    }
+    
+    private static int countLines(final String source) {
+        int lines = 1;
+        for (int i = source.indexOf('\n'); i >= 0; i = source.indexOf('\n', i + 1)) {
             lines++;
-            matcher.appendReplacement(replaced, "\n");
         }
-        matcher.appendTail(replaced);
-        this.source = replaced.toString();
-        this.coverage = new Integer[lines];
-        this.name = name;
+        return lines;
     }
     
-    @JsonIgnore
     public String getName() {
         return name;
     }
     
-    @JsonProperty("name")
     public String getFullName() {
         return (classifier == null ? name : name + classifier);
     }
     
-    @JsonProperty("source")
+    /**
+     * @return the source content, or <code>null</code> if the source is identified by digest
+     */
     public String getSource() {
+        if (source == null && utf8Source != null) {
+            source = new String(utf8Source, UTF_8);
+        }
         return source;
     }
     
-    @JsonProperty("coverage")
-    public Integer[] getCoverage() {
+    /**
+     * @return the UTF-8 encoded source content if the source was created without decoding,
+     *         otherwise <code>null</code>. The returned array must not be modified.
+     */
+    public byte[] getUtf8Source() {
+        return utf8Source;
+    }
+    
+    /**
+     * @return hex encoded MD5 digest of the source content, or <code>null</code> if the source
+     *         has content
+     */
+    public String getDigest() {
+        return digest;
+    }
+    
+    /**
+     * @return hits per line, {@link #NOT_RELEVANT} for lines that are not relevant
+     */
+    public int[] getCoverage() {
         return coverage;
     }
     
-    @JsonIgnore
     public String getClassifier() {
         return classifier;
     }
@@ -84,7 +210,10 @@ public final class Source implements JsonObject {
         this.classifier = classifier;
     }
     
-    public void addCoverage(final int lineNumber, final Integer coverage) {
+    public void addCoverage(final int lineNumber, final int coverage) {
+        if (coverage < 0) {
+            throw new IllegalArgumentException("Coverage of line " + lineNumber + " in " + name + " can not be negative");
+        }
         this.coverage[lineNumber - 1] = coverage;
     }
 }
@@ -0,0 +1,221 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of loaded source files, shared by all source loaders of the JVM. Entries are keyed
+ * by the canonical path of the source file and validated with the file size and modification
+ * time, so sources are loaded once per reactor and reused by later builds of a long running
+ * daemon. Least recently used entries are evicted when the estimated size of the cached sources
+ * exceeds the byte budget.
+ * <p>
+ * Entries are immutable templates, every hit creates a new source with its own coverage.
+ */
+public final class SourceCache {
+
+    private static final SourceCache SHARED = new SourceCache(0);
+
+    /** Estimated size of an entry without the source content. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+    private long maxBytes;
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes the byte budget of the cache
+     */
+    public SourceCache(final long maxBytes) {
+        setMaxBytes(maxBytes);
+    }
+
+    /**
+     * @return the cache shared by all source loaders of the JVM
+     */
+    public static SourceCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Sets the byte budget of the cache, evicting entries if the cache does not fit in the new
+     * budget.
+     *
+     * @param maxBytes the byte budget, <code>0</code> disables caching
+     */
+    public synchronized void setMaxBytes(final long maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative, was " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Grows the byte budget of the cache to at least the given budget. Executions sharing the
+     * cache with different budgets get the largest budget regardless of their order.
+     *
+     * @param maxBytes the requested byte budget
+     */
+    public synchronized void growMaxBytes(final long maxBytes) {
+        if (maxBytes > this.maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * Creates a source from a cached entry.
+     *
+     * @param key the cache key, the canonical path of the source file
+     * @param length the current length of the source file
+     * @param lastModified the current modification time of the source file
+     * @param name the name of the created source
+     * @return new source, or <code>null</code> if not cached or the file has changed
+     */
+    synchronized Source get(final String key, final long length, final long lastModified, final String name) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            if (entry.length == length && entry.lastModified == lastModified) {
+                hits++;
+                return entry.createSource(name);
+            }
+            entries.remove(key);
+            bytes -= entry.weight;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Caches a loaded source. Sources larger than the byte budget are not cached.
+     *
+     * @param key the cache key, the canonical path of the source file
+     * @param length the length of the source file
+     * @param lastModified the modification time of the source file
+     * @param source the loaded source
+     */
+    synchronized void put(final String key, final long length, final long lastModified, final Source source) {
+        Entry entry = new Entry(key, length, lastModified, source);
+        if (entry.weight > maxBytes) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        if (previous != null) {
+            bytes -= previous.weight;
+        }
+        bytes += entry.weight;
+        evict();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return estimated size of the cached sources
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return number of cached sources
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void evict() {
+        Iterator<Entry> iter = entries.values().iterator();
+        while (bytes > maxBytes && iter.hasNext()) {
+            Entry eldest = iter.next();
+            iter.remove();
+            bytes -= eldest.weight;
+            evictions++;
+        }
+    }
+
+    private static final class Entry {
+
+        private final long length;
+        private final long lastModified;
+        private final String source;
+        private final byte[] utf8Source;
+        private final String digest;
+        private final int lines;
+        private final long weight;
+
+        private Entry(final String key, final long length, final long lastModified, final Source source) {
+            this.length = length;
+            this.lastModified = lastModified;
+            this.utf8Source = source.getUtf8Source();
+            this.source = (utf8Source == null ? source.getSource() : null);
+            this.digest = source.getDigest();
+            this.lines = source.getCoverage().length;
+            long content;
+            if (utf8Source != null) {
+                content = utf8Source.length;
+            } else {
+                content = 2L * (this.source != null ? this.source.length() : this.digest.length());
+            }
+            this.weight = ENTRY_OVERHEAD + 2L * key.length() + content;
+        }
+
+        private Source createSource(final String name) {
+            if (utf8Source != null) {
+                return new Source(name, utf8Source, lines);
+            }
+            if (source != null) {
+                return new Source(name, source, lines);
+            }
+            return new Source(name, lines, digest);
+        }
+    }
+}
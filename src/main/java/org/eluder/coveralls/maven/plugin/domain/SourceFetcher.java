@@ -0,0 +1,56 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.IOException;
+
+/**
+ * Fetches source file content from the source urls. Implementations must be thread safe, sources
+ * may be fetched concurrently by parallel coverage parsers.
+ */
+public interface SourceFetcher {
+
+    /**
+     * Hints that the source file will be fetched soon. The implementation may start fetching the
+     * source in the background.
+     * 
+     * @param sourceFile the source file path relative to the source urls
+     * @return <code>false</code> if the hint was ignored because too many sources are already
+     *         pending, <code>true</code> otherwise
+     */
+    boolean prefetch(String sourceFile);
+
+    /**
+     * Fetches the source file from the first source url that has it.
+     * 
+     * @param sourceFile the source file path relative to the source urls
+     * @return the raw content of the source file, or <code>null</code> if not found from any
+     *         source url
+     * @throws IOException if fetching from a source url fails for other reason than missing file
+     */
+    byte[] fetch(String sourceFile) throws IOException;
+}
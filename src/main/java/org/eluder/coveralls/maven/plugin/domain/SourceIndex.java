@@ -0,0 +1,204 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eluder.coveralls.maven.plugin.DaemonThreadFactory;
+
+/**
+ * Index of source files by path relative to the source directory. Source directories are walked
+ * once, concurrently, and files are resolved with a single lookup. When the same relative path
+ * exists in multiple source directories, the file from the first directory is used like without
+ * the index, and the path is reported as a duplicate.
+ */
+public final class SourceIndex {
+
+    private final Map<String, File> files;
+    private final Map<String, List<File>> duplicates;
+
+    private SourceIndex(final Map<String, File> files, final Map<String, List<File>> duplicates) {
+        this.files = files;
+        this.duplicates = duplicates;
+    }
+
+    /**
+     * Walks the source directories and builds an index of the files.
+     *
+     * @param sourceDirectories the source directories in resolution order
+     * @param parallelism maximum number of source directories walked concurrently
+     * @return index of the source files
+     * @throws IOException if an I/O error occurs
+     */
+    public static SourceIndex build(final List<File> sourceDirectories, final int parallelism) throws IOException {
+        List<Map<String, File>> walked = new ArrayList<Map<String, File>>(sourceDirectories.size());
+        if (parallelism < 2 || sourceDirectories.size() < 2) {
+            for (File sourceDirectory : sourceDirectories) {
+                walked.add(walk(sourceDirectory));
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sourceDirectories.size()), new DaemonThreadFactory("index"));
+            try {
+                List<Future<Map<String, File>>> futures = new ArrayList<Future<Map<String, File>>>();
+                for (final File sourceDirectory : sourceDirectories) {
+                    futures.add(executor.submit(new Callable<Map<String, File>>() {
+                        @Override
+                        public Map<String, File> call() throws IOException {
+                            return walk(sourceDirectory);
+                        }
+                    }));
+                }
+                for (Future<Map<String, File>> future : futures) {
+                    walked.add(get(future));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+        return merge(walked);
+    }
+
+    /**
+     * @param sourceFile the source file path relative to a source directory, leading
+     *        <code>/</code> or <code>./</code> and duplicate separators are ignored
+     * @return the source file, or <code>null</code> if the file is not found from any source
+     *         directory
+     */
+    public File get(final String sourceFile) {
+        return files.get(normalize(sourceFile));
+    }
+
+    /**
+     * @return number of indexed source files
+     */
+    public int size() {
+        return files.size();
+    }
+
+    /**
+     * @return relative paths found from multiple source directories, with the files in resolution
+     *         order
+     */
+    public Map<String, List<File>> getDuplicates() {
+        return Collections.unmodifiableMap(duplicates);
+    }
+
+    private static String normalize(final String sourceFile) {
+        String path = sourceFile.replace('\\', '/');
+        while (path.contains("//")) {
+            path = path.replace("//", "/");
+        }
+        while (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        return (path.startsWith("/") ? path.substring(1) : path);
+    }
+
+    private static SourceIndex merge(final List<Map<String, File>> walked) {
+        int size = 0;
+        for (Map<String, File> directory : walked) {
+            size += directory.size();
+        }
+        Map<String, File> files = new HashMap<String, File>(size * 4 / 3 + 1);
+        Map<String, List<File>> duplicates = new LinkedHashMap<String, List<File>>();
+        for (Map<String, File> directory : walked) {
+            for (Entry<String, File> entry : directory.entrySet()) {
+                File first = files.get(entry.getKey());
+                if (first == null) {
+                    files.put(entry.getKey(), entry.getValue());
+                } else {
+                    List<File> duplicate = duplicates.get(entry.getKey());
+                    if (duplicate == null) {
+                        duplicate = new ArrayList<File>(2);
+                        duplicate.add(first);
+                        duplicates.put(entry.getKey(), duplicate);
+                    }
+                    duplicate.add(entry.getValue());
+                }
+            }
+        }
+        return new SourceIndex(files, duplicates);
+    }
+
+    private static Map<String, File> walk(final File sourceDirectory) throws IOException {
+        Map<String, File> files = new LinkedHashMap<String, File>();
+        walk(sourceDirectory, "", files, new HashSet<String>());
+        return files;
+    }
+
+    private static void walk(final File directory, final String prefix, final Map<String, File> files, final Set<String> visited) throws IOException {
+        // guards against cycles through symbolic links
+        if (!visited.add(directory.getCanonicalPath())) {
+            return;
+        }
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                walk(child, path + "/", files, visited);
+            } else {
+                files.put(path, child);
+            }
+        }
+    }
+
+    private static Map<String, File> get(final Future<Map<String, File>> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while indexing source directories");
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException) {
+                throw (IOException) ex.getCause();
+            }
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException("Failed to index source directories", ex.getCause());
+        }
+    }
+}
@@ -26,23 +26,42 @@ package org.eluder.coveralls.maven.plugin.domain;
  * %[license]
  */
 
-import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.List;
 
 import org.codehaus.plexus.util.IOUtil;
 
-public class SourceLoader {
+public class SourceLoader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
 
     private final List<File> sourceDirectories;
     private final List<URL> sourceUrls;
     private final Charset sourceEncoding;
+    private final boolean asciiCompatible;
+    private boolean sourceDigest;
+    private SourceIndex sourceIndex;
+    private SourceFetcher sourceFetcher;
+    private int prefetchWindow;
+    private SourceCache sourceCache;
+    private PersistentSourceCache persistentSourceCache;
+    private boolean shared;
 
     public SourceLoader(final List<File> sourceDirectories, final String sourceEncoding) {
         this(sourceDirectories, null, sourceEncoding);
@@ -69,19 +88,191 @@ public class SourceLoader {
         this.sourceDirectories = sourceDirectories;
         this.sourceUrls = sourceUrls;
         this.sourceEncoding = Charset.forName(sourceEncoding);
+        this.asciiCompatible = Arrays.equals(new byte[] { '\n', '\r' }, "\n\r".getBytes(this.sourceEncoding));
+    }
+    
+    /**
+     * Loads sources without content. Each source is identified by the MD5 digest of the source
+     * file, and lines are counted while digesting, without decoding the file when the encoding is
+     * ASCII compatible.
+     *
+     * @param sourceDigest <code>true</code> to load sources by digest
+     * @return this source loader
+     */
+    public SourceLoader withSourceDigest(final boolean sourceDigest) {
+        this.sourceDigest = sourceDigest;
+        return this;
+    }
+    
+    /**
+     * Resolves sources from the source directories with a prebuilt index instead of checking each
+     * source directory for every source file.
+     *
+     * @param sourceIndex index of the source directories, or <code>null</code> to not use index
+     * @return this source loader
+     */
+    public SourceLoader withSourceIndex(final SourceIndex sourceIndex) {
+        this.sourceIndex = sourceIndex;
+        return this;
+    }
+    
+    /**
+     * Fetches sources from the source urls with a source fetcher instead of opening a connection
+     * to each source url for every source file. The fetcher is closed with this source loader.
+     *
+     * @param sourceFetcher fetcher for the source urls, or <code>null</code> to open connections
+     * @return this source loader
+     */
+    public SourceLoader withSourceFetcher(final SourceFetcher sourceFetcher) {
+        this.sourceFetcher = sourceFetcher;
+        return this;
+    }
+    
+    /**
+     * Caches sources loaded from the source directories. The cache can be shared with other
+     * source loaders, entries are separated by the source encoding and digest mode.
+     *
+     * @param sourceCache the cache for loaded sources, or <code>null</code> to not cache
+     * @return this source loader
+     */
+    public SourceLoader withSourceCache(final SourceCache sourceCache) {
+        this.sourceCache = sourceCache;
+        return this;
+    }
+    
+    /**
+     * Reads unchanged sources from a cache persisted between builds instead of the source files.
+     * Sources loaded from the source directories are added to the cache, and the cache is written
+     * when this source loader is closed.
+     *
+     * @param persistentSourceCache the persistent cache, or <code>null</code> to not use it
+     * @return this source loader
+     */
+    public SourceLoader withPersistentSourceCache(final PersistentSourceCache persistentSourceCache) {
+        this.persistentSourceCache = persistentSourceCache;
+        return this;
+    }
+    
+    /**
+     * Creates a source loader for collecting coverage only. The created loader loads sources by
+     * digest, so the content is not decoded or kept, and shares the source index, fetcher and
+     * cache of this source loader. The persistent source cache is not used. Closing the created
+     * loader has no effect, shared resources are closed with this source loader.
+     *
+     * @return source loader that loads sources without content
+     */
+    public SourceLoader createCoverageLoader() {
+        SourceLoader loader = new SourceLoader(sourceDirectories, sourceUrls, sourceEncoding.name());
+        loader.sourceDigest = true;
+        loader.sourceIndex = sourceIndex;
+        loader.sourceFetcher = sourceFetcher;
+        loader.sourceCache = sourceCache;
+        loader.prefetchWindow = prefetchWindow;
+        loader.shared = true;
+        return loader;
+    }
+    
+    /**
+     * Sets the number of upcoming sources that coverage parsers load in the background while
+     * parsing the report.
+     *
+     * @param prefetchWindow maximum number of sources loaded ahead, or <code>0</code> to load
+     *        sources only when parsed
+     * @return this source loader
+     */
+    public SourceLoader withPrefetchWindow(final int prefetchWindow) {
+        if (prefetchWindow < 0) {
+            throw new IllegalArgumentException("Prefetch window must not be negative, was " + prefetchWindow);
+        }
+        this.prefetchWindow = prefetchWindow;
+        return this;
+    }
+    
+    /**
+     * @return maximum number of sources loaded ahead of parsing, <code>0</code> if disabled
+     */
+    public int getPrefetchWindow() {
+        return prefetchWindow;
+    }
+    
+    /**
+     * @return the persistent source cache, or <code>null</code> if not used
+     */
+    public PersistentSourceCache getPersistentSourceCache() {
+        return persistentSourceCache;
+    }
+    
+    /**
+     * Hints that the source file will be loaded soon, so that remote sources can be fetched in the
+     * background. Has no effect without source fetcher or when the source file is found from the
+     * source directories.
+     *
+     * @param sourceFile the source file path
+     * @return <code>false</code> if too many sources are already pending, <code>true</code>
+     *         otherwise
+     */
+    public boolean prefetch(final String sourceFile) {
+        if (sourceFetcher == null || findFile(sourceFile) != null) {
+            return true;
+        }
+        return sourceFetcher.prefetch(sourceFile);
     }
     
     public Source load(final String sourceFile) throws IOException {
-        Reader reader = locate(sourceFile);
+        File file = findFile(sourceFile);
+        if (file != null) {
+            return read(sourceFile, file);
+        }
+        
+        if (sourceFetcher != null) {
+            byte[] content = sourceFetcher.fetch(sourceFile);
+            if (content != null) {
+                return read(sourceFile, new ByteArrayInputStream(content), content.length);
+            }
+        } else if (sourceUrls != null) {
+            for (URL sourceUrl : sourceUrls) {
+                URL url = new URL(sourceUrl, sourceFile);
+                InputStream stream;
+                int length;
+                try {
+                    URLConnection connection = url.openConnection();
+                    stream = connection.getInputStream();
+                    length = connection.getContentLength();
+                } catch (IOException ex) {
+                    // not found from url
+                    continue;
+                }
+                return read(sourceFile, stream, length);
+            }
+            
+        }
+
+        throw new IllegalArgumentException("Could not find source file " + sourceFile + " from any source directory or source url.");
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (shared) {
+            return;
+        }
         try {
-            String source = IOUtil.toString(reader);
-            return new Source(sourceFile, source);
+            if (sourceFetcher instanceof Closeable) {
+                ((Closeable) sourceFetcher).close();
+            }
         } finally {
-            IOUtil.close(reader);
+            if (persistentSourceCache != null) {
+                persistentSourceCache.close();
+            }
         }
     }
     
-    private InputStreamReader locate(final String sourceFile) throws IOException {
+    private File findFile(final String sourceFile) {
+        if (sourceIndex != null) {
+            File file = sourceIndex.get(sourceFile);
+            if (file != null) {
+                return file;
+            }
+        }
         if (sourceDirectories != null) {
             for (File sourceDirectory : sourceDirectories) {
                 File file = new File(sourceDirectory, sourceFile);
@@ -89,25 +280,135 @@ public class SourceLoader {
                     if (!file.isFile()) {
                         throw new IllegalArgumentException(file.getAbsolutePath() + " is not file");
                     }
-                    return new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), sourceEncoding);
+                    return file;
                 }
             }
         }
-        
-        if (sourceUrls != null) {
-            for (URL sourceUrl : sourceUrls) {
-                URL url = new URL(sourceUrl, sourceFile);
-                // Checkstyle OFF: EmptyBlock
-                try {
-                    return new InputStreamReader(url.openStream(), sourceEncoding);
-                } catch (IOException ex) {
-                    // not found from url
+        return null;
+    }
+    
+    private Source read(final String sourceFile, final File file) throws IOException {
+        if (sourceCache == null && persistentSourceCache == null) {
+            return read(sourceFile, new FileInputStream(file), file.length());
+        }
+        String path = file.getCanonicalPath();
+        String key = (sourceDigest ? "digest:" : "source:") + sourceEncoding.name() + ":" + path;
+        long length = file.length();
+        long lastModified = file.lastModified();
+        Source source = (sourceCache != null ? sourceCache.get(key, length, lastModified, sourceFile) : null);
+        if (source == null) {
+            if (persistentSourceCache != null) {
+                source = persistentSourceCache.get(path, length, lastModified, sourceFile, sourceDigest);
+                if (source == null) {
+                    MessageDigest md5 = createDigest();
+                    InputStream stream = new FileInputStream(file);
+                    source = read(sourceFile, (sourceDigest ? stream : new DigestInputStream(stream, md5)), length);
+                    byte[] digest = (sourceDigest ? fromHex(source.getDigest()) : md5.digest());
+                    persistentSourceCache.put(path, length, lastModified, digest, source);
                 }
-                // Checkstyle ON: EmptyBlock
+            } else {
+                source = read(sourceFile, new FileInputStream(file), length);
+            }
+            if (sourceCache != null) {
+                sourceCache.put(key, length, lastModified, source);
             }
-            
         }
-
-        throw new IllegalArgumentException("Could not find source file " + sourceFile + " from any source directory or source url.");
+        return source;
+    }
+    
+    /**
+     * Decodes the source into a single buffer, sized from the byte length when known. Decoding
+     * produces at most as many chars as bytes in common encodings, so a known length needs no
+     * buffer growth. Line separators are normalized in place by the source.
+     */
+    private Source read(final String sourceFile, final InputStream stream, final long byteLength) throws IOException {
+        if (sourceDigest) {
+            return digest(sourceFile, stream);
+        }
+        Reader reader = new InputStreamReader(stream, sourceEncoding);
+        try {
+            int capacity = (byteLength >= 0 && byteLength < Integer.MAX_VALUE - 1 ? (int) byteLength + 1 : DEFAULT_BUFFER_SIZE);
+            char[] chars = new char[Math.max(capacity, 16)];
+            int length = 0;
+            int read;
+            while ((read = reader.read(chars, length, chars.length - length)) >= 0) {
+                length += read;
+                if (length == chars.length) {
+                    char[] grown = new char[chars.length * 2];
+                    System.arraycopy(chars, 0, grown, 0, length);
+                    chars = grown;
+                }
+            }
+            return Source.fromChars(sourceFile, chars, length);
+        } finally {
+            IOUtil.close(reader);
+        }
+    }
+    
+    private Source digest(final String sourceFile, final InputStream stream) throws IOException {
+        MessageDigest md5 = createDigest();
+        int lines = 1;
+        boolean cr = false;
+        if (asciiCompatible) {
+            try {
+                byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
+                int read;
+                while ((read = stream.read(buffer)) >= 0) {
+                    md5.update(buffer, 0, read);
+                    for (int i = 0; i < read; i++) {
+                        byte b = buffer[i];
+                        if ((b == '\n' && !cr) || b == '\r') {
+                            lines++;
+                        }
+                        cr = (b == '\r');
+                    }
+                }
+            } finally {
+                IOUtil.close(stream);
+            }
+        } else {
+            Reader reader = new InputStreamReader(new DigestInputStream(stream, md5), sourceEncoding);
+            try {
+                char[] buffer = new char[DEFAULT_BUFFER_SIZE];
+                int read;
+                while ((read = reader.read(buffer)) >= 0) {
+                    for (int i = 0; i < read; i++) {
+                        char c = buffer[i];
+                        if ((c == '\n' && !cr) || c == '\r') {
+                            lines++;
+                        }
+                        cr = (c == '\r');
+                    }
+                }
+            } finally {
+                IOUtil.close(reader);
+            }
+        }
+        return new Source(sourceFile, lines, toHex(md5.digest()));
+    }
+    
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 digest is not available", ex);
+        }
+    }
+    
+    static String toHex(final byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(hex);
+    }
+    
+    static byte[] fromHex(final String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
     }
 }
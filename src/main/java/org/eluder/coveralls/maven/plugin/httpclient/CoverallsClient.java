@@ -31,6 +31,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.Consts;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpPost;
@@ -39,13 +40,19 @@ import org.apache.http.config.RegistryBuilder;
 import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.conn.socket.PlainConnectionSocketFactory;
 import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.mime.HttpMultipartMode;
 import org.apache.http.entity.mime.MultipartEntityBuilder;
+import org.apache.http.entity.mime.content.ContentBody;
+import org.apache.http.entity.mime.content.FileBody;
+import org.apache.http.entity.mime.content.InputStreamBody;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
 import org.codehaus.plexus.util.IOUtil;
 import org.codehaus.plexus.util.StringUtils;
+import org.eluder.coveralls.maven.plugin.DaemonThreadFactory;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
 
@@ -53,8 +60,14 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URLEncoder;
 import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
@@ -62,25 +75,34 @@ import java.security.Provider;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
 
 import static org.apache.http.conn.ssl.SSLConnectionSocketFactory.ALLOW_ALL_HOSTNAME_VERIFIER;
 
 public class CoverallsClient {
     private static final X509TrustManager TRUST_ALL = new TrustAll();
-
-    static {
-        for (Provider provider : Security.getProviders()) {
-            if (provider.getName().startsWith("SunPKCS11")) {
-                Security.removeProvider(provider.getName());
-            }
-        }
-    }
+    private static final AtomicBoolean PKCS11_REMOVED = new AtomicBoolean();
 
     private static final String FILE_NAME = "coveralls.json";
+    private static final String GZIP_FILE_NAME = "coveralls.json.gz";
     private static final ContentType MIME_TYPE = ContentType.create("application/octet-stream", "utf-8");
+    private static final ContentType GZIP_MIME_TYPE = ContentType.create("application/gzip");
 
     private static final int DEFAULT_CONNECTION_TIMEOUT = 10000;
     private static final int DEFAULT_SOCKET_TIMEOUT = 60000;
+    private static final int MAX_CONNECTIONS = 16;
 
     private final String coverallsUrl;
     private final HttpClient httpClient;
@@ -96,26 +118,171 @@ public class CoverallsClient {
         this.objectMapper = objectMapper;
     }
 
+    /**
+     * Submits the Coveralls data. Gzip compressed files, named with <code>.gz</code> suffix, are
+     * sent compressed. If the API rejects the compressed file, with HTTP status 415 or with an error
+     * naming the gzip encoding, the file is decompressed on the fly and sent again. Other errors of
+     * the compressed submission are thrown as is.
+     *
+     * @param file the Coveralls data file
+     * @return the response of the Coveralls API
+     * @throws ProcessingException if the submission fails
+     * @throws IOException if an I/O error occurs
+     */
     public CoverallsResponse submit(final File file) throws ProcessingException, IOException {
+        if (!isCompressed(file)) {
+            return parseResponse(httpClient.execute(createPost(new FileBody(file, MIME_TYPE, FILE_NAME))));
+        }
+        HttpResponse response = httpClient.execute(createPost(new FileBody(file, GZIP_MIME_TYPE, GZIP_FILE_NAME)));
+        int status = response.getStatusLine().getStatusCode();
+        if (status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_UNPROCESSABLE_ENTITY) {
+            String body = EntityUtils.toString(response.getEntity(), Consts.ISO_8859_1);
+            if (!isCompressionRejected(body)) {
+                return parseResponse(response, new StringReader(body));
+            }
+        } else if (status == HttpStatus.SC_UNSUPPORTED_MEDIA_TYPE) {
+            EntityUtils.consume(response.getEntity());
+        } else {
+            return parseResponse(response);
+        }
+        InputStream stream = new GZIPInputStream(new FileInputStream(file));
+        try {
+            return parseResponse(httpClient.execute(createPost(new InputStreamBody(stream, MIME_TYPE, FILE_NAME))));
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+    
+    /**
+     * Starts a submission that sends the Coveralls data while it is written to the output stream
+     * of the returned submission. The data is sent uncompressed.
+     *
+     * @return the started submission
+     */
+    public StreamingSubmission submitStreaming() {
+        return new StreamingSubmission(new StreamingSubmission.Uploader() {
+            @Override
+            public CoverallsResponse upload(final InputStream data) throws ProcessingException, IOException {
+                return parseResponse(httpClient.execute(createPost(new InputStreamBody(data, MIME_TYPE, FILE_NAME))));
+            }
+        });
+    }
+    
+    /**
+     * Submits Coveralls data files as parallel jobs of the same build, at most
+     * <code>concurrency</code> files at a time. All files are submitted even if some of the
+     * submissions fail, the first failure is thrown after all submissions have ended.
+     *
+     * @param files the Coveralls data files, each flagged as a parallel job
+     * @param concurrency maximum number of concurrent submissions
+     * @return the responses of the Coveralls API in the order of the files
+     * @throws ProcessingException if a submission fails
+     * @throws IOException if an I/O error occurs
+     */
+    public List<CoverallsResponse> submitParallel(final List<File> files, final int concurrency) throws ProcessingException, IOException {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive, was " + concurrency);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, files.size())), new DaemonThreadFactory("submission"));
+        try {
+            List<Future<CoverallsResponse>> futures = new ArrayList<Future<CoverallsResponse>>(files.size());
+            for (final File file : files) {
+                futures.add(executor.submit(new Callable<CoverallsResponse>() {
+                    @Override
+                    public CoverallsResponse call() throws ProcessingException, IOException {
+                        return submit(file);
+                    }
+                }));
+            }
+            List<CoverallsResponse> responses = new ArrayList<CoverallsResponse>(files.size());
+            Throwable failure = null;
+            for (Future<CoverallsResponse> future : futures) {
+                try {
+                    responses.add(future.get());
+                } catch (ExecutionException ex) {
+                    if (failure == null) {
+                        failure = ex.getCause();
+                    }
+                }
+            }
+            if (failure instanceof ProcessingException) {
+                throw (ProcessingException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+            if (failure != null) {
+                throw new IllegalStateException(failure);
+            }
+            return responses;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while submitting parallel jobs");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    
+    /**
+     * Notifies the Coveralls API that all parallel jobs of a build have been submitted.
+     *
+     * @param webhookUrl url of the Coveralls webhook
+     * @param repoToken the repository token
+     * @param buildNumber the service build number of the parallel jobs
+     * @return the response of the Coveralls API
+     * @throws ProcessingException if the notification fails
+     * @throws IOException if an I/O error occurs
+     */
+    public CoverallsResponse completeParallelBuild(final String webhookUrl, final String repoToken, final String buildNumber) throws ProcessingException, IOException {
+        String url = webhookUrl;
+        if (StringUtils.isNotBlank(repoToken)) {
+            url += (url.indexOf('?') < 0 ? "?" : "&") + "repo_token=" + URLEncoder.encode(repoToken, "UTF-8");
+        }
+        Map<String, Object> payload = new LinkedHashMap<String, Object>();
+        payload.put("build_num", buildNumber);
+        payload.put("status", "done");
+        HttpPost post = new HttpPost(url);
+        post.setEntity(new ByteArrayEntity(objectMapper.writeValueAsBytes(Collections.singletonMap("payload", payload)), ContentType.APPLICATION_JSON));
+        return parseResponse(httpClient.execute(post));
+    }
+    
+    private HttpPost createPost(final ContentBody body) {
         HttpEntity entity = MultipartEntityBuilder.create()
                 .setMode(HttpMultipartMode.BROWSER_COMPATIBLE)
-                .addBinaryBody("json_file", file, MIME_TYPE, FILE_NAME)
+                .addPart("json_file", body)
                 .build();
         HttpPost post = new HttpPost(coverallsUrl);
         post.setEntity(entity);
-        HttpResponse response = httpClient.execute(post);
-        return parseResponse(response);
+        return post;
+    }
+    
+    private static boolean isCompressed(final File file) {
+        return file.getName().endsWith(".gz");
+    }
+    
+    private static boolean isCompressionRejected(final String body) {
+        return body.toLowerCase(Locale.ENGLISH).contains("gzip");
     }
 
     private CoverallsResponse parseResponse(final HttpResponse response) throws ProcessingException, IOException {
         HttpEntity entity = response.getEntity();
         ContentType contentType = ContentType.getOrDefault(entity);
-        InputStreamReader reader = null;
+        InputStreamReader reader;
         try {
             final Charset charset = contentType.getCharset();
             reader = new InputStreamReader(entity.getContent(),
                     charset == null ? Consts.ISO_8859_1 : contentType.getCharset());
+        } catch (IOException ex) {
+            throw new IOException(getResponseErrorMessage(response, ex.getMessage()), ex);
+        }
+        return parseResponse(response, reader);
+    }
 
+    private CoverallsResponse parseResponse(final HttpResponse response, final Reader reader) throws ProcessingException, IOException {
+        try {
             CoverallsResponse cr = objectMapper.readValue(reader, CoverallsResponse.class);
             if (cr.isError()) {
                 throw new ProcessingException(getResponseErrorMessage(response, cr.getMessage()));
@@ -143,7 +310,23 @@ public class CoverallsClient {
         return errorMessage;
     }
 
+    /**
+     * Removes the SunPKCS11 security providers that break the SSL handshake on some platforms.
+     * The providers are global to the JVM, so they are removed only once, when the first default
+     * client is created, instead of when the class is loaded by any concurrent plugin execution.
+     */
+    private static void removePkcs11Providers() {
+        if (PKCS11_REMOVED.compareAndSet(false, true)) {
+            for (Provider provider : Security.getProviders()) {
+                if (provider.getName().startsWith("SunPKCS11")) {
+                    Security.removeProvider(provider.getName());
+                }
+            }
+        }
+    }
+
     private static HttpClient createDefaultClient() {
+        removePkcs11Providers();
         final RequestConfig requestConfig = RequestConfig.custom()
                 .setConnectTimeout(DEFAULT_CONNECTION_TIMEOUT)
                 .setSocketTimeout(DEFAULT_SOCKET_TIMEOUT)
@@ -162,7 +345,10 @@ public class CoverallsClient {
                                    .register("https", factory)
                                    .build();
 
-            builder.setConnectionManager(new BasicHttpClientConnectionManager(registry));
+            final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(registry);
+            connectionManager.setMaxTotal(MAX_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS);
+            builder.setConnectionManager(connectionManager);
         } catch (KeyManagementException e) {
             throw new IllegalStateException(e);
         } catch (NoSuchAlgorithmException e) {
@@ -0,0 +1,403 @@
+package org.eluder.coveralls.maven.plugin.httpclient;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.StringUtils;
+import org.eluder.coveralls.maven.plugin.DaemonThreadFactory;
+import org.eluder.coveralls.maven.plugin.domain.SourceFetcher;
+
+/**
+ * Fetches sources from http source urls with a pooled keep-alive client. Sources can be
+ * prefetched concurrently in the background, bounded by the number of connections and a window
+ * of pending sources. Urls that responded with HTTP 404 or 410 are not requested again. Fetched
+ * sources are optionally stored to a cache directory, and revalidated with the
+ * <code>ETag</code> and <code>Last-Modified</code> headers of the cached response. Source urls with
+ * other protocols than http or https are read with plain url connections.
+ */
+public class HttpSourceFetcher implements SourceFetcher, Closeable {
+
+    private static final int DEFAULT_TIMEOUT = 10000;
+    private static final int WINDOW_PER_CONNECTION = 4;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+    private static final String URL = "url";
+
+    private final List<URL> sourceUrls;
+    private final File cacheDirectory;
+    private final int window;
+    private final CloseableHttpClient httpClient;
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Future<byte[]>> pending = new ConcurrentHashMap<String, Future<byte[]>>();
+    private final Set<String> notFound = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    public HttpSourceFetcher(final List<URL> sourceUrls, final File cacheDirectory, final int connections) {
+        this(sourceUrls, cacheDirectory, connections, DEFAULT_TIMEOUT);
+    }
+
+    public HttpSourceFetcher(final List<URL> sourceUrls, final File cacheDirectory, final int connections, final int timeout) {
+        if (sourceUrls == null || sourceUrls.isEmpty()) {
+            throw new IllegalArgumentException("At least one source url must be defined");
+        }
+        if (connections < 1) {
+            throw new IllegalArgumentException("Connections must be positive, was " + connections);
+        }
+        this.sourceUrls = new ArrayList<URL>(sourceUrls);
+        this.cacheDirectory = cacheDirectory;
+        this.window = connections * WINDOW_PER_CONNECTION;
+        this.httpClient = createClient(connections, timeout);
+        this.executor = Executors.newFixedThreadPool(connections, new DaemonThreadFactory("source-fetcher"));
+    }
+
+    @Override
+    public boolean prefetch(final String sourceFile) {
+        if (pending.containsKey(sourceFile)) {
+            return true;
+        }
+        if (pending.size() >= window) {
+            return false;
+        }
+        FutureTask<byte[]> task = new FutureTask<byte[]>(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws IOException {
+                return fetchNow(sourceFile);
+            }
+        });
+        if (pending.putIfAbsent(sourceFile, task) == null) {
+            executor.execute(task);
+        }
+        return true;
+    }
+
+    @Override
+    public byte[] fetch(final String sourceFile) throws IOException {
+        Future<byte[]> future = pending.remove(sourceFile);
+        if (future == null) {
+            return fetchNow(sourceFile);
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching source " + sourceFile);
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * @return number of requests sent to the source urls
+     */
+    public int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of sources read from the cache directory after revalidation
+     */
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /**
+     * @return number of source urls known to not have the requested source
+     */
+    public int getNotFound() {
+        return notFound.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        pending.clear();
+        httpClient.close();
+    }
+
+    private byte[] fetchNow(final String sourceFile) throws IOException {
+        IOException failure = null;
+        for (URL sourceUrl : sourceUrls) {
+            URL url = new URL(sourceUrl, sourceFile);
+            String key = url.toExternalForm();
+            if (notFound.contains(key)) {
+                continue;
+            }
+            try {
+                byte[] content = (isHttp(url) ? get(url) : open(url));
+                if (content != null) {
+                    return content;
+                }
+                notFound.add(key);
+            } catch (IOException ex) {
+                // try next source url, but report the failure if no url has the source
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return null;
+    }
+
+    private byte[] get(final URL url) throws IOException {
+        HttpGet request;
+        try {
+            request = new HttpGet(url.toURI());
+        } catch (URISyntaxException ex) {
+            throw new IOException("Invalid source url " + url, ex);
+        }
+        String key = createCacheKey(url);
+        Properties cached = readCacheProperties(key);
+        if (cached != null) {
+            String etag = cached.getProperty(ETAG);
+            String lastModified = cached.getProperty(LAST_MODIFIED);
+            if (etag != null) {
+                request.setHeader(HttpHeaders.IF_NONE_MATCH, etag);
+            }
+            if (lastModified != null) {
+                request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, lastModified);
+            }
+        }
+        requests.incrementAndGet();
+        CloseableHttpResponse response = httpClient.execute(request);
+        try {
+            HttpEntity entity = response.getEntity();
+            int status = response.getStatusLine().getStatusCode();
+            if (status == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+                EntityUtils.consume(entity);
+                byte[] content = readCacheContent(key);
+                if (content != null) {
+                    cacheHits.incrementAndGet();
+                    return content;
+                }
+                return get(url, key);
+            }
+            if (status == HttpStatus.SC_NOT_FOUND || status == HttpStatus.SC_GONE) {
+                EntityUtils.consume(entity);
+                return null;
+            }
+            if (status != HttpStatus.SC_OK) {
+                EntityUtils.consume(entity);
+                String reason = response.getStatusLine().getReasonPhrase();
+                throw new IOException("Fetching source from " + url + " failed with HTTP status " + status
+                        + (StringUtils.isNotBlank(reason) ? ": " + reason : ""));
+            }
+            byte[] content = (entity == null ? new byte[0] : EntityUtils.toByteArray(entity));
+            writeCache(key, url, content, response.getFirstHeader(HttpHeaders.ETAG), response.getFirstHeader(HttpHeaders.LAST_MODIFIED));
+            return content;
+        } finally {
+            response.close();
+        }
+    }
+
+    /**
+     * Fetches the url unconditionally when the cached content has disappeared after the server
+     * responded with not modified.
+     */
+    private byte[] get(final URL url, final String key) throws IOException {
+        deleteCache(key);
+        return get(url);
+    }
+
+    private byte[] open(final URL url) throws IOException {
+        InputStream stream;
+        try {
+            URLConnection connection = url.openConnection();
+            stream = connection.getInputStream();
+        } catch (FileNotFoundException ex) {
+            return null;
+        }
+        try {
+            return IOUtil.toByteArray(stream);
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private Properties readCacheProperties(final String key) throws IOException {
+        if (cacheDirectory == null) {
+            return null;
+        }
+        File file = new File(cacheDirectory, key + ".properties");
+        if (!file.isFile()) {
+            return null;
+        }
+        InputStream stream = new FileInputStream(file);
+        try {
+            Properties properties = new Properties();
+            properties.load(stream);
+            return properties;
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private byte[] readCacheContent(final String key) throws IOException {
+        File file = new File(cacheDirectory, key + ".source");
+        if (!file.isFile()) {
+            return null;
+        }
+        InputStream stream = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(stream);
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private void writeCache(final String key, final URL url, final byte[] content, final Header etag, final Header lastModified) throws IOException {
+        if (cacheDirectory == null) {
+            return;
+        }
+        if (etag == null && lastModified == null) {
+            deleteCache(key);
+            return;
+        }
+        if (!cacheDirectory.isDirectory() && !cacheDirectory.mkdirs() && !cacheDirectory.isDirectory()) {
+            throw new IOException("Could not create source cache directory " + cacheDirectory.getAbsolutePath());
+        }
+        Properties properties = new Properties();
+        properties.setProperty(URL, url.toExternalForm());
+        if (etag != null) {
+            properties.setProperty(ETAG, etag.getValue());
+        }
+        if (lastModified != null) {
+            properties.setProperty(LAST_MODIFIED, lastModified.getValue());
+        }
+        // content is written before the validators, so that validators never refer to missing content
+        replace(new File(cacheDirectory, key + ".source"), content);
+        ByteArrayOutputStream validators = new ByteArrayOutputStream();
+        properties.store(validators, null);
+        replace(new File(cacheDirectory, key + ".properties"), validators.toByteArray());
+    }
+
+    private void deleteCache(final String key) {
+        if (cacheDirectory != null) {
+            new File(cacheDirectory, key + ".properties").delete();
+            new File(cacheDirectory, key + ".source").delete();
+        }
+    }
+
+    private static void replace(final File file, final byte[] content) throws IOException {
+        File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+        OutputStream stream = new FileOutputStream(temp);
+        try {
+            stream.write(content);
+        } finally {
+            IOUtil.close(stream);
+        }
+        if (!temp.renameTo(file)) {
+            file.delete();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Could not write source cache file " + file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static String createCacheKey(final URL url) {
+        try {
+            MessageDigest md5 = MessageDigest.getInstance("MD5");
+            return String.format("%032x", new BigInteger(1, md5.digest(url.toExternalForm().getBytes(UTF_8))));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("MD5 digest is not available", ex);
+        }
+    }
+
+    private static boolean isHttp(final URL url) {
+        return "http".equalsIgnoreCase(url.getProtocol()) || "https".equalsIgnoreCase(url.getProtocol());
+    }
+
+    private static CloseableHttpClient createClient(final int connections, final int timeout) {
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(timeout)
+                .setConnectTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(connections);
+        connectionManager.setDefaultMaxPerRoute(connections);
+        return HttpClientBuilder.create()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .build();
+    }
+}
@@ -0,0 +1,278 @@
+package org.eluder.coveralls.maven.plugin.httpclient;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.eluder.coveralls.maven.plugin.DaemonThreadFactory;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
+
+/**
+ * Submission to the Coveralls API that is sent while the Coveralls data is still being written.
+ * Data written to the output stream is passed in chunks to a background thread, that sends it
+ * as the request body with chunked transfer encoding. Closing the output stream only flushes it,
+ * the request is completed with {@link #finish()} or cancelled with {@link #abort()}.
+ */
+public final class StreamingSubmission {
+
+    private static final int CHUNK_SIZE = 32768;
+    private static final int MAX_PENDING_CHUNKS = 32;
+    private static final long POLL_INTERVAL = 100;
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<byte[]>(MAX_PENDING_CHUNKS);
+    private final ChunkOutputStream output = new ChunkOutputStream();
+    private final ChunkInputStream input = new ChunkInputStream();
+    private final FutureTask<CoverallsResponse> upload;
+    private volatile boolean aborted;
+
+    StreamingSubmission(final Uploader uploader) {
+        this.upload = new FutureTask<CoverallsResponse>(new Callable<CoverallsResponse>() {
+            @Override
+            public CoverallsResponse call() throws ProcessingException, IOException {
+                return uploader.upload(input);
+            }
+        });
+        new DaemonThreadFactory("submission").newThread(upload).start();
+    }
+
+    /**
+     * @return output stream for the Coveralls data
+     */
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    /**
+     * Ends the request body and waits for the response of the Coveralls API.
+     *
+     * @return the response of the Coveralls API
+     * @throws ProcessingException if the submission fails
+     * @throws IOException if an I/O error occurs
+     */
+    public CoverallsResponse finish() throws ProcessingException, IOException {
+        output.finish();
+        try {
+            return upload.get();
+        } catch (InterruptedException ex) {
+            abort();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Coveralls API response");
+        } catch (CancellationException ex) {
+            throw new IOException("Submission to Coveralls API was aborted", ex);
+        } catch (ExecutionException ex) {
+            throw rethrow(ex.getCause());
+        }
+    }
+
+    /**
+     * Cancels the request without ending the request body, so that incomplete data is never
+     * accepted by the Coveralls API.
+     */
+    public void abort() {
+        aborted = true;
+        upload.cancel(true);
+        chunks.clear();
+    }
+
+    private void put(final byte[] chunk) throws IOException {
+        checkUpload();
+        try {
+            while (!chunks.offer(chunk, POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                checkUpload();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending Coveralls data");
+        }
+    }
+
+    private void checkUpload() throws IOException {
+        if (aborted) {
+            throw new IOException("Submission to Coveralls API was aborted");
+        }
+        if (upload.isDone()) {
+            IOException ex = new IOException("Submission to Coveralls API ended before all data was sent");
+            try {
+                upload.get();
+            } catch (InterruptedException ignore) {
+                Thread.currentThread().interrupt();
+            } catch (CancellationException ignore) {
+                // aborted
+            } catch (ExecutionException failure) {
+                ex.initCause(failure.getCause());
+            }
+            throw ex;
+        }
+    }
+
+    private static IOException rethrow(final Throwable cause) throws ProcessingException {
+        if (cause instanceof ProcessingException) {
+            throw (ProcessingException) cause;
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IOException(cause);
+    }
+
+    interface Uploader {
+
+        CoverallsResponse upload(InputStream data) throws ProcessingException, IOException;
+    }
+
+    private final class ChunkOutputStream extends OutputStream {
+
+        private byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean finished;
+
+        @Override
+        public void write(final int b) throws IOException {
+            if (count == buffer.length) {
+                flush();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) throws IOException {
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (count == buffer.length) {
+                    flush();
+                }
+                int n = Math.min(remaining, buffer.length - count);
+                System.arraycopy(b, offset, buffer, count, n);
+                count += n;
+                offset += n;
+                remaining -= n;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (finished) {
+                throw new IOException("Submission to Coveralls API is already finished");
+            }
+            if (count > 0) {
+                byte[] chunk = (count == buffer.length ? buffer : Arrays.copyOf(buffer, count));
+                buffer = new byte[CHUNK_SIZE];
+                count = 0;
+                put(chunk);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!finished) {
+                flush();
+            }
+        }
+
+        void finish() throws IOException {
+            if (!finished) {
+                flush();
+                finished = true;
+                put(END);
+            }
+        }
+    }
+
+    private final class ChunkInputStream extends InputStream {
+
+        private byte[] chunk = new byte[0];
+        private int position;
+
+        @Override
+        public int read() throws IOException {
+            if (!next()) {
+                return -1;
+            }
+            return chunk[position++] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!next()) {
+                return -1;
+            }
+            int n = Math.min(len, chunk.length - position);
+            System.arraycopy(chunk, position, b, off, n);
+            position += n;
+            return n;
+        }
+
+        private boolean next() throws IOException {
+            if (chunk == END) {
+                return false;
+            }
+            try {
+                while (position == chunk.length) {
+                    byte[] next = chunks.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (aborted) {
+                        throw new IOException("Submission to Coveralls API was aborted");
+                    }
+                    if (next == END) {
+                        chunk = END;
+                        return false;
+                    }
+                    if (next != null) {
+                        chunk = next;
+                        position = 0;
+                    }
+                }
+                return true;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while reading Coveralls data");
+            }
+        }
+    }
+}
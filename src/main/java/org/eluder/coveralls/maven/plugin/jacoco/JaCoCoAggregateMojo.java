@@ -26,23 +26,27 @@ package org.eluder.coveralls.maven.plugin.jacoco;
  * %[license]
  */
 
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecution;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
+import org.eluder.coveralls.maven.plugin.ConcurrentCoverageParser;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
-import org.eluder.coveralls.maven.plugin.ProcessingException;
-import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.MergingCoverageParser;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
-@Mojo(name = "jacoco-aggregate", threadSafe = false, aggregator = true)
+@Mojo(name = "jacoco-aggregate", threadSafe = true, aggregator = true)
 public class JaCoCoAggregateMojo extends AbstractCoverallsMojo {
 
     /**
@@ -51,76 +55,188 @@ public class JaCoCoAggregateMojo extends AbstractCoverallsMojo {
     @Parameter(property = "coverageFile", defaultValue = "jacoco/jacoco.xml")
     protected String coverageFile;
 
+    /**
+     * File paths to multiple JaCoCo coverage files of each module, such as unit and integration
+     * test reports, used instead of <code>coverageFile</code>. The coverage of the reports is
+     * merged.
+     */
+    @Parameter(property = "coverageFiles")
+    protected List<String> coverageFiles;
+
+    /**
+     * Read coverage directly from JaCoCo execution data and compiled classes instead of the XML
+     * reports.
+     */
+    @Parameter(property = "useExecutionData", defaultValue = "false")
+    protected boolean useExecutionData;
+
+    /**
+     * File path to JaCoCo execution data file, relative to the build directory of each module.
+     */
+    @Parameter(property = "executionDataFile", defaultValue = "jacoco.exec")
+    protected String executionDataFile;
+
+    /**
+     * File paths to multiple JaCoCo execution data files of each module, relative to the build
+     * directory of each module, used instead of <code>executionDataFile</code>. The coverage of
+     * the execution data files is merged.
+     */
+    @Parameter(property = "executionDataFiles")
+    protected List<String> executionDataFiles;
+
+    /**
+     * Merge the coverage partials written with the <code>jacoco-partial</code> goal instead of
+     * parsing the reports of the modules. The reports of a module are parsed if its partial is
+     * missing or older than the reports.
+     */
+    @Parameter(property = "usePartials", defaultValue = "false")
+    protected boolean usePartials;
+
+    /**
+     * File path to the coverage partial, relative to the build directory of each module.
+     */
+    @Parameter(property = "partialFile", defaultValue = "coveralls-partial.bin")
+    protected String partialFile;
+
     /**
      * The projects in the reactor for aggregation report.
      */
     @Parameter(property = "reactorProjects", defaultValue = "${reactorProjects}", readonly = true)
     private List<MavenProject> reactorProjects;
 
+    /**
+     * The build session for tracking the executions in the reactor projects.
+     */
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession session;
+
+    /**
+     * The execution of this goal.
+     */
+    @Parameter(defaultValue = "${mojoExecution}", readonly = true)
+    private MojoExecution mojoExecution;
+
     private final List<File> aggregatedSourceRoots = new ArrayList<File>();
-    private final List<File> coverageFiles = new ArrayList<File>();
+    private final List<List<File>> moduleReportFiles = new ArrayList<List<File>>();
+    private final List<File> classesDirectories = new ArrayList<File>();
+    private final List<File> partials = new ArrayList<File>();
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
-        if (isLastReactorProject()) {
-            for (final MavenProject mavenProject : reactorProjects) {
-                if ("pom".equals(mavenProject.getPackaging())) {
-                    continue;
-                }
+        if (isAggregationReady()) {
+            checkMergeHits();
+            collectReports();
+            super.execute();
+        }
+    }
 
-                final File reportFile = new File(
-                        mavenProject.getModel().getReporting().getOutputDirectory(),
-                        coverageFile);
+    /**
+     * Collects the reports, classes directories, partials and source roots of the reactor
+     * projects.
+     */
+    void collectReports() {
+        aggregatedSourceRoots.clear();
+        moduleReportFiles.clear();
+        classesDirectories.clear();
+        partials.clear();
+        for (final MavenProject mavenProject : reactorProjects) {
+            if ("pom".equals(mavenProject.getPackaging())) {
+                continue;
+            }
+
+            final List<File> moduleReportFiles = new ArrayList<File>();
+            for (final String reportPath : getReportPaths()) {
+                final File reportFile = getReportFile(mavenProject, reportPath);
                 if (reportFile.exists()) {
-                    coverageFiles.add(reportFile);
+                    moduleReportFiles.add(reportFile);
                 } else {
                     getLog().warn("Skipping report file " + reportFile + " (does not exists)");
                 }
+            }
+            final File modulePartial = new File(mavenProject.getBuild().getDirectory(), partialFile);
+            if (usePartials && !moduleReportFiles.isEmpty() && JaCoCoPartialMojo.isUpToDate(modulePartial, moduleReportFiles, getMergeHits())) {
+                partials.add(modulePartial);
+            } else if (!moduleReportFiles.isEmpty()) {
+                this.moduleReportFiles.add(moduleReportFiles);
+                classesDirectories.add(new File(mavenProject.getBuild().getOutputDirectory()));
+            }
 
-                for (final String s : mavenProject.getCompileSourceRoots()) {
-                    final File file = new File(s);
-                    if (file.exists()) {
-                        aggregatedSourceRoots.add(file);
-                    }
+            for (final String s : mavenProject.getCompileSourceRoots()) {
+                final File file = new File(s);
+                if (file.exists()) {
+                    aggregatedSourceRoots.add(file);
                 }
             }
-            super.execute();
         }
     }
 
     @Override
     protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
-        return new MultipleCoverageParser(sourceLoader);
+        // execution data of a module is combined before its classes are analyzed
+        boolean merge = (getReportPaths().size() > 1 && !useExecutionData) || !partials.isEmpty();
+        SourceLoader parserLoader = (merge ? sourceLoader.createCoverageLoader() : sourceLoader);
+        List<CoverageParser> parsers = new ArrayList<CoverageParser>();
+        int reports = 0;
+        for (int i = 0; i < moduleReportFiles.size(); i++) {
+            List<File> reportFiles = moduleReportFiles.get(i);
+            reports += reportFiles.size();
+            if (useExecutionData) {
+                parsers.add(new JaCoCoExecutionDataParser(reportFiles, Arrays.asList(classesDirectories.get(i)), parserLoader));
+            } else {
+                for (File reportFile : reportFiles) {
+                    parsers.add(new JaCoCoParser(reportFile, parserLoader, byteScanner));
+                }
+            }
+        }
+        CoverageParser parser = new ConcurrentCoverageParser(project.getBasedir(), parsers, parallelism);
+        if (!merge) {
+            return parser;
+        }
+        MergingCoverageParser mergingParser = createMergingCoverageParser(parser, sourceLoader);
+        for (File partial : partials) {
+            mergingParser.getMerger().addPartial(partial);
+        }
+        getLog().info("Merging " + partials.size() + " coverage partials with " + reports + " reports");
+        return mergingParser;
     }
 
     @Override
-    protected SourceLoader createSourceLoader() {
-        return new SourceLoader(aggregatedSourceRoots, sourceEncoding);
+    protected SourceLoader createSourceLoader() throws IOException {
+        return configureSourceLoader(new SourceLoader(aggregatedSourceRoots, sourceEncoding), aggregatedSourceRoots, null);
     }
 
-    private boolean isLastReactorProject() {
-        return !reactorProjects.isEmpty() && reactorProjects.get(reactorProjects.size() - 1).equals(project);
+    private List<String> getReportPaths() {
+        List<String> reportPaths = (useExecutionData ? executionDataFiles : coverageFiles);
+        if (reportPaths == null || reportPaths.isEmpty()) {
+            return Collections.singletonList(useExecutionData ? executionDataFile : coverageFile);
+        }
+        return reportPaths;
     }
 
-    private final class MultipleCoverageParser implements CoverageParser {
-        private final List<JaCoCoParser> parsers = new ArrayList<JaCoCoParser>();
-
-        private MultipleCoverageParser(final SourceLoader sourceLoader) {
-            for (final File file : coverageFiles) {
-                parsers.add(new JaCoCoParser(file, sourceLoader));
-            }
+    private File getReportFile(final MavenProject mavenProject, final String reportPath) {
+        if (useExecutionData) {
+            return new File(mavenProject.getBuild().getDirectory(), reportPath);
         }
+        return new File(mavenProject.getModel().getReporting().getOutputDirectory(), reportPath);
+    }
 
-        @Override
-        public void parse(final SourceCallback callback) throws ProcessingException, IOException {
-            for (final JaCoCoParser parser : parsers) {
-                parser.parse(callback);
-            }
+    /**
+     * Goals invoked from the command line execute once after the lifecycle of all projects has
+     * completed. Goals bound to the lifecycle execute in every project, and the aggregation runs
+     * in the last reactor project, or in parallel builds in the project that executes last.
+     */
+    private boolean isAggregationReady() {
+        if (mojoExecution != null && mojoExecution.getSource() == MojoExecution.Source.CLI) {
+            return true;
         }
-
-        @Override
-        public File getCoverageFile() {
-            return project.getBasedir();
+        boolean executedInAll = ReactorExecutions.execute(session, reactorProjects, project);
+        if (session != null && session.isParallel()) {
+            return executedInAll;
         }
+        return isLastReactorProject();
+    }
+
+    private boolean isLastReactorProject() {
+        return !reactorProjects.isEmpty() && reactorProjects.get(reactorProjects.size() - 1).equals(project);
     }
 }
@@ -0,0 +1,164 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.jacoco.core.analysis.Analyzer;
+import org.jacoco.core.analysis.CoverageBuilder;
+import org.jacoco.core.analysis.ICounter;
+import org.jacoco.core.analysis.ILine;
+import org.jacoco.core.analysis.ISourceFileCoverage;
+import org.jacoco.core.data.ExecutionDataReader;
+import org.jacoco.core.data.ExecutionDataStore;
+import org.jacoco.core.data.SessionInfoStore;
+
+/**
+ * Coverage parser that reads JaCoCo execution data (<code>jacoco.exec</code>) and analyzes the
+ * compiled classes in memory, without the XML report produced by the JaCoCo report goal. The
+ * line coverage is equal to the XML report, source files are passed to the callback handler in
+ * package and file name order. All source files are known before loading, so upcoming sources
+ * are hinted to the source loader for prefetching. Multiple execution data files, such as unit
+ * and integration test data, are read into one execution data store and the classes are analyzed
+ * once.
+ */
+public class JaCoCoExecutionDataParser implements CoverageParser {
+
+    private static final Comparator<ISourceFileCoverage> SOURCE_FILE_ORDER = new Comparator<ISourceFileCoverage>() {
+        @Override
+        public int compare(final ISourceFileCoverage o1, final ISourceFileCoverage o2) {
+            int result = o1.getPackageName().compareTo(o2.getPackageName());
+            return (result != 0 ? result : o1.getName().compareTo(o2.getName()));
+        }
+    };
+
+    private final List<File> executionDataFiles;
+    private final List<File> classesDirectories;
+    private final SourceLoader sourceLoader;
+
+    public JaCoCoExecutionDataParser(final File executionDataFile, final List<File> classesDirectories, final SourceLoader sourceLoader) {
+        this(Collections.singletonList(executionDataFile), classesDirectories, sourceLoader);
+    }
+
+    public JaCoCoExecutionDataParser(final List<File> executionDataFiles, final List<File> classesDirectories, final SourceLoader sourceLoader) {
+        if (executionDataFiles == null || executionDataFiles.isEmpty()) {
+            throw new IllegalArgumentException("At least one execution data file must be defined");
+        }
+        if (classesDirectories == null || classesDirectories.isEmpty()) {
+            throw new IllegalArgumentException("At least one classes directory must be defined");
+        }
+        this.executionDataFiles = executionDataFiles;
+        this.classesDirectories = classesDirectories;
+        this.sourceLoader = sourceLoader;
+    }
+
+    @Override
+    public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+        ExecutionDataStore executionData = readExecutionData();
+        CoverageBuilder coverageBuilder = new CoverageBuilder();
+        Analyzer analyzer = new Analyzer(executionData, coverageBuilder);
+        for (File classesDirectory : classesDirectories) {
+            if (classesDirectory.exists()) {
+                analyzer.analyzeAll(classesDirectory);
+            }
+        }
+
+        List<ISourceFileCoverage> sourceFiles = new ArrayList<ISourceFileCoverage>(coverageBuilder.getSourceFiles());
+        Collections.sort(sourceFiles, SOURCE_FILE_ORDER);
+        int prefetched = 0;
+        for (int i = 0; i < sourceFiles.size(); i++) {
+            if (prefetched <= i) {
+                prefetched = i + 1;
+            }
+            while (prefetched < sourceFiles.size() && sourceLoader.prefetch(getName(sourceFiles.get(prefetched)))) {
+                prefetched++;
+            }
+            callback.onSource(createSource(sourceFiles.get(i)));
+        }
+    }
+
+    /**
+     * @return the first execution data file
+     */
+    @Override
+    public File getCoverageFile() {
+        return executionDataFiles.get(0);
+    }
+
+    private ExecutionDataStore readExecutionData() throws ProcessingException, IOException {
+        ExecutionDataStore executionData = new ExecutionDataStore();
+        SessionInfoStore sessionInfo = new SessionInfoStore();
+        for (File executionDataFile : executionDataFiles) {
+            InputStream input = new BufferedInputStream(new FileInputStream(executionDataFile));
+            try {
+                ExecutionDataReader reader = new ExecutionDataReader(input);
+                reader.setExecutionDataVisitor(executionData);
+                reader.setSessionInfoVisitor(sessionInfo);
+                reader.read();
+            } catch (IllegalStateException ex) {
+                // thrown for the same class id with a different number of probes
+                throw new ProcessingException("Incompatible execution data in " + executionDataFile.getAbsolutePath(), ex);
+            } finally {
+                IOUtil.close(input);
+            }
+        }
+        return executionData;
+    }
+
+    private Source createSource(final ISourceFileCoverage sourceFile) throws IOException {
+        Source source = sourceLoader.load(getName(sourceFile));
+        if (sourceFile.getFirstLine() != ISourceFileCoverage.UNKNOWN_LINE) {
+            for (int nr = sourceFile.getFirstLine(); nr <= sourceFile.getLastLine(); nr++) {
+                ILine line = sourceFile.getLine(nr);
+                if (line.getStatus() != ICounter.EMPTY) {
+                    int ci = line.getInstructionCounter().getCoveredCount();
+                    source.addCoverage(nr, (ci == 0 ? 0 : 1)); // jacoco does not count hits
+                }
+            }
+        }
+        return source;
+    }
+
+    private static String getName(final ISourceFileCoverage sourceFile) {
+        String packageName = sourceFile.getPackageName();
+        return (packageName.length() == 0 ? sourceFile.getName() : packageName + "/" + sourceFile.getName());
+    }
+}
@@ -31,12 +31,16 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
+import org.eluder.coveralls.maven.plugin.ConcurrentCoverageParser;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
-@Mojo(name = "jacoco", threadSafe = false)
+@Mojo(name = "jacoco", threadSafe = true)
 public class JaCoCoMojo extends AbstractCoverallsMojo {
 
     /**
@@ -45,6 +49,39 @@ public class JaCoCoMojo extends AbstractCoverallsMojo {
     @Parameter(property = "coverageFile", defaultValue = "${project.reporting.outputDirectory}/jacoco/jacoco.xml")
     protected File coverageFile;
 
+    /**
+     * File paths to multiple JaCoCo coverage files, such as unit and integration test reports,
+     * used instead of <code>coverageFile</code>. The coverage of the reports is merged.
+     */
+    @Parameter(property = "coverageFiles")
+    protected List<File> coverageFiles;
+
+    /**
+     * Read coverage directly from JaCoCo execution data and compiled classes instead of the XML
+     * report.
+     */
+    @Parameter(property = "useExecutionData", defaultValue = "false")
+    protected boolean useExecutionData;
+
+    /**
+     * File path to JaCoCo execution data file.
+     */
+    @Parameter(property = "executionDataFile", defaultValue = "${project.build.directory}/jacoco.exec")
+    protected File executionDataFile;
+
+    /**
+     * File paths to multiple JaCoCo execution data files, used instead of
+     * <code>executionDataFile</code>. The coverage of the execution data files is merged.
+     */
+    @Parameter(property = "executionDataFiles")
+    protected List<File> executionDataFiles;
+
+    /**
+     * Directory of the compiled classes analyzed with the execution data.
+     */
+    @Parameter(property = "classesDirectory", defaultValue = "${project.build.outputDirectory}")
+    protected File classesDirectory;
+
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
         if ("pom".equals(project.getPackaging())) {
@@ -56,6 +93,37 @@ public class JaCoCoMojo extends AbstractCoverallsMojo {
 
     @Override
     protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
-        return new JaCoCoParser(coverageFile, sourceLoader);
+        List<File> reportFiles = (useExecutionData ? executionDataFiles : coverageFiles);
+        if (reportFiles == null || reportFiles.isEmpty()) {
+            return createReportParser(useExecutionData ? executionDataFile : coverageFile, sourceLoader);
+        }
+        List<File> existingFiles = new ArrayList<File>();
+        for (File reportFile : reportFiles) {
+            if (reportFile.exists()) {
+                existingFiles.add(reportFile);
+            } else {
+                getLog().warn("Skipping report file " + reportFile + " (does not exists)");
+            }
+        }
+        if (existingFiles.isEmpty()) {
+            existingFiles.add(reportFiles.get(0));
+        }
+        if (useExecutionData) {
+            // execution data is combined before the classes are analyzed
+            return new JaCoCoExecutionDataParser(existingFiles, Arrays.asList(classesDirectory), sourceLoader);
+        }
+        SourceLoader coverageLoader = sourceLoader.createCoverageLoader();
+        List<CoverageParser> parsers = new ArrayList<CoverageParser>();
+        for (File reportFile : existingFiles) {
+            parsers.add(createReportParser(reportFile, coverageLoader));
+        }
+        return createMergingCoverageParser(new ConcurrentCoverageParser(project.getBasedir(), parsers, parallelism), sourceLoader);
+    }
+
+    private CoverageParser createReportParser(final File reportFile, final SourceLoader sourceLoader) {
+        if (useExecutionData) {
+            return new JaCoCoExecutionDataParser(reportFile, Arrays.asList(classesDirectory), sourceLoader);
+        }
+        return new JaCoCoParser(reportFile, sourceLoader, byteScanner);
     }
 }
@@ -29,51 +29,83 @@ package org.eluder.coveralls.maven.plugin.jacoco;
 import java.io.File;
 import java.io.IOException;
 
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
-
 import org.eluder.coveralls.maven.plugin.AbstractXmlEventParser;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.SourceCallback;
 import org.eluder.coveralls.maven.plugin.domain.Source;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.XmlElement;
 
 public class JaCoCoParser extends AbstractXmlEventParser {
 
     private String packageName;
     private Source source;
+    private String prefetchPackageName;
     
     public JaCoCoParser(final File coverageFile, final SourceLoader sourceLoader) {
-        super(coverageFile, sourceLoader);
+        this(coverageFile, sourceLoader, false);
     }
     
-    @Override
-    protected void onEvent(final XMLStreamReader xml, final SourceCallback callback) throws XMLStreamException, ProcessingException, IOException {
-        if (isStartElement(xml, "package")) {
-            this.packageName = xml.getAttributeValue(null, "name");
-        } else
-        
-        if (isStartElement(xml, "sourcefile") && packageName != null) {
-            String sourceFile = this.packageName + "/" + xml.getAttributeValue(null, "name");
-            this.source = loadSource(sourceFile);
-        } else
-        
-        if (isStartElement(xml, "line") && this.source != null) {
-            int ci = Integer.parseInt(xml.getAttributeValue(null, "ci"));
-            this.source.addCoverage(
-                    Integer.parseInt(xml.getAttributeValue(null, "nr")),
-                    (ci == 0 ? 0 : 1) // jacoco does not count hits
-            );
-        } else
-        
-        if (isEndElement(xml, "sourcefile") && this.source != null) {
-            callback.onSource(this.source);
-            this.source = null;
-        } else
-        
-        if (isEndElement(xml, "package")) {
-            this.packageName = null;
-        }
+    public JaCoCoParser(final File coverageFile, final SourceLoader sourceLoader, final boolean byteScanner) {
+        super(coverageFile, sourceLoader, byteScanner);
+        // class, method and counter elements are most of the report but have no line coverage
+        skipElement("sessioninfo");
+        skipElement("class");
+        skipElement("counter");
+        onStartElement("package", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException {
+                packageName = element.getAttributeValue("name");
+            }
+        });
+        onStartElement("sourcefile", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException, IOException {
+                if (packageName != null) {
+                    source = loadSource(packageName + "/" + element.getAttributeValue("name"));
+                }
+            }
+        });
+        onStartElement("line", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException {
+                if (source != null) {
+                    int ci = element.getIntAttributeValue("ci");
+                    source.addCoverage(
+                            element.getIntAttributeValue("nr"),
+                            (ci == 0 ? 0 : 1) // jacoco does not count hits
+                    );
+                }
+            }
+        });
+        onEndElement("sourcefile", new EndElementHandler() {
+            @Override
+            public void onEnd(final SourceCallback callback) throws ProcessingException, IOException {
+                if (source != null) {
+                    callback.onSource(source);
+                    source = null;
+                }
+            }
+        });
+        onEndElement("package", new EndElementHandler() {
+            @Override
+            public void onEnd(final SourceCallback callback) {
+                packageName = null;
+            }
+        });
+        prefetchSource("package", new SourceFileResolver() {
+            @Override
+            public String resolve(final XmlElement element) throws ProcessingException {
+                prefetchPackageName = element.getAttributeValue("name");
+                return null;
+            }
+        });
+        prefetchSource("sourcefile", new SourceFileResolver() {
+            @Override
+            public String resolve(final XmlElement element) throws ProcessingException {
+                return (prefetchPackageName != null ? prefetchPackageName + "/" + element.getAttributeValue("name") : null);
+            }
+        });
     }
 
 }
@@ -0,0 +1,230 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.eluder.coveralls.maven.plugin.AbstractCoverageMojo;
+import org.eluder.coveralls.maven.plugin.CoverageMerger;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+
+/**
+ * Writes the JaCoCo coverage of a module to a compact binary partial in the build directory of
+ * the module. The <code>jacoco-aggregate</code> goal merges the partials of all modules with
+ * <code>usePartials</code> instead of parsing the reports again. The partial is written only when
+ * a report is newer than the partial, or the reports or the hits mode of the partial have changed.
+ */
+@Mojo(name = "jacoco-partial", threadSafe = true)
+public class JaCoCoPartialMojo extends AbstractCoverageMojo {
+
+    /**
+     * File path to JaCoCo coverage file.
+     */
+    @Parameter(property = "coverageFile", defaultValue = "${project.reporting.outputDirectory}/jacoco/jacoco.xml")
+    protected File coverageFile;
+
+    /**
+     * File paths to multiple JaCoCo coverage files, used instead of <code>coverageFile</code>.
+     */
+    @Parameter(property = "coverageFiles")
+    protected List<File> coverageFiles;
+
+    /**
+     * Read coverage directly from JaCoCo execution data and compiled classes instead of the XML
+     * report.
+     */
+    @Parameter(property = "useExecutionData", defaultValue = "false")
+    protected boolean useExecutionData;
+
+    /**
+     * File path to JaCoCo execution data file.
+     */
+    @Parameter(property = "executionDataFile", defaultValue = "${project.build.directory}/jacoco.exec")
+    protected File executionDataFile;
+
+    /**
+     * File paths to multiple JaCoCo execution data files, used instead of
+     * <code>executionDataFile</code>.
+     */
+    @Parameter(property = "executionDataFiles")
+    protected List<File> executionDataFiles;
+
+    /**
+     * Directory of the compiled classes analyzed with the execution data.
+     */
+    @Parameter(property = "classesDirectory", defaultValue = "${project.build.outputDirectory}")
+    protected File classesDirectory;
+
+    /**
+     * File path to write the coverage partial to.
+     */
+    @Parameter(property = "partialFile", defaultValue = "${project.build.directory}/coveralls-partial.bin")
+    protected File partialFile;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        if (isSkipped()) {
+            return;
+        }
+        checkMergeHits();
+        if ("pom".equals(project.getPackaging())) {
+            getLog().info("Skipping Coverall for project with packaging type 'pom'");
+            return;
+        }
+
+        List<File> reportFiles = getExistingReportFiles();
+        if (reportFiles.isEmpty()) {
+            getLog().warn("Skipping coverage partial, no report files found");
+            if (partialFile.exists() && !partialFile.delete()) {
+                throw new MojoExecutionException("Could not delete outdated coverage partial " + partialFile.getAbsolutePath());
+            }
+            return;
+        }
+        CoverageMerger.Hits hits = getMergeHits();
+        if (isUpToDate(partialFile, reportFiles, hits)) {
+            getLog().info("Coverage partial " + partialFile.getAbsolutePath() + " is up to date");
+            return;
+        }
+
+        try {
+            long now = System.currentTimeMillis();
+            SourceLoader sourceLoader = createSourceLoader();
+            try {
+                CoverageMerger merger = createCoverageMerger(sourceLoader, hits);
+                try {
+                    SourceLoader coverageLoader = sourceLoader.createCoverageLoader();
+                    if (useExecutionData) {
+                        new JaCoCoExecutionDataParser(reportFiles, Arrays.asList(classesDirectory), coverageLoader).parse(merger);
+                    } else {
+                        for (File reportFile : reportFiles) {
+                            new JaCoCoParser(reportFile, coverageLoader, byteScanner).parse(merger);
+                        }
+                    }
+                    File directory = partialFile.getAbsoluteFile().getParentFile();
+                    if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+                        throw new IOException("Could not create directory " + directory.getAbsolutePath());
+                    }
+                    merger.writePartial(partialFile, reportFiles);
+                } finally {
+                    merger.close();
+                }
+            } finally {
+                closeSourceLoader(sourceLoader);
+            }
+            getLog().info("Wrote coverage partial " + partialFile.getAbsolutePath() + " from " + reportFiles.size() + " reports in " + (System.currentTimeMillis() - now) + "ms");
+        } catch (ProcessingException ex) {
+            throw new MojoFailureException("Processing of input or output data failed", ex);
+        } catch (IOException ex) {
+            throw new MojoFailureException("I/O operation failed", ex);
+        } catch (Exception ex) {
+            throw new MojoExecutionException("Build error", ex);
+        }
+    }
+
+    /**
+     * @return source loader for the line counts of the sources in the configured source
+     *         directories, or in the compile source roots of the module
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    protected SourceLoader createSourceLoader() throws IOException {
+        List<File> directories = sourceDirectories;
+        if (directories == null || directories.isEmpty()) {
+            directories = new ArrayList<File>();
+            for (String sourceRoot : project.getCompileSourceRoots()) {
+                File directory = new File(sourceRoot);
+                if (directory.isDirectory()) {
+                    directories.add(directory);
+                }
+            }
+        }
+        return configureSourceLoader(new SourceLoader(directories, sourceUrls, sourceEncoding), directories, sourceUrls);
+    }
+
+    private List<File> getExistingReportFiles() {
+        List<File> reportFiles = (useExecutionData ? executionDataFiles : coverageFiles);
+        if (reportFiles == null || reportFiles.isEmpty()) {
+            reportFiles = Collections.singletonList(useExecutionData ? executionDataFile : coverageFile);
+        }
+        List<File> existing = new ArrayList<File>();
+        for (File reportFile : reportFiles) {
+            if (reportFile.exists()) {
+                existing.add(reportFile);
+            } else {
+                getLog().warn("Skipping report file " + reportFile + " (does not exists)");
+            }
+        }
+        return existing;
+    }
+
+    /**
+     * @param partial the coverage partial
+     * @param reportFiles the report files of the partial
+     * @param hits how the hits of the partial must be merged
+     * @return <code>true</code> if the partial exists, was written from the same reports with the
+     *         same hits mode and is not older than any of the reports
+     */
+    static boolean isUpToDate(final File partial, final List<File> reportFiles, final CoverageMerger.Hits hits) {
+        if (!partial.isFile()) {
+            return false;
+        }
+        CoverageMerger.PartialHeader header;
+        try {
+            header = CoverageMerger.readPartialHeader(partial);
+        } catch (IOException ex) {
+            return false;
+        }
+        if (header == null || header.getHits() != hits || !header.getReportFiles().equals(getAbsoluteFiles(reportFiles))) {
+            return false;
+        }
+        long lastModified = partial.lastModified();
+        for (File reportFile : reportFiles) {
+            if (reportFile.lastModified() > lastModified) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<File> getAbsoluteFiles(final List<File> files) {
+        List<File> absoluteFiles = new ArrayList<File>(files.size());
+        for (File file : files) {
+            absoluteFiles.add(file.getAbsoluteFile());
+        }
+        return absoluteFiles;
+    }
+}
@@ -0,0 +1,75 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Tracks the projects of a reactor build where an aggregating goal has executed, so that the
+ * aggregation runs once after the goal has executed in every project. In parallel builds the
+ * projects complete in any order, so the last project of the reactor is not necessarily the last
+ * one to execute. Executions are tracked per build session, and sessions are held weakly so that
+ * consecutive builds of a Maven daemon do not share state.
+ */
+final class ReactorExecutions {
+
+    private static final Map<Object, Set<MavenProject>> EXECUTED = new WeakHashMap<Object, Set<MavenProject>>();
+
+    private ReactorExecutions() {
+        // static methods only
+    }
+
+    /**
+     * Records an execution of the goal in a project.
+     *
+     * @param session the build session, compared by identity
+     * @param reactorProjects the projects of the reactor
+     * @param project the project where the goal executed
+     * @return <code>true</code> if the goal has now executed in every project of the reactor
+     */
+    static boolean execute(final Object session, final List<MavenProject> reactorProjects, final MavenProject project) {
+        synchronized (EXECUTED) {
+            Set<MavenProject> executed = EXECUTED.get(session);
+            if (executed == null) {
+                executed = new HashSet<MavenProject>();
+                EXECUTED.put(session, executed);
+            }
+            executed.add(project);
+            if (executed.containsAll(reactorProjects)) {
+                EXECUTED.remove(session);
+                return true;
+            }
+            return false;
+        }
+    }
+}
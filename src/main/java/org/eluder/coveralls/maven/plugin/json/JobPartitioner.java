@@ -0,0 +1,240 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
+
+/**
+ * Splits written Coveralls data to partitions that are submitted as parallel jobs of the same
+ * build. Each source is copied to the partition with the smallest encoded payload so far, so
+ * that the partitions have nearly equal payloads. Every partition has the job details of the
+ * original data, flagged with <code>parallel</code> and a partition specific
+ * <code>flag_name</code>. The <code>service_job_id</code> is suffixed with the partition number,
+ * so that the partitions are separate jobs of the build. Sources keep their original order within
+ * a partition. Gzip compressed data, named with <code>.gz</code> suffix, is split to compressed
+ * partitions.
+ */
+public final class JobPartitioner {
+
+    private static final String SOURCE_FILES = "source_files";
+    private static final String SERVICE_JOB_ID = "service_job_id";
+    private static final String PARALLEL = "parallel";
+    private static final String FLAG_NAME = "flag_name";
+    private static final String GZIP_SUFFIX = ".gz";
+    private static final int BUFFER_SIZE = 65536;
+
+    private final MappingJsonFactory factory = new MappingJsonFactory();
+    private final int partitions;
+
+    /**
+     * @param partitions maximum number of partitions
+     */
+    public JobPartitioner(final int partitions) {
+        if (partitions < 1) {
+            throw new IllegalArgumentException("Partitions must be positive, was " + partitions);
+        }
+        this.partitions = partitions;
+    }
+
+    /**
+     * Splits the Coveralls data to partition files next to the original file in a single pass.
+     * Fewer partitions are created if there are fewer sources than partitions.
+     *
+     * @param coverallsFile the Coveralls data file to split
+     * @return the partition files
+     * @throws ProcessingException if the Coveralls data is invalid
+     * @throws IOException if an I/O error occurs
+     */
+    public List<File> split(final File coverallsFile) throws ProcessingException, IOException {
+        List<File> files = new ArrayList<File>(partitions);
+        List<JsonGenerator> generators = new ArrayList<JsonGenerator>(partitions);
+        JsonParser parser = createParser(coverallsFile);
+        try {
+            startObject(parser);
+            Map<String, JsonNode> fields = new LinkedHashMap<String, JsonNode>();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if (SOURCE_FILES.equals(field) && value == JsonToken.START_ARRAY) {
+                    splitSources(coverallsFile, parser, fields, files, generators);
+                } else if (!PARALLEL.equals(field) && !FLAG_NAME.equals(field)) {
+                    JsonNode node = parser.readValueAsTree();
+                    if (generators.isEmpty()) {
+                        fields.put(field, node);
+                    }
+                    for (JsonGenerator generator : generators) {
+                        generator.writeFieldName(field);
+                        generator.writeTree(node);
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            if (generators.isEmpty()) {
+                startPartition(coverallsFile, fields, files, generators).writeEndArray();
+            }
+            for (JsonGenerator generator : generators) {
+                generator.writeEndObject();
+            }
+            return files;
+        } catch (JsonProcessingException ex) {
+            throw new ProcessingException(ex);
+        } finally {
+            parser.close();
+            for (JsonGenerator generator : generators) {
+                generator.close();
+            }
+        }
+    }
+
+    /**
+     * Copies each source to the partition with the smallest payload so far, measured by the
+     * encoded size of the sources. A partition is started when all started partitions have
+     * sources, so no partition is left empty.
+     */
+    private void splitSources(final File coverallsFile, final JsonParser parser, final Map<String, JsonNode> fields,
+            final List<File> files, final List<JsonGenerator> generators) throws ProcessingException, IOException {
+        long[] totals = new long[partitions];
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            int partition;
+            if (generators.size() < partitions) {
+                partition = generators.size();
+                startPartition(coverallsFile, fields, files, generators);
+            } else {
+                partition = 0;
+                for (int i = 1; i < totals.length; i++) {
+                    if (totals[i] < totals[partition]) {
+                        partition = i;
+                    }
+                }
+            }
+            long start = parser.getTokenLocation().getByteOffset();
+            generators.get(partition).copyCurrentStructure(parser);
+            totals[partition] += parser.getCurrentLocation().getByteOffset() - start;
+        }
+        for (JsonGenerator generator : generators) {
+            generator.writeEndArray();
+        }
+    }
+
+    private JsonGenerator startPartition(final File coverallsFile, final Map<String, JsonNode> fields,
+            final List<File> files, final List<JsonGenerator> generators) throws IOException {
+        int partition = generators.size() + 1;
+        File file = getPartitionFile(coverallsFile, partition);
+        JsonGenerator generator = factory.createGenerator(createOutput(file), JsonEncoding.UTF8);
+        files.add(file);
+        generators.add(generator);
+        generator.writeStartObject();
+        for (Map.Entry<String, JsonNode> field : fields.entrySet()) {
+            generator.writeFieldName(field.getKey());
+            if (SERVICE_JOB_ID.equals(field.getKey()) && field.getValue().isTextual()) {
+                // parallel jobs of a build are separate jobs
+                generator.writeString(field.getValue().asText() + "-" + partition);
+            } else {
+                generator.writeTree(field.getValue());
+            }
+        }
+        generator.writeBooleanField(PARALLEL, true);
+        generator.writeStringField(FLAG_NAME, "partition-" + partition);
+        generator.writeArrayFieldStart(SOURCE_FILES);
+        return generator;
+    }
+
+    private JsonParser createParser(final File coverallsFile) throws IOException {
+        InputStream input = new BufferedInputStream(new FileInputStream(coverallsFile), BUFFER_SIZE);
+        try {
+            if (isCompressed(coverallsFile)) {
+                input = new GZIPInputStream(input, BUFFER_SIZE);
+            }
+            return factory.createParser(input);
+        } catch (IOException ex) {
+            IOUtil.close(input);
+            throw ex;
+        }
+    }
+
+    private static OutputStream createOutput(final File file) throws IOException {
+        OutputStream output = new FileOutputStream(file);
+        if (isCompressed(file)) {
+            try {
+                return new GZIPOutputStream(output, BUFFER_SIZE);
+            } catch (IOException ex) {
+                IOUtil.close(output);
+                throw ex;
+            }
+        }
+        return output;
+    }
+
+    private static void startObject(final JsonParser parser) throws ProcessingException, IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new ProcessingException("Coveralls data must be a JSON object");
+        }
+    }
+
+    private static boolean isCompressed(final File file) {
+        return file.getName().endsWith(GZIP_SUFFIX);
+    }
+
+    private static File getPartitionFile(final File coverallsFile, final int partition) {
+        String name = coverallsFile.getName();
+        String suffix = "";
+        if (isCompressed(coverallsFile)) {
+            suffix = GZIP_SUFFIX;
+            name = name.substring(0, name.length() - GZIP_SUFFIX.length());
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            suffix = name.substring(dot) + suffix;
+            name = name.substring(0, dot);
+        }
+        return new File(coverallsFile.getParentFile(), name + "-" + partition + suffix);
+    }
+}
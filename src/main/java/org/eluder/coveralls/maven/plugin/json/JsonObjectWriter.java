@@ -0,0 +1,162 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.IOException;
+import java.util.List;
+
+import org.eluder.coveralls.maven.plugin.domain.Git;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.core.json.UTF8JsonGenerator;
+
+/**
+ * Writes the Coveralls domain objects with direct JSON generator calls instead of data binding.
+ * Field names are encoded once and coverage is written from the primitive array, so writing a
+ * source allocates nothing per line. The output is equal to the data binding of the annotated
+ * domain objects: null fields of git are omitted, null fields of head and remotes are written.
+ */
+final class JsonObjectWriter {
+
+    private static final SerializableString NAME = new SerializedString("name");
+    private static final SerializableString SOURCE = new SerializedString("source");
+    private static final SerializableString SOURCE_DIGEST = new SerializedString("source_digest");
+    private static final SerializableString COVERAGE = new SerializedString("coverage");
+    private static final SerializableString HEAD = new SerializedString("head");
+    private static final SerializableString BRANCH = new SerializedString("branch");
+    private static final SerializableString REMOTES = new SerializedString("remotes");
+    private static final SerializableString ID = new SerializedString("id");
+    private static final SerializableString AUTHOR_NAME = new SerializedString("author_name");
+    private static final SerializableString AUTHOR_EMAIL = new SerializedString("author_email");
+    private static final SerializableString COMMITTER_NAME = new SerializedString("committer_name");
+    private static final SerializableString COMMITTER_EMAIL = new SerializedString("committer_email");
+    private static final SerializableString MESSAGE = new SerializedString("message");
+    private static final SerializableString URL = new SerializedString("url");
+
+    private JsonObjectWriter() {
+        // static methods only
+    }
+
+    /**
+     * Writes a source. Sources loaded in digest mode are written with <code>source_digest</code>
+     * instead of the content. Content that is still UTF-8 encoded is written without decoding when
+     * the generator writes UTF-8. Lines that are not relevant are written as <code>null</code>.
+     *
+     * @param generator the JSON generator
+     * @param source the source to write
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeSource(final JsonGenerator generator, final Source source) throws IOException {
+        generator.writeStartObject();
+        generator.writeFieldName(NAME);
+        generator.writeString(source.getFullName());
+        if (source.getDigest() != null) {
+            generator.writeFieldName(SOURCE_DIGEST);
+            generator.writeString(source.getDigest());
+        } else if (source.getUtf8Source() != null && generator instanceof UTF8JsonGenerator) {
+            byte[] utf8 = source.getUtf8Source();
+            generator.writeFieldName(SOURCE);
+            generator.writeUTF8String(utf8, 0, utf8.length);
+        } else {
+            generator.writeFieldName(SOURCE);
+            generator.writeString(source.getSource());
+        }
+        generator.writeFieldName(COVERAGE);
+        generator.writeStartArray();
+        int[] coverage = source.getCoverage();
+        for (int i = 0; i < coverage.length; i++) {
+            if (coverage[i] == Source.NOT_RELEVANT) {
+                generator.writeNull();
+            } else {
+                generator.writeNumber(coverage[i]);
+            }
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    /**
+     * @param generator the JSON generator
+     * @param git the git details to write
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeGit(final JsonGenerator generator, final Git git) throws IOException {
+        generator.writeStartObject();
+        if (git.getHead() != null) {
+            generator.writeFieldName(HEAD);
+            writeHead(generator, git.getHead());
+        }
+        if (git.getBranch() != null) {
+            generator.writeFieldName(BRANCH);
+            generator.writeString(git.getBranch());
+        }
+        if (git.getRemotes() != null) {
+            generator.writeFieldName(REMOTES);
+            generator.writeStartArray();
+            List<Git.Remote> remotes = git.getRemotes();
+            for (int i = 0; i < remotes.size(); i++) {
+                writeRemote(generator, remotes.get(i));
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeHead(final JsonGenerator generator, final Git.Head head) throws IOException {
+        generator.writeStartObject();
+        writeNullableString(generator, ID, head.getId());
+        writeNullableString(generator, AUTHOR_NAME, head.getAuthorName());
+        writeNullableString(generator, AUTHOR_EMAIL, head.getAuthorEmail());
+        writeNullableString(generator, COMMITTER_NAME, head.getCommitterName());
+        writeNullableString(generator, COMMITTER_EMAIL, head.getCommitterEmail());
+        writeNullableString(generator, MESSAGE, head.getMessage());
+        generator.writeEndObject();
+    }
+
+    private static void writeRemote(final JsonGenerator generator, final Git.Remote remote) throws IOException {
+        if (remote == null) {
+            generator.writeNull();
+            return;
+        }
+        generator.writeStartObject();
+        writeNullableString(generator, NAME, remote.getName());
+        writeNullableString(generator, URL, remote.getUrl());
+        generator.writeEndObject();
+    }
+
+    private static void writeNullableString(final JsonGenerator generator, final SerializableString field, final String value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+}
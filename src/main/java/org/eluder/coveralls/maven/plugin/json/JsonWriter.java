@@ -28,35 +28,126 @@ package org.eluder.coveralls.maven.plugin.json;
 
 import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
 
 import org.codehaus.plexus.util.StringUtils;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Git;
 import org.eluder.coveralls.maven.plugin.domain.Job;
 import org.eluder.coveralls.maven.plugin.domain.Source;
 
 import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.MappingJsonFactory;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 public class JsonWriter implements SourceCallback, Closeable {
 
     protected static final String TIMESTAMP_FORMAT = "yyyy-MM-dd HH:mm:ss Z";
     
+    /** Compression level that writes the Coveralls data without compression. */
+    public static final int NO_COMPRESSION = -1;
+    
+    private static final int GZIP_BUFFER_SIZE = 65536;
+    
+    private static final JsonFactory FACTORY = new JsonFactory();
+    
+    private static final SerializableString REPO_TOKEN = new SerializedString("repo_token");
+    private static final SerializableString SERVICE_NAME = new SerializedString("service_name");
+    private static final SerializableString SERVICE_JOB_ID = new SerializedString("service_job_id");
+    private static final SerializableString SERVICE_NUMBER = new SerializedString("service_number");
+    private static final SerializableString SERVICE_BUILD_URL = new SerializedString("service_build_url");
+    private static final SerializableString SERVICE_BRANCH = new SerializedString("service_branch");
+    private static final SerializableString SERVICE_PULL_REQUEST = new SerializedString("service_pull_request");
+    private static final SerializableString RUN_AT = new SerializedString("run_at");
+    private static final SerializableString ENVIRONMENT = new SerializedString("environment");
+    private static final SerializableString GIT = new SerializedString("git");
+    private static final SerializableString SOURCE_FILES = new SerializedString("source_files");
+    
     private final Job job;
     private final File coverallsFile;
     private final JsonGenerator generator;
+    private ParallelSourceEncoder encoder;
     
     public JsonWriter(final Job job, final File coverallsFile) throws IOException {
+        this(job, coverallsFile, NO_COMPRESSION);
+    }
+    
+    /**
+     * @param job the job describing the coveralls report
+     * @param coverallsFile the file to write
+     * @param compressionLevel gzip compression level from 0 to 9, or {@link #NO_COMPRESSION}
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter(final Job job, final File coverallsFile, final int compressionLevel) throws IOException {
+        if (compressionLevel != NO_COMPRESSION && (compressionLevel < Deflater.NO_COMPRESSION || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            throw new IllegalArgumentException("Invalid compression level " + compressionLevel);
+        }
+        this.job = job;
+        this.coverallsFile = coverallsFile;
+        if (compressionLevel == NO_COMPRESSION) {
+            this.generator = FACTORY.createGenerator(coverallsFile, JsonEncoding.UTF8);
+        } else {
+            this.generator = FACTORY.createGenerator(createGzipStream(coverallsFile, compressionLevel), JsonEncoding.UTF8);
+        }
+    }
+    
+    /**
+     * Writes the Coveralls data to a stream, e.g. a streaming submission, and optionally to a
+     * file. The stream is flushed but not closed when the writer is closed.
+     *
+     * @param job the job describing the coveralls report
+     * @param coverallsFile the file to write in addition to the stream, or <code>null</code>
+     * @param output the stream to write
+     * @throws IOException if an I/O error occurs
+     */
+    public JsonWriter(final Job job, final File coverallsFile, final OutputStream output) throws IOException {
         this.job = job;
         this.coverallsFile = coverallsFile;
-        this.generator = new MappingJsonFactory().createGenerator(coverallsFile, JsonEncoding.UTF8);
+        OutputStream tee = (coverallsFile != null ? new FileOutputStream(coverallsFile) : null);
+        this.generator = FACTORY.createGenerator(new TeeOutputStream(output, tee), JsonEncoding.UTF8);
+    }
+    
+    private static OutputStream createGzipStream(final File file, final int compressionLevel) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            return new GZIPOutputStream(out, GZIP_BUFFER_SIZE) {
+                {
+                    def.setLevel(compressionLevel);
+                }
+            };
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Encodes sources concurrently with the given number of threads. The sources are written in the
+     * same order and the output is equal to sequential encoding. Must be called before writing.
+     *
+     * @param threads number of encoding threads, values less than 2 encode sequentially
+     * @return this writer
+     */
+    public JsonWriter withParallelEncoding(final int threads) {
+        if (encoder != null) {
+            throw new IllegalStateException("Parallel encoding already enabled");
+        }
+        if (threads > 1) {
+            encoder = new ParallelSourceEncoder(FACTORY, (OutputStream) generator.getOutputTarget(), threads);
+        }
+        return this;
     }
     
     public final Job getJob() {
@@ -70,17 +161,22 @@ public class JsonWriter implements SourceCallback, Closeable {
     public void writeStart() throws ProcessingException, IOException {
         try {
             generator.writeStartObject();
-            writeOptionalString("repo_token", job.getRepoToken());
-            writeOptionalString("service_name", job.getServiceName());
-            writeOptionalString("service_job_id", job.getServiceJobId());
-            writeOptionalString("service_number", job.getServiceBuildNumber());
-            writeOptionalString("service_build_url", job.getServiceBuildUrl());
-            writeOptionalString("service_branch", job.getBranch());
-            writeOptionalString("service_pull_request", job.getPullRequest());
-            writeOptionalTimestamp("run_at", job.getTimestamp());
-            writeOptionalEnvironment("environment", job.getServiceEnvironment());
-            writeOptionalObject("git", job.getGit());
-            generator.writeArrayFieldStart("source_files");
+            writeOptionalString(REPO_TOKEN, job.getRepoToken());
+            writeOptionalString(SERVICE_NAME, job.getServiceName());
+            writeOptionalString(SERVICE_JOB_ID, job.getServiceJobId());
+            writeOptionalString(SERVICE_NUMBER, job.getServiceBuildNumber());
+            writeOptionalString(SERVICE_BUILD_URL, job.getServiceBuildUrl());
+            writeOptionalString(SERVICE_BRANCH, job.getBranch());
+            writeOptionalString(SERVICE_PULL_REQUEST, job.getPullRequest());
+            writeOptionalTimestamp(RUN_AT, job.getTimestamp());
+            writeOptionalEnvironment(ENVIRONMENT, job.getServiceEnvironment());
+            writeOptionalGit(GIT, job.getGit());
+            generator.writeFieldName(SOURCE_FILES);
+            generator.writeStartArray();
+            if (encoder != null) {
+                // encoded sources are written directly to the output stream
+                generator.flush();
+            }
         } catch (JsonProcessingException ex) {
             throw new ProcessingException(ex);
         }
@@ -88,6 +184,9 @@ public class JsonWriter implements SourceCallback, Closeable {
     
     public void writeEnd() throws ProcessingException, IOException {
         try {
+            if (encoder != null) {
+                encoder.flush();
+            }
             generator.writeEndArray();
             generator.writeEndObject();
         } catch (JsonProcessingException ex) {
@@ -98,7 +197,11 @@ public class JsonWriter implements SourceCallback, Closeable {
     @Override
     public void onSource(final Source source) throws ProcessingException, IOException {
         try {
-            generator.writeObject(source);
+            if (encoder != null) {
+                encoder.encode(source);
+            } else {
+                JsonObjectWriter.writeSource(generator, source);
+            }
         } catch (JsonProcessingException ex) {
             throw new ProcessingException(ex);
         }
@@ -106,7 +209,20 @@ public class JsonWriter implements SourceCallback, Closeable {
     
     @Override
     public void close() throws IOException {
-        generator.close();
+        try {
+            if (encoder != null) {
+                encoder.close();
+            }
+        } finally {
+            generator.close();
+        }
+    }
+    
+    private void writeOptionalString(final SerializableString field, final String value) throws ProcessingException, IOException {
+        if (StringUtils.isNotBlank(value)) {
+            generator.writeFieldName(field);
+            generator.writeString(value);
+        }
     }
     
     private void writeOptionalString(final String field, final String value) throws ProcessingException, IOException {
@@ -115,22 +231,24 @@ public class JsonWriter implements SourceCallback, Closeable {
         }
     }
     
-    private void writeOptionalObject(final String field, final Object value) throws ProcessingException, IOException {
+    private void writeOptionalGit(final SerializableString field, final Git value) throws ProcessingException, IOException {
         if (value != null) {
-            generator.writeObjectField(field, value);
+            generator.writeFieldName(field);
+            JsonObjectWriter.writeGit(generator, value);
         }
     }
     
-    private void writeOptionalTimestamp(final String field, final Date value) throws ProcessingException, IOException {
+    private void writeOptionalTimestamp(final SerializableString field, final Date value) throws ProcessingException, IOException {
         if (value != null) {
             SimpleDateFormat format = new SimpleDateFormat(TIMESTAMP_FORMAT);
             writeOptionalString(field, format.format(value));
         }
     }
     
-    private void writeOptionalEnvironment(final String field, final Properties properties) throws ProcessingException, IOException {
+    private void writeOptionalEnvironment(final SerializableString field, final Properties properties) throws ProcessingException, IOException {
         if (properties != null) {
-            generator.writeObjectFieldStart(field);
+            generator.writeFieldName(field);
+            generator.writeStartObject();
             for (Entry<Object, Object> property : properties.entrySet()) {
                 writeOptionalString(property.getKey().toString(), property.getValue().toString());
             }
@@ -0,0 +1,213 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eluder.coveralls.maven.plugin.DaemonThreadFactory;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Encodes sources to JSON concurrently and writes them to an array in the original order. Each
+ * source is encoded by a worker thread into a byte buffer taken from a pool. The calling thread is
+ * the single writer: it appends the encoded sources in submission order, separated with commas,
+ * and returns the buffers to the pool. The output is byte-for-byte equal to encoding the sources
+ * sequentially to the array.
+ */
+final class ParallelSourceEncoder {
+
+    private static final int WINDOW_PER_THREAD = 4;
+    private static final int INITIAL_BUFFER_SIZE = 8192;
+    private static final int OUTPUT_BUFFER_SIZE = 65536;
+    private static final int MAX_POOLED_BUFFER_SIZE = 1024 * 1024;
+
+    private final JsonFactory factory;
+    private final OutputStream output;
+    private final int window;
+    private final ExecutorService executor;
+    private final Deque<Buffer> pool = new ArrayDeque<Buffer>();
+    private final LinkedList<Future<Buffer>> pending = new LinkedList<Future<Buffer>>();
+    private boolean first = true;
+
+    /**
+     * @param factory the factory for generators that encode the sources
+     * @param output the stream to write the array elements to
+     * @param threads number of encoding threads
+     */
+    ParallelSourceEncoder(final JsonFactory factory, final OutputStream output, final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive, was " + threads);
+        }
+        this.factory = factory;
+        this.output = new BufferedOutputStream(output, OUTPUT_BUFFER_SIZE);
+        this.window = threads * WINDOW_PER_THREAD;
+        this.executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory("encoder"));
+    }
+
+    /**
+     * Submits a source for encoding. Blocks while writing the oldest encoded source if the window
+     * of pending sources is full.
+     */
+    void encode(final Source source) throws ProcessingException, IOException {
+        final Buffer buffer = acquire();
+        pending.add(executor.submit(new Callable<Buffer>() {
+            @Override
+            public Buffer call() throws IOException {
+                JsonGenerator generator = factory.createGenerator(buffer, JsonEncoding.UTF8);
+                JsonObjectWriter.writeSource(generator, source);
+                generator.close();
+                return buffer;
+            }
+        }));
+        while (pending.size() > window) {
+            writeNext();
+        }
+    }
+
+    /**
+     * Writes all submitted sources and flushes the output stream.
+     */
+    void flush() throws ProcessingException, IOException {
+        while (!pending.isEmpty()) {
+            writeNext();
+        }
+        output.flush();
+    }
+
+    void close() {
+        executor.shutdownNow();
+        for (Future<Buffer> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        pool.clear();
+    }
+
+    int getPooledBuffers() {
+        return pool.size();
+    }
+
+    private void writeNext() throws ProcessingException, IOException {
+        Future<Buffer> future = pending.removeFirst();
+        Buffer buffer;
+        try {
+            buffer = future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while encoding sources");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof JsonProcessingException) {
+                throw new ProcessingException(cause);
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        if (!first) {
+            output.write(',');
+        }
+        first = false;
+        buffer.writeTo(output);
+        release(buffer);
+    }
+
+    private Buffer acquire() {
+        Buffer buffer = pool.pollFirst();
+        return (buffer != null ? buffer : new Buffer());
+    }
+
+    private void release(final Buffer buffer) {
+        if (buffer.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+            buffer.reset();
+            pool.addFirst(buffer);
+        }
+    }
+
+    /**
+     * Growable byte buffer that is reused for encoding multiple sources.
+     */
+    private static final class Buffer extends OutputStream {
+
+        private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+        private int count;
+
+        @Override
+        public void write(final int b) {
+            ensureCapacity(count + 1);
+            bytes[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(final byte[] b, final int off, final int len) {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, bytes, count, len);
+            count += len;
+        }
+
+        void writeTo(final OutputStream out) throws IOException {
+            out.write(bytes, 0, count);
+        }
+
+        int capacity() {
+            return bytes.length;
+        }
+
+        void reset() {
+            count = 0;
+        }
+
+        private void ensureCapacity(final int capacity) {
+            if (capacity > bytes.length) {
+                byte[] grown = new byte[Math.max(capacity, bytes.length * 2)];
+                System.arraycopy(bytes, 0, grown, 0, count);
+                bytes = grown;
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that writes to a target stream and optionally to a tee stream. Closing flushes
+ * the target stream and closes the tee stream, so that the target stays open for its owner.
+ */
+final class TeeOutputStream extends OutputStream {
+
+    private final OutputStream target;
+    private final OutputStream tee;
+
+    TeeOutputStream(final OutputStream target, final OutputStream tee) {
+        this.target = target;
+        this.tee = tee;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        target.write(b);
+        if (tee != null) {
+            tee.write(b);
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        target.write(b, off, len);
+        if (tee != null) {
+            tee.write(b, off, len);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        target.flush();
+        if (tee != null) {
+            tee.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            target.flush();
+        } finally {
+            if (tee != null) {
+                tee.close();
+            }
+        }
+    }
+}
@@ -84,8 +84,8 @@ public class CoverageTracingLogger extends ChainingSourceCallback implements Log
             files++;
             lines += source.getCoverage().length;
         }
-        for (Integer coverage : source.getCoverage()) {
-            if (coverage != null) {
+        for (int coverage : source.getCoverage()) {
+            if (coverage != Source.NOT_RELEVANT) {
                 relevant++;
                 if (coverage > 0) {
                     covered++;
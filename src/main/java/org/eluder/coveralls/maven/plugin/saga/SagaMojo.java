@@ -34,7 +34,7 @@ import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 
-@Mojo(name = "saga", threadSafe = false)
+@Mojo(name = "saga", threadSafe = true)
 public class SagaMojo extends AbstractCoverallsMojo {
 
     /**
@@ -45,6 +45,6 @@ public class SagaMojo extends AbstractCoverallsMojo {
 
     @Override
     protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
-        return new SagaParser(coverageFile, sourceLoader);
+        return new SagaParser(coverageFile, sourceLoader, byteScanner);
     }
 }
@@ -28,13 +28,12 @@ package org.eluder.coveralls.maven.plugin.saga;
 
 import java.io.File;
 import java.io.IOException;
-import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.XMLStreamReader;
 
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.SourceCallback;
 import org.eluder.coveralls.maven.plugin.cobertura.CoberturaParser;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.XmlElement;
 
 /**
  * @author Jakub Bednář (25/12/2013 10:07)
@@ -42,16 +41,16 @@ import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 public class SagaParser extends CoberturaParser {
 
     public SagaParser(final File coverageFile, final SourceLoader sourceLoader) {
-        super(coverageFile, sourceLoader);
+        this(coverageFile, sourceLoader, false);
     }
 
-    @Override
-    protected void onEvent(final XMLStreamReader xml, final SourceCallback callback) throws XMLStreamException, ProcessingException, IOException {
-        if (isStartElement(xml, "class")) {
-            String filename = xml.getAttributeValue(null, "filename");
-            source = loadSource(filename);
-        } else {
-            super.onEvent(xml, callback);
-        }
+    public SagaParser(final File coverageFile, final SourceLoader sourceLoader, final boolean byteScanner) {
+        super(coverageFile, sourceLoader, byteScanner);
+        onStartElement("class", new StartElementHandler() {
+            @Override
+            public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException, IOException {
+                source = loadSource(element.getAttributeValue("filename"));
+            }
+        });
     }
 }
@@ -0,0 +1,119 @@
+package org.eluder.coveralls.maven.plugin.xml;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps element names to values. Names can be looked up either as strings or directly from the
+ * bytes of a document, so the byte scanner resolves an element with a single hash lookup without
+ * decoding its name.
+ *
+ * @param <T> the value type
+ */
+public final class NameTable<T> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final Map<String, T> values = new HashMap<String, T>();
+
+    private byte[][] keys = new byte[16][];
+    private Object[] entries = new Object[16];
+
+    public void put(final String name, final T value) {
+        if (values.size() * 2 >= keys.length) {
+            grow();
+        }
+        values.put(name, value);
+        insert(name.getBytes(UTF_8), value);
+    }
+
+    public T get(final String name) {
+        return values.get(name);
+    }
+
+    @SuppressWarnings("unchecked")
+    T get(final ByteBuffer buffer, final int start, final int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buffer.get(i);
+        }
+        int mask = keys.length - 1;
+        for (int slot = hash & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (equals(keys[slot], buffer, start, end)) {
+                return (T) entries[slot];
+            }
+        }
+        return null;
+    }
+
+    private void insert(final byte[] key, final Object value) {
+        int mask = keys.length - 1;
+        int slot = hash(key) & mask;
+        while (keys[slot] != null && !Arrays.equals(keys[slot], key)) {
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        entries[slot] = value;
+    }
+
+    private void grow() {
+        byte[][] oldKeys = keys;
+        Object[] oldEntries = entries;
+        keys = new byte[oldKeys.length * 2][];
+        entries = new Object[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                insert(oldKeys[i], oldEntries[i]);
+            }
+        }
+    }
+
+    private static int hash(final byte[] key) {
+        int hash = 0;
+        for (byte b : key) {
+            hash = 31 * hash + b;
+        }
+        return hash;
+    }
+
+    private static boolean equals(final byte[] key, final ByteBuffer buffer, final int start, final int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buffer.get(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,50 @@
+package org.eluder.coveralls.maven.plugin.xml;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+
+/**
+ * Attribute view of the current start element, independent of the underlying XML parser.
+ */
+public interface XmlElement {
+
+    /**
+     * @param name the attribute name
+     * @return the attribute value, or <code>null</code> if the attribute does not exist
+     * @throws ProcessingException if the attribute value is malformed
+     */
+    String getAttributeValue(String name) throws ProcessingException;
+
+    /**
+     * @param name the attribute name
+     * @return the attribute value as integer
+     * @throws ProcessingException if the attribute does not exist or is not a valid integer
+     */
+    int getIntAttributeValue(String name) throws ProcessingException;
+
+}
@@ -0,0 +1,767 @@
+package org.eluder.coveralls.maven.plugin.xml;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+import javax.xml.stream.XMLStreamConstants;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+
+/**
+ * Pull scanner for coverage XML reports that works directly on the bytes of the report. Element
+ * and attribute names are matched on bytes and integer attributes are parsed without creating
+ * strings. Only well-formed documents in an ASCII compatible encoding are supported, DTDs,
+ * comments, processing instructions and text content are skipped. Event types are the same as
+ * in {@link XMLStreamConstants}.
+ */
+public final class XmlScanner implements XmlElement {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int HEADER_LENGTH = 256;
+
+    private final ByteBuffer buffer;
+    private final int limit;
+    private final Charset charset;
+    private final File file;
+    private final int base;
+
+    private int position;
+    private int tagStart;
+    private int eventType = XMLStreamConstants.START_DOCUMENT;
+    private int depth;
+    private int nameStart;
+    private int nameEnd;
+    private boolean pendingEnd;
+    private int attributeCount;
+    private int[] attributes = new int[4 * 8];
+
+    /**
+     * @param buffer the bytes of the document from the current position to the limit
+     * @param charset the ASCII compatible document encoding
+     */
+    public XmlScanner(final ByteBuffer buffer, final Charset charset) {
+        this(buffer, charset, null, 0);
+    }
+
+    /**
+     * @param file the scanned file, reported in the errors
+     * @param base byte offset of the buffer position in the file
+     */
+    private XmlScanner(final ByteBuffer buffer, final Charset charset, final File file, final int base) {
+        this.buffer = buffer.slice();
+        this.limit = this.buffer.limit();
+        this.charset = charset;
+        this.file = file;
+        this.base = base;
+    }
+
+    /**
+     * Memory maps a file for scanning.
+     *
+     * @param file the XML file to scan
+     * @return scanner for the file
+     * @throws IOException if an I/O error occurs or the file is not supported
+     */
+    public static XmlScanner map(final File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File " + file.getAbsolutePath() + " is too large to be scanned");
+            }
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            Charset charset = detectCharset(mapped);
+            if (charset == null) {
+                throw new IOException("Encoding of " + file.getAbsolutePath() + " is not supported");
+            }
+            return new XmlScanner(mapped, charset, file, 0);
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * @param file the XML file to scan
+     * @return <code>true</code> if the file can be scanned, otherwise <code>false</code>
+     * @throws IOException if an I/O error occurs
+     */
+    public static boolean isSupported(final File file) throws IOException {
+        if (file.length() > Integer.MAX_VALUE) {
+            return false;
+        }
+        FileInputStream input = new FileInputStream(file);
+        try {
+            byte[] header = new byte[HEADER_LENGTH];
+            int read = 0;
+            int count;
+            while (read < header.length && (count = input.read(header, read, header.length - read)) > 0) {
+                read += count;
+            }
+            return detectCharset(ByteBuffer.wrap(header, 0, read)) != null;
+        } finally {
+            IOUtil.close(input);
+        }
+    }
+
+    /**
+     * Converts an element or attribute name to bytes for matching.
+     *
+     * @param name the name
+     * @return the name as bytes
+     */
+    public static byte[] name(final String name) {
+        return name.getBytes(UTF_8);
+    }
+
+    /**
+     * Creates a scanner for a region of this document, for example a range of complete elements
+     * found with {@link #getTagOffset()} and {@link #getOffset()}. The new scanner is independent
+     * of this scanner and can be used from another thread.
+     *
+     * @param start the start offset of the region, inclusive
+     * @param end the end offset of the region, exclusive
+     * @return scanner for the region
+     */
+    public XmlScanner region(final int start, final int end) {
+        if (start < 0 || end > limit || start > end) {
+            throw new IndexOutOfBoundsException("Invalid region " + start + "-" + end + " for " + limit + " bytes");
+        }
+        ByteBuffer region = buffer.duplicate();
+        region.limit(end);
+        region.position(start);
+        return new XmlScanner(region, charset, file, base + start);
+    }
+
+    /**
+     * @return byte offset of the <code>&lt;</code> that starts the tag of the current element
+     */
+    public int getTagOffset() {
+        return tagStart;
+    }
+
+    /**
+     * @return byte offset right after the last scanned tag
+     */
+    public int getOffset() {
+        return position;
+    }
+
+    /**
+     * @return length of the document in bytes
+     */
+    public int getLength() {
+        return limit;
+    }
+
+    public boolean hasNext() {
+        return eventType != XMLStreamConstants.END_DOCUMENT;
+    }
+
+    public int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * Moves to the next start element, end element or the end of document.
+     *
+     * @return the event type
+     * @throws ProcessingException if the document is not well-formed
+     */
+    public int next() throws ProcessingException {
+        if (pendingEnd) {
+            pendingEnd = false;
+            attributeCount = 0;
+            depth--;
+            eventType = XMLStreamConstants.END_ELEMENT;
+            return eventType;
+        }
+        while (true) {
+            int start = indexOf((byte) '<', position);
+            if (start < 0) {
+                position = limit;
+                attributeCount = 0;
+                eventType = XMLStreamConstants.END_DOCUMENT;
+                return eventType;
+            }
+            position = start + 1;
+            tagStart = start;
+            byte type = byteAt(position);
+            if (type == '/') {
+                parseEndTag();
+                return eventType;
+            } else if (type == '?') {
+                position = skipPast("?>", position);
+            } else if (type == '!') {
+                position = skipMarkup(position);
+            } else {
+                parseStartTag();
+                return eventType;
+            }
+        }
+    }
+
+    /**
+     * Skips the subtree of the current start element. After skipping, the current event is the
+     * end of the skipped element. Attributes are not parsed for the skipped elements.
+     *
+     * @throws ProcessingException if the document is not well-formed
+     */
+    public void skipElement() throws ProcessingException {
+        if (eventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start element");
+        }
+        if (pendingEnd) {
+            next();
+            return;
+        }
+        int target = depth - 1;
+        while (true) {
+            int start = indexOf((byte) '<', position);
+            if (start < 0) {
+                throw malformed("Unexpected end of document", limit);
+            }
+            position = start + 1;
+            tagStart = start;
+            byte type = byteAt(position);
+            if (type == '/') {
+                parseEndTag();
+                if (depth == target) {
+                    return;
+                }
+            } else if (type == '?') {
+                position = skipPast("?>", position);
+            } else if (type == '!') {
+                position = skipMarkup(position);
+            } else {
+                int end = skipTag(position);
+                if (byteAt(end - 2) != '/') {
+                    depth++;
+                }
+                position = end;
+            }
+        }
+    }
+
+    /**
+     * Skips the current start element by searching for its end tag, without scanning the tags in
+     * between. Faster than {@link #skipElement()}, but only correct for elements that can not
+     * contain elements with the same name, or the end tag inside attribute values, comments or CDATA sections.
+     *
+     * @throws ProcessingException if the end tag is not found
+     */
+    public void skipToEndElement() throws ProcessingException {
+        if (eventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start element");
+        }
+        if (pendingEnd) {
+            next();
+            return;
+        }
+        int from = position;
+        while (true) {
+            int start = indexOf((byte) '<', from);
+            if (start < 0) {
+                throw malformed("Unexpected end of document", limit);
+            }
+            if (byteAt(start + 1) == '/' && isEndTagOfCurrent(start + 2)) {
+                position = start + 1;
+                tagStart = start;
+                parseEndTag();
+                return;
+            }
+            from = start + 1;
+        }
+    }
+
+    public boolean isStartElement(final byte[] name) {
+        return eventType == XMLStreamConstants.START_ELEMENT && matches(nameStart, nameEnd, name);
+    }
+
+    public boolean isEndElement(final byte[] name) {
+        return eventType == XMLStreamConstants.END_ELEMENT && matches(nameStart, nameEnd, name);
+    }
+
+    /**
+     * Looks up the value mapped to the name of the current element without decoding the name.
+     *
+     * @param table the table to look up from
+     * @return the mapped value or <code>null</code> if the name is not mapped
+     */
+    public <T> T lookup(final NameTable<T> table) {
+        if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+            throw new IllegalStateException("Current event is not an element");
+        }
+        return table.get(buffer, nameStart, nameEnd);
+    }
+
+    /**
+     * @return the name of the current element
+     */
+    public String getLocalName() {
+        if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+            throw new IllegalStateException("Current event is not an element");
+        }
+        return decode(nameStart, nameEnd);
+    }
+
+    /**
+     * @param name the attribute name
+     * @return the attribute value of the current start element, or <code>null</code> if the
+     *         attribute does not exist
+     */
+    @Override
+    public String getAttributeValue(final String name) throws ProcessingException {
+        return getAttributeValue(indexOfAttribute(name));
+    }
+
+    public String getAttributeValue(final byte[] name) throws ProcessingException {
+        return getAttributeValue(indexOfAttribute(name));
+    }
+
+    private String getAttributeValue(final int index) throws ProcessingException {
+        if (index < 0) {
+            return null;
+        }
+        String value = decode(attributes[index + 2], attributes[index + 3]);
+        return (value.indexOf('&') < 0 ? value : unescape(value, attributes[index + 2]));
+    }
+
+    /**
+     * Parses an integer attribute of the current start element without creating strings.
+     *
+     * @param name the attribute name
+     * @return the attribute value
+     * @throws ProcessingException if the attribute does not exist or is not a valid integer
+     */
+    @Override
+    public int getIntAttributeValue(final String name) throws ProcessingException {
+        return getIntAttributeValue(indexOfAttribute(name), name, null);
+    }
+
+    public int getIntAttributeValue(final byte[] name) throws ProcessingException {
+        return getIntAttributeValue(indexOfAttribute(name), null, name);
+    }
+
+    private int getIntAttributeValue(final int index, final String stringName, final byte[] byteName) throws ProcessingException {
+        if (index < 0) {
+            throw malformed("Missing attribute " + attributeName(stringName, byteName), nameStart);
+        }
+        int start = skipWhitespace(attributes[index + 2], attributes[index + 3]);
+        int end = attributes[index + 3];
+        while (end > start && isWhitespace(byteAt(end - 1))) {
+            end--;
+        }
+        boolean negative = false;
+        if (start < end && (byteAt(start) == '-' || byteAt(start) == '+')) {
+            negative = (byteAt(start) == '-');
+            start++;
+        }
+        if (start == end) {
+            throw malformed("Invalid integer value for attribute " + attributeName(stringName, byteName), start);
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = byteAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw malformed("Invalid integer value for attribute " + attributeName(stringName, byteName), i);
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw malformed("Integer value out of range for attribute " + attributeName(stringName, byteName), start);
+            }
+        }
+        value = (negative ? -value : value);
+        if (value > Integer.MAX_VALUE) {
+            throw malformed("Integer value out of range for attribute " + attributeName(stringName, byteName), start);
+        }
+        return (int) value;
+    }
+
+    private static String attributeName(final String stringName, final byte[] byteName) {
+        return (stringName != null ? stringName : new String(byteName, UTF_8));
+    }
+
+    private void parseStartTag() throws ProcessingException {
+        nameStart = position;
+        nameEnd = scanName(position);
+        if (nameEnd == nameStart) {
+            throw malformed("Invalid element name", position);
+        }
+        attributeCount = 0;
+        int i = nameEnd;
+        while (true) {
+            i = skipWhitespace(i, limit);
+            byte c = byteAt(i);
+            if (c == '>') {
+                position = i + 1;
+                break;
+            }
+            if (c == '/') {
+                if (byteAt(i + 1) != '>') {
+                    throw malformed("Invalid start tag", i);
+                }
+                position = i + 2;
+                pendingEnd = true;
+                break;
+            }
+            int attributeStart = i;
+            int attributeEnd = scanName(i);
+            if (attributeEnd == attributeStart) {
+                throw malformed("Invalid attribute name", i);
+            }
+            i = skipWhitespace(attributeEnd, limit);
+            if (byteAt(i) != '=') {
+                throw malformed("Missing attribute value", i);
+            }
+            i = skipWhitespace(i + 1, limit);
+            byte quote = byteAt(i);
+            if (quote != '"' && quote != '\'') {
+                throw malformed("Unquoted attribute value", i);
+            }
+            int valueEnd = indexOf(quote, i + 1);
+            if (valueEnd < 0) {
+                throw malformed("Unterminated attribute value", i);
+            }
+            addAttribute(attributeStart, attributeEnd, i + 1, valueEnd);
+            i = valueEnd + 1;
+        }
+        depth++;
+        eventType = XMLStreamConstants.START_ELEMENT;
+    }
+
+    private void parseEndTag() throws ProcessingException {
+        nameStart = position + 1;
+        nameEnd = scanName(nameStart);
+        int end = skipWhitespace(nameEnd, limit);
+        if (nameEnd == nameStart || byteAt(end) != '>') {
+            throw malformed("Invalid end tag", position);
+        }
+        position = end + 1;
+        attributeCount = 0;
+        depth--;
+        eventType = XMLStreamConstants.END_ELEMENT;
+    }
+
+    private int skipTag(final int from) throws ProcessingException {
+        int i = from;
+        while (i < limit) {
+            byte c = buffer.get(i);
+            if (c == '>') {
+                return i + 1;
+            }
+            if (c == '"' || c == '\'') {
+                int end = indexOf(c, i + 1);
+                if (end < 0) {
+                    throw malformed("Unterminated attribute value", i);
+                }
+                i = end;
+            }
+            i++;
+        }
+        throw malformed("Unexpected end of document", limit);
+    }
+
+    private int skipMarkup(final int from) throws ProcessingException {
+        if (startsWith("!--", from)) {
+            return skipPast("-->", from + 3);
+        }
+        if (startsWith("![CDATA[", from)) {
+            return skipPast("]]>", from + 8);
+        }
+        // document type declaration with possible internal subset
+        int brackets = 0;
+        int i = from;
+        while (i < limit) {
+            byte c = buffer.get(i);
+            if (c == '[') {
+                brackets++;
+            } else if (c == ']') {
+                brackets--;
+            } else if (c == '"' || c == '\'') {
+                int end = indexOf(c, i + 1);
+                if (end < 0) {
+                    break;
+                }
+                i = end;
+            } else if (c == '>' && brackets <= 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        throw malformed("Unexpected end of document", limit);
+    }
+
+    private int skipPast(final String terminator, final int from) throws ProcessingException {
+        byte first = (byte) terminator.charAt(0);
+        int i = from;
+        while ((i = indexOf(first, i)) >= 0) {
+            if (startsWith(terminator, i)) {
+                return i + terminator.length();
+            }
+            i++;
+        }
+        throw malformed("Unexpected end of document", limit);
+    }
+
+    private boolean startsWith(final String prefix, final int from) {
+        if (from + prefix.length() > limit) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(from + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int scanName(final int from) {
+        int i = from;
+        while (i < limit) {
+            byte c = buffer.get(i);
+            if (isWhitespace(c) || c == '>' || c == '/' || c == '=') {
+                break;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private int skipWhitespace(final int from, final int to) {
+        int i = from;
+        while (i < to && isWhitespace(buffer.get(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    private int indexOf(final byte value, final int from) {
+        for (int i = from; i < limit; i++) {
+            if (buffer.get(i) == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private byte byteAt(final int index) throws ProcessingException {
+        if (index >= limit) {
+            throw malformed("Unexpected end of document", limit);
+        }
+        return buffer.get(index);
+    }
+
+    private void addAttribute(final int start, final int end, final int valueStart, final int valueEnd) {
+        int offset = attributeCount * 4;
+        if (offset + 4 > attributes.length) {
+            int[] grown = new int[attributes.length * 2];
+            System.arraycopy(attributes, 0, grown, 0, attributes.length);
+            attributes = grown;
+        }
+        attributes[offset] = start;
+        attributes[offset + 1] = end;
+        attributes[offset + 2] = valueStart;
+        attributes[offset + 3] = valueEnd;
+        attributeCount++;
+    }
+
+    private int indexOfAttribute(final byte[] name) {
+        if (eventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start element");
+        }
+        for (int i = 0; i < attributeCount * 4; i += 4) {
+            if (matches(attributes[i], attributes[i + 1], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int indexOfAttribute(final String name) {
+        if (eventType != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Current event is not a start element");
+        }
+        for (int i = 0; i < attributeCount * 4; i += 4) {
+            if (matches(attributes[i], attributes[i + 1], name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(final int start, final int end, final String name) {
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) > 0x7F) {
+                return matches(start, end, name(name));
+            }
+        }
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (buffer.get(start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isEndTagOfCurrent(final int from) throws ProcessingException {
+        int length = nameEnd - nameStart;
+        for (int i = 0; i < length; i++) {
+            if (byteAt(from + i) != buffer.get(nameStart + i)) {
+                return false;
+            }
+        }
+        byte next = byteAt(from + length);
+        return (next == '>' || isWhitespace(next));
+    }
+
+    private boolean matches(final int start, final int end, final byte[] name) {
+        if (end - start != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(start + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String decode(final int start, final int end) {
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(start + i);
+        }
+        return new String(bytes, charset);
+    }
+
+    private ProcessingException malformed(final String message, final int offset) {
+        String location = " at byte offset " + (base + offset);
+        if (file != null) {
+            location += " of " + file.getAbsolutePath();
+        }
+        return new ProcessingException(message + location);
+    }
+
+    private static boolean isWhitespace(final byte c) {
+        return (c == ' ' || c == '\n' || c == '\r' || c == '\t');
+    }
+
+    private String unescape(final String value, final int offset) throws ProcessingException {
+        StringBuilder unescaped = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int end = (c == '&' ? value.indexOf(';', i) : -1);
+            if (end < 0) {
+                unescaped.append(c);
+                i++;
+                continue;
+            }
+            String entity = value.substring(i + 1, end);
+            if ("lt".equals(entity)) {
+                unescaped.append('<');
+            } else if ("gt".equals(entity)) {
+                unescaped.append('>');
+            } else if ("amp".equals(entity)) {
+                unescaped.append('&');
+            } else if ("quot".equals(entity)) {
+                unescaped.append('"');
+            } else if ("apos".equals(entity)) {
+                unescaped.append('\'');
+            } else if (entity.startsWith("#")) {
+                try {
+                    boolean hex = entity.startsWith("#x");
+                    unescaped.appendCodePoint(Integer.parseInt(entity.substring(hex ? 2 : 1), hex ? 16 : 10));
+                } catch (IllegalArgumentException ex) {
+                    // also thrown for invalid numbers
+                    throw malformed("Invalid character reference &" + entity + ";", offset);
+                }
+            } else {
+                unescaped.append(value, i, end + 1);
+            }
+            i = end + 1;
+        }
+        return unescaped.toString();
+    }
+
+    /**
+     * Detects the document encoding from the byte order mark and the XML declaration.
+     *
+     * @return the encoding or <code>null</code> if the encoding is not ASCII compatible
+     */
+    private static Charset detectCharset(final ByteBuffer header) {
+        int length = Math.min(header.limit(), HEADER_LENGTH);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = header.get(i);
+        }
+        if (length >= 2 && (bytes[0] == 0 || bytes[1] == 0 || (bytes[0] & 0xFF) == 0xFE || (bytes[0] & 0xFF) == 0xFF)) {
+            return null;
+        }
+        String prolog = new String(bytes, 0, length, Charset.forName("ISO-8859-1"));
+        int declarationEnd = prolog.indexOf("?>");
+        if ((!prolog.startsWith("<?xml") && !prolog.startsWith("\u00ef\u00bb\u00bf<?xml")) || declarationEnd < 0) {
+            return UTF_8;
+        }
+        String declaration = prolog.substring(0, declarationEnd);
+        int encoding = declaration.indexOf("encoding");
+        if (encoding < 0) {
+            return UTF_8;
+        }
+        int quote = encoding + "encoding".length();
+        while (quote < declaration.length() && declaration.charAt(quote) != '"' && declaration.charAt(quote) != '\'') {
+            quote++;
+        }
+        int end = (quote < declaration.length() ? declaration.indexOf(declaration.charAt(quote), quote + 1) : -1);
+        if (end < 0) {
+            return null;
+        }
+        String name = declaration.substring(quote + 1, end).trim().toUpperCase(Locale.ENGLISH);
+        if (!(name.equals("UTF-8") || name.equals("US-ASCII") || name.equals("ASCII")
+                || name.startsWith("ISO-8859-") || name.startsWith("WINDOWS-125"))) {
+            return null;
+        }
+        try {
+            return Charset.forName(name);
+        } catch (IllegalArgumentException ex) {
+            return null;
+        }
+    }
+}
@@ -26,7 +26,7 @@ package org.eluder.coveralls.maven.plugin;
  * %[license]
  */
 
-import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.atLeast;
@@ -115,7 +115,7 @@ public abstract class AbstractCoverageParserTest {
                 combined.put(source.getName(), source);
             } else {
                 for (int i = 0; i < source.getCoverage().length; i++) {
-                    if (source.getCoverage()[i] != null) {
+                    if (source.getCoverage()[i] != Source.NOT_RELEVANT) {
                         existing.addCoverage(i + 1, source.getCoverage()[i]);
                     }
                 }
@@ -158,7 +158,7 @@ public abstract class AbstractCoverageParserTest {
             } else if (missedLines.contains(lineNumber)) {
                 assertTrue(tested.getCoverage()[i] == 0);
             } else {
-                assertNull(tested.getCoverage()[i]);
+                assertEquals(Source.NOT_RELEVANT, tested.getCoverage()[i]);
             }
         }
 
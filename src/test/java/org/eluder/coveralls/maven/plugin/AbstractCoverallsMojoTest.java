@@ -29,25 +29,44 @@ package org.eluder.coveralls.maven.plugin;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
 import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
 import org.eluder.coveralls.maven.plugin.domain.Job;
 import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceCache;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 import org.eluder.coveralls.maven.plugin.httpclient.CoverallsClient;
+import org.eluder.coveralls.maven.plugin.httpclient.StreamingSubmission;
 import org.eluder.coveralls.maven.plugin.json.JsonWriter;
 import org.eluder.coveralls.maven.plugin.service.ServiceSetup;
 import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
@@ -62,6 +81,8 @@ import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.mockito.stubbing.Answer;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 @RunWith(MockitoJUnitRunner.class)
 public abstract class AbstractCoverallsMojoTest {
     
@@ -135,6 +156,7 @@ public abstract class AbstractCoverallsMojoTest {
             }
         };
         mojo.project = projectMock;
+        mojo.mergeHits = "max";
         
         List<MavenProject> projects = new ArrayList<MavenProject>();
         projects.add(collectedProjectMock);
@@ -154,6 +176,7 @@ public abstract class AbstractCoverallsMojoTest {
         };
         mojo.sourceDirectories = Arrays.asList(TestIoUtil.getFile("/"));
         mojo.sourceEncoding = "UTF-8";
+        mojo.mergeHits = "max";
         mojo.project = projectMock;
         mojo.repoToken = "asdfg";
         mojo.coverallsFile = folder.newFile();
@@ -165,6 +188,42 @@ public abstract class AbstractCoverallsMojoTest {
         mojo.execute();
     }
     
+    @Test
+    public void testConcurrentExecutions() throws Exception {
+        when(projectMock.getBasedir()).thenReturn(TestIoUtil.getFile("/"));
+        File sourceDirectory = folder.newFolder();
+        for (String[] coverageFile : getCoverageFixture()) {
+            FileUtils.copyFile(TestIoUtil.getFile(coverageFile[0]), new File(sourceDirectory, getSourcePath(coverageFile[0])));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final CountDownLatch start = new CountDownLatch(1);
+            List<Future<File>> results = new ArrayList<Future<File>>();
+            for (int i = 0; i < 24; i++) {
+                final AbstractCoverallsMojo concurrent = createConcurrentMojo(sourceDirectory, folder.newFile());
+                results.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws Exception {
+                        start.await();
+                        concurrent.execute();
+                        return concurrent.coverallsFile;
+                    }
+                }));
+            }
+            start.countDown();
+            String expected = TestIoUtil.readFileContent(results.get(0).get());
+            for (String[] coverageFile : getCoverageFixture()) {
+                assertThat(expected, containsString(coverageFile[0]));
+            }
+            for (Future<File> result : results) {
+                assertEquals(expected, TestIoUtil.readFileContent(result.get()));
+            }
+        } finally {
+            executor.shutdownNow();
+            SourceCache.getShared().setMaxBytes(0);
+        }
+    }
+
     @Test
     public void testSuccesfullSubmission() throws Exception {
         when(coverallsClientMock.submit(any(File.class))).thenReturn(new CoverallsResponse("success", false, null));
@@ -180,6 +239,113 @@ public abstract class AbstractCoverallsMojoTest {
         verifySuccessfullSubmit(logMock, fixture);
     }
 
+    @Test
+    public void testEagerParsing() throws Exception {
+        when(coverallsClientMock.submit(any(File.class))).thenReturn(new CoverallsResponse("success", false, null));
+        mojo.eagerParseWindow = 1;
+        mojo.execute();
+        String json = TestIoUtil.readFileContent(coverallsFile);
+        for (String[] coverageFile : getCoverageFixture()) {
+            assertThat(json, containsString(coverageFile[0]));
+        }
+        verifySuccessfullSubmit(logMock, getCoverageFixture());
+    }
+
+    @Test
+    public void testStreamingSubmission() throws Exception {
+        final List<String> bodies = new ArrayList<String>();
+        HttpClient httpClientMock = mock(HttpClient.class);
+        final HttpResponse httpResponseMock = mock(HttpResponse.class);
+        HttpEntity httpEntityMock = mock(HttpEntity.class);
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                ((HttpPost) invocation.getArguments()[0]).getEntity().writeTo(body);
+                bodies.add(new String(body.toByteArray(), "UTF-8"));
+                return httpResponseMock;
+            }
+        });
+        when(httpResponseMock.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(new ByteArrayInputStream("{\"message\":\"success\",\"error\":false}".getBytes("UTF-8")));
+        StreamingSubmission submission = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper()).submitStreaming();
+        when(coverallsClientMock.submitStreaming()).thenReturn(submission);
+        mojo.streamSubmission = true;
+        mojo.streamSubmissionTee = true;
+        mojo.coverallsFile = coverallsFile;
+        mojo.execute();
+        
+        String json = TestIoUtil.readFileContent(coverallsFile);
+        assertEquals(1, bodies.size());
+        assertThat(bodies.get(0), containsString(json));
+        String[][] fixture = getCoverageFixture();
+        for (String[] coverageFile : fixture) {
+            assertThat(json, containsString(coverageFile[0]));
+        }
+        verify(coverallsClientMock, never()).submit(any(File.class));
+        verifySuccessfullSubmit(logMock, fixture);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testParallelJobs() throws Exception {
+        when(jobMock.getRepoToken()).thenReturn("token");
+        when(jobMock.getServiceBuildNumber()).thenReturn("build5");
+        when(coverallsClientMock.submitParallel(anyListOf(File.class), eq(3))).then(new Answer<List<CoverallsResponse>>() {
+            @Override
+            public List<CoverallsResponse> answer(final InvocationOnMock invocation) throws Throwable {
+                List<CoverallsResponse> responses = new ArrayList<CoverallsResponse>();
+                for (File partition : (List<File>) invocation.getArguments()[0]) {
+                    assertTrue(partition.exists());
+                    responses.add(new CoverallsResponse("Job #5." + (responses.size() + 1), false, null));
+                }
+                return responses;
+            }
+        });
+        when(coverallsClientMock.completeParallelBuild("https://coveralls.io/webhook", "token", "build5")).thenReturn(new CoverallsResponse("success", false, null));
+        mojo.parallelJobs = 2;
+        mojo.parallelJobConcurrency = 3;
+        mojo.coverallsWebhookUrl = "https://coveralls.io/webhook";
+        mojo.streamSubmission = true;
+        mojo.execute();
+
+        verify(coverallsClientMock, never()).submit(any(File.class));
+        verify(coverallsClientMock, never()).submitStreaming();
+        verify(coverallsClientMock).submitParallel(anyListOf(File.class), eq(3));
+        verify(coverallsClientMock).completeParallelBuild("https://coveralls.io/webhook", "token", "build5");
+        verify(logMock).info("  .. submitted " + coverallsFile.getName().replace(".tmp", "-2.tmp") + " for Job #5.2");
+        verifySuccessfullSubmit(logMock, getCoverageFixture());
+    }
+
+    @Test(expected = MojoFailureException.class)
+    public void testParallelJobsWithoutBuildNumber() throws Exception {
+        mojo.parallelJobs = 2;
+        mojo.execute();
+    }
+
+    @Test
+    public void testSourceLoaderIsClosedWhenJobFails() throws Exception {
+        mojo.parallelJobs = 2;
+        try {
+            mojo.execute();
+            fail("Should have failed with MojoFailureException");
+        } catch (MojoFailureException ex) {
+            verify(sourceLoaderMock).close();
+        }
+    }
+
+    @Test
+    public void testSourceLoaderIsClosedWhenValidationFails() throws Exception {
+        when(jobMock.validate()).thenThrow(new IllegalStateException());
+        try {
+            mojo.execute();
+            fail("Should have failed with MojoExecutionException");
+        } catch (MojoExecutionException ex) {
+            verify(sourceLoaderMock).close();
+        }
+    }
+
     @Test(expected = MojoFailureException.class)
     public void testFailedSubmission() throws Exception {
         when(coverallsClientMock.submit(any(File.class))).thenThrow(ProcessingException.class);
@@ -219,6 +385,19 @@ public abstract class AbstractCoverallsMojoTest {
         }
     }
     
+    @Test
+    public void testInvalidMergeHits() throws Exception {
+        mojo.mergeHits = "maximum";
+        try {
+            mojo.execute();
+            fail("Should have failed with MojoExecutionException");
+        } catch (MojoExecutionException ex) {
+            assertThat(ex.getMessage(), containsString("maximum"));
+            assertThat(ex.getMessage(), containsString("max and sum"));
+        }
+        verifyZeroInteractions(jobMock);
+    }
+
     @Test
     public void testSkipExecution() throws Exception {
         mojo.skip = true;
@@ -227,6 +406,34 @@ public abstract class AbstractCoverallsMojoTest {
         verifyZeroInteractions(jobMock);
     }
     
+    private AbstractCoverallsMojo createConcurrentMojo(final File sourceDirectory, final File file) {
+        AbstractCoverallsMojo concurrent = new AbstractCoverallsMojo() {
+            @Override
+            protected CoverageParser createCoverageParser(final SourceLoader sourceLoader) {
+                return createMojo().createCoverageParser(sourceLoader);
+            }
+            @Override
+            protected Environment createEnvironment() {
+                return new Environment(this, Collections.<ServiceSetup>emptyList());
+            }
+            @Override
+            public Log getLog() {
+                return logMock;
+            }
+        };
+        concurrent.sourceDirectories = Arrays.asList(sourceDirectory);
+        concurrent.sourceEncoding = "UTF-8";
+        concurrent.mergeHits = "max";
+        concurrent.sourceCacheSize = 1024 * 1024;
+        concurrent.encodingThreads = 2;
+        concurrent.eagerParseWindow = 4;
+        concurrent.project = projectMock;
+        concurrent.repoToken = "asdfg";
+        concurrent.coverallsFile = file;
+        concurrent.dryRun = true;
+        return concurrent;
+    }
+
     protected abstract AbstractCoverallsMojo createMojo();
 
     protected abstract String[][] getCoverageFixture();
@@ -236,6 +443,14 @@ public abstract class AbstractCoverallsMojoTest {
         verify(logMock).info("*** It might take hours for Coveralls to update the actual coverage numbers for a job");
     }
 
+    /**
+     * @param sourceFile the source file of the coverage fixture
+     * @return path of the source file relative to the source directory, as found from the report
+     */
+    protected String getSourcePath(final String sourceFile) {
+        return sourceFile;
+    }
+
     protected String readFileContent(final String sourceFile) throws IOException {
         return TestIoUtil.readFileContent(TestIoUtil.getFile(sourceFile));
     }
@@ -0,0 +1,143 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.xml.XmlElement;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+@RunWith(Parameterized.class)
+public class AbstractXmlEventParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final boolean byteScanner;
+
+    public AbstractXmlEventParserTest(final boolean byteScanner) {
+        this.byteScanner = byteScanner;
+    }
+
+    @Parameters
+    public static List<Object[]> parameters() {
+        return Arrays.asList(new Object[] { false }, new Object[] { true });
+    }
+
+    @Test
+    public void testDispatchAndSkip() throws Exception {
+        File file = write("<?xml version=\"1.0\"?><report><a id=\"1\"><skipped><a id=\"2\"/></skipped><b/></a><a id=\"3\"></a></report>");
+        RecordingParser parser = new RecordingParser(file, byteScanner);
+        parser.parse(null);
+        assertEquals(Arrays.asList("start a 1", "end b", "end a", "start a 3", "end a"), parser.events);
+    }
+
+    @Test
+    public void testReplaceHandler() throws Exception {
+        File file = write("<report><a id=\"1\"/></report>");
+        RecordingParser parser = new RecordingParser(file, byteScanner);
+        parser.replaceStartHandler();
+        parser.parse(null);
+        assertEquals(Arrays.asList("replaced 1", "end a"), parser.events);
+    }
+
+    @Test
+    public void testInvalidIntAttribute() throws Exception {
+        File file = write("<report><a id=\"x\"/></report>");
+        try {
+            new RecordingParser(file, byteScanner).parse(null);
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertThat(ex.getMessage(), containsString("id"));
+        }
+    }
+
+    private File write(final String content) throws IOException {
+        File file = folder.newFile();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(output);
+        }
+        return file;
+    }
+
+    private static class RecordingParser extends AbstractXmlEventParser {
+
+        private final List<String> events = new ArrayList<String>();
+
+        RecordingParser(final File coverageFile, final boolean byteScanner) {
+            super(coverageFile, new SourceLoader(Arrays.asList(coverageFile.getParentFile()), "UTF-8"), byteScanner);
+            skipElement("skipped");
+            onStartElement("a", new StartElementHandler() {
+                @Override
+                public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException {
+                    events.add("start a " + element.getIntAttributeValue("id"));
+                }
+            });
+            onEndElement("a", new EndElementHandler() {
+                @Override
+                public void onEnd(final SourceCallback callback) {
+                    events.add("end a");
+                }
+            });
+            onEndElement("b", new EndElementHandler() {
+                @Override
+                public void onEnd(final SourceCallback callback) {
+                    events.add("end b");
+                }
+            });
+        }
+
+        void replaceStartHandler() {
+            onStartElement("a", new StartElementHandler() {
+                @Override
+                public void onStart(final XmlElement element, final SourceCallback callback) throws ProcessingException {
+                    events.add("replaced " + element.getAttributeValue("id"));
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.junit.Test;
+
+public class ConcurrentCoverageParserTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingParsers() {
+        new ConcurrentCoverageParser(null, null, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQueueSize() {
+        new ConcurrentCoverageParser(null, Collections.<CoverageParser>emptyList(), 2, 0);
+    }
+
+    @Test
+    public void testGetCoverageFile() {
+        File file = new File("coverage.xml");
+        assertSame(file, new ConcurrentCoverageParser(file, Collections.<CoverageParser>emptyList(), 2).getCoverageFile());
+    }
+
+    @Test
+    public void testParseSequentially() throws Exception {
+        List<String> names = parse(1, 1, parsers(3, 5));
+        assertEquals(expectedNames(3, 5), names);
+    }
+
+    @Test
+    public void testParseConcurrentlyInOrder() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            List<String> names = parse(4, 2, parsers(12, 20));
+            assertEquals(expectedNames(12, 20), names);
+        }
+    }
+
+    @Test
+    public void testParseWithMoreThreadsThanParsers() throws Exception {
+        List<String> names = parse(16, 1, parsers(3, 3));
+        assertEquals(expectedNames(3, 3), names);
+    }
+
+    @Test
+    public void testProcessingExceptionIsReportedWithCoverageFile() throws Exception {
+        List<CoverageParser> parsers = parsers(3, 4);
+        parsers.set(1, new FailingParser(new File("failing.xml"), new ProcessingException("broken")));
+        List<String> names = new ArrayList<String>();
+        try {
+            new ConcurrentCoverageParser(null, parsers, 3, 1).parse(new CollectingCallback(names));
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertThat(ex.getMessage(), containsString("failing.xml"));
+            assertEquals("broken", ex.getCause().getMessage());
+        }
+        assertEquals(expectedNames(1, 4), names);
+    }
+
+    @Test
+    public void testIOExceptionIsReportedWithCoverageFile() throws Exception {
+        List<CoverageParser> parsers = parsers(2, 4);
+        parsers.add(new FailingParser(new File("failing.xml"), new IOException("broken")));
+        try {
+            parse(2, 1, parsers);
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertThat(ex.getMessage(), containsString("failing.xml"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRuntimeExceptionIsPropagated() throws Exception {
+        List<CoverageParser> parsers = parsers(2, 4);
+        parsers.add(0, new FailingParser(new File("failing.xml"), new IllegalArgumentException("broken")));
+        parse(2, 1, parsers);
+    }
+
+    @Test
+    public void testCallbackFailureStopsParsing() throws Exception {
+        List<String> names = new ArrayList<String>();
+        try {
+            new ConcurrentCoverageParser(null, parsers(8, 100), 4, 1).parse(new CollectingCallback(names) {
+                @Override
+                public void onSource(final Source source) throws ProcessingException, IOException {
+                    super.onSource(source);
+                    if (names.size() == 10) {
+                        throw new ProcessingException("callback failed");
+                    }
+                }
+            });
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertEquals("callback failed", ex.getMessage());
+        }
+        assertEquals(10, names.size());
+    }
+
+    private static List<String> parse(final int parallelism, final int queueSize, final List<CoverageParser> parsers) throws Exception {
+        List<String> names = new ArrayList<String>();
+        new ConcurrentCoverageParser(null, parsers, parallelism, queueSize).parse(new CollectingCallback(names));
+        return names;
+    }
+
+    private static List<CoverageParser> parsers(final int parsers, final int sources) {
+        List<CoverageParser> list = new ArrayList<CoverageParser>();
+        for (int i = 0; i < parsers; i++) {
+            list.add(new SourceProducingParser("report" + i, sources));
+        }
+        return list;
+    }
+
+    private static List<String> expectedNames(final int parsers, final int sources) {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < parsers; i++) {
+            for (int j = 0; j < sources; j++) {
+                names.add("report" + i + "/Source" + j + ".java");
+            }
+        }
+        return names;
+    }
+
+    private static class CollectingCallback implements SourceCallback {
+
+        protected final List<String> names;
+
+        CollectingCallback(final List<String> names) {
+            this.names = names;
+        }
+
+        @Override
+        public void onSource(final Source source) throws ProcessingException, IOException {
+            names.add(source.getName());
+        }
+    }
+
+    private static class SourceProducingParser implements CoverageParser {
+
+        private final String report;
+        private final int sources;
+
+        SourceProducingParser(final String report, final int sources) {
+            this.report = report;
+            this.sources = sources;
+        }
+
+        @Override
+        public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+            for (int i = 0; i < sources; i++) {
+                if (i % 7 == 0) {
+                    Thread.yield();
+                }
+                callback.onSource(new Source(report + "/Source" + i + ".java", Arrays.toString(new int[i])));
+            }
+        }
+
+        @Override
+        public File getCoverageFile() {
+            return new File(report + ".xml");
+        }
+    }
+
+    private static class FailingParser implements CoverageParser {
+
+        private final File coverageFile;
+        private final Exception failure;
+
+        FailingParser(final File coverageFile, final Exception failure) {
+            this.coverageFile = coverageFile;
+            this.failure = failure;
+        }
+
+        @Override
+        public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+            if (failure instanceof ProcessingException) {
+                throw (ProcessingException) failure;
+            }
+            if (failure instanceof IOException) {
+                throw (IOException) failure;
+            }
+            throw (RuntimeException) failure;
+        }
+
+        @Override
+        public File getCoverageFile() {
+            return coverageFile;
+        }
+    }
+}
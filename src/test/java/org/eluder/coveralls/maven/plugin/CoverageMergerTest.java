@@ -0,0 +1,340 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.codehaus.plexus.util.IOUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class CoverageMergerTest {
+
+    private static final int LINES = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Mock
+    private SourceLoader sourceLoaderMock;
+
+    private final List<Source> sources = new ArrayList<Source>();
+
+    private final SourceCallback collector = new SourceCallback() {
+        @Override
+        public void onSource(final Source source) {
+            sources.add(source);
+        }
+    };
+
+    @Before
+    public void init() throws Exception {
+        when(sourceLoaderMock.load(anyString())).then(new Answer<Source>() {
+            @Override
+            public Source answer(final InvocationOnMock invocation) throws Throwable {
+                return source(invocation.getArguments()[0].toString());
+            }
+        });
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSourceLoader() {
+        new CoverageMerger(null, CoverageMerger.Hits.MAX, 1024);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMemoryBudget() {
+        new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 0);
+    }
+
+    @Test
+    public void testMergeMaxHits() throws Exception {
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        merger.onSource(source("Foo.java", 1, 2, 2, 0, 5, 1));
+        merger.onSource(source("Bar.java", 1, 1));
+        merger.onSource(source("Foo.java", 1, 0, 2, 3, 7, 0));
+        merger.flush(collector);
+
+        assertEquals(2, sources.size());
+        assertEquals("Bar.java", sources.get(0).getName());
+        assertEquals("Foo.java", sources.get(1).getName());
+        assertCoverage(sources.get(1), 1, 2, 2, 3, 5, 1, 7, 0);
+        assertEquals(1, merger.getMerged());
+        assertEquals(0, merger.getSpills());
+        verify(sourceLoaderMock, times(1)).load("Foo.java");
+    }
+
+    @Test
+    public void testMergeSumHits() throws Exception {
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024 * 1024);
+        merger.onSource(source("Foo.java", 1, 2, 2, Integer.MAX_VALUE));
+        merger.onSource(source("Foo.java", 1, 3, 2, 1, 3, 0));
+        merger.flush(collector);
+
+        assertEquals(1, sources.size());
+        assertCoverage(sources.get(0), 1, 5, 2, Integer.MAX_VALUE, 3, 0);
+    }
+
+    @Test
+    public void testMergeClassifiedSources() throws Exception {
+        Source inner = source("Foo.java", 3, 1);
+        inner.setClassifier("$Inner");
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        merger.onSource(source("Foo.java", 1, 1));
+        merger.onSource(inner);
+        merger.flush(collector);
+
+        assertEquals(1, sources.size());
+        assertNull(sources.get(0).getClassifier());
+        assertCoverage(sources.get(0), 1, 1, 3, 1);
+    }
+
+    @Test
+    public void testSpilledMergeEqualsMemoryMerge() throws Exception {
+        List<Source> inputs = randomSources();
+        CoverageMerger memory = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024 * 1024);
+        for (Source source : inputs) {
+            memory.onSource(source);
+        }
+        memory.flush(collector);
+        List<Source> expected = new ArrayList<Source>(sources);
+        sources.clear();
+
+        CoverageMerger spilling = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024);
+        for (Source source : inputs) {
+            spilling.onSource(source);
+        }
+        assertTrue(spilling.getSpills() > 1);
+        spilling.flush(collector);
+
+        assertEquals(0, spilling.getSpills());
+        assertEquals(memory.getMerged(), spilling.getMerged());
+        assertEquals(expected.size(), sources.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), sources.get(i).getName());
+            assertArrayEquals(expected.get(i).getCoverage(), sources.get(i).getCoverage());
+        }
+    }
+
+    @Test
+    public void testCloseDeletesSpilledCoverage() throws Exception {
+        File temp = new File(System.getProperty("java.io.tmpdir"));
+        int before = countRuns(temp);
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1);
+        merger.onSource(source("Foo.java", 1, 1));
+        merger.onSource(source("Bar.java", 1, 1));
+        assertEquals(before + 2, countRuns(temp));
+        merger.close();
+        assertEquals(before, countRuns(temp));
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testMergedCoverageDoesNotMatchSource() throws Exception {
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        Source longer = new Source("Foo.java", "a\nb\nc\n" + source("Foo.java").getSource());
+        longer.addCoverage(LINES + 2, 1);
+        merger.onSource(longer);
+        merger.flush(collector);
+    }
+
+    @Test
+    public void testPartialMergeEqualsDirectMerge() throws Exception {
+        List<Source> inputs = randomSources();
+        CoverageMerger direct = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024 * 1024);
+        for (Source source : inputs) {
+            direct.onSource(source);
+        }
+        direct.flush(collector);
+        List<Source> expected = new ArrayList<Source>(sources);
+        sources.clear();
+
+        File first = new File(folder.getRoot(), "first.bin");
+        File second = new File(folder.getRoot(), "second.bin");
+        CoverageMerger writer = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024);
+        for (Source source : inputs.subList(0, 150)) {
+            writer.onSource(source);
+        }
+        writer.writePartial(first);
+        for (Source source : inputs.subList(150, 250)) {
+            writer.onSource(source);
+        }
+        writer.writePartial(second);
+        writer.close();
+        assertTrue(first.isFile());
+        assertTrue(second.isFile());
+        assertEquals(0, countFiles(folder.getRoot(), ".tmp"));
+
+        CoverageMerger reader = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.SUM, 1024 * 1024);
+        reader.addPartial(first);
+        reader.addPartial(second);
+        for (Source source : inputs.subList(250, inputs.size())) {
+            reader.onSource(source);
+        }
+        reader.flush(collector);
+
+        assertTrue(first.isFile());
+        assertEquals(expected.size(), sources.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getName(), sources.get(i).getName());
+            assertArrayEquals(expected.get(i).getCoverage(), sources.get(i).getCoverage());
+        }
+    }
+
+    @Test
+    public void testWritePartialDoesNotLoadSources() throws Exception {
+        File partial = new File(folder.getRoot(), "partial.bin");
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        merger.onSource(source("Foo.java", 1, 2));
+        merger.onSource(source("Foo.java", 1, 3));
+        merger.writePartial(partial);
+
+        verify(sourceLoaderMock, times(0)).load(anyString());
+        CoverageMerger reader = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        reader.addPartial(partial);
+        reader.flush(collector);
+        assertEquals(1, sources.size());
+        assertCoverage(sources.get(0), 1, 3);
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testInvalidPartial() throws Exception {
+        File partial = folder.newFile("invalid.bin");
+        FileOutputStream out = new FileOutputStream(partial);
+        try {
+            out.write("not a partial".getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(out);
+        }
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        merger.addPartial(partial);
+        merger.flush(collector);
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testTruncatedPartial() throws Exception {
+        File partial = new File(folder.getRoot(), "truncated.bin");
+        CoverageMerger merger = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        merger.onSource(source("Foo.java", 1, 2, 5, 1));
+        merger.writePartial(partial);
+        FileInputStream in = new FileInputStream(partial);
+        byte[] bytes;
+        try {
+            bytes = IOUtil.toByteArray(in);
+        } finally {
+            IOUtil.close(in);
+        }
+        FileOutputStream out = new FileOutputStream(partial);
+        try {
+            out.write(bytes, 0, bytes.length - 2);
+        } finally {
+            IOUtil.close(out);
+        }
+        CoverageMerger reader = new CoverageMerger(sourceLoaderMock, CoverageMerger.Hits.MAX, 1024 * 1024);
+        reader.addPartial(partial);
+        reader.flush(collector);
+    }
+
+    private static int countFiles(final File directory, final String suffix) {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.endsWith(suffix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static List<Source> randomSources() {
+        Random random = new Random(20);
+        List<Source> sources = new ArrayList<Source>();
+        for (int i = 0; i < 300; i++) {
+            Source source = source("pkg/Source" + random.nextInt(60) + ".java");
+            for (int line = 1; line <= LINES; line += 1 + random.nextInt(4)) {
+                source.addCoverage(line, random.nextInt(3));
+            }
+            sources.add(source);
+        }
+        return sources;
+    }
+
+    private static int countRuns(final File directory) {
+        int count = 0;
+        for (String name : directory.list()) {
+            if (name.startsWith("coveralls-merge")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static Source source(final String name, final int... coverage) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 1; i < LINES; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        Source source = new Source(name, content.toString());
+        for (int i = 0; i < coverage.length; i += 2) {
+            source.addCoverage(coverage[i], coverage[i + 1]);
+        }
+        return source;
+    }
+
+    private static void assertCoverage(final Source source, final int... coverage) {
+        int[] expected = new int[LINES];
+        Arrays.fill(expected, Source.NOT_RELEVANT);
+        for (int i = 0; i < coverage.length; i += 2) {
+            expected[coverage[i] - 1] = coverage[i + 1];
+        }
+        assertArrayEquals(expected, source.getCoverage());
+    }
+}
@@ -0,0 +1,68 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DaemonThreadFactoryTest {
+
+    private static final Runnable NOOP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingName() {
+        new DaemonThreadFactory(null);
+    }
+
+    @Test
+    public void testNewThreadIsDaemon() {
+        assertTrue(new DaemonThreadFactory("test").newThread(NOOP).isDaemon());
+    }
+
+    @Test
+    public void testThreadNames() {
+        DaemonThreadFactory factory = new DaemonThreadFactory("test");
+        String first = factory.newThread(NOOP).getName();
+        String second = factory.newThread(NOOP).getName();
+        assertTrue(first.matches("coveralls-test-\\d+-1"));
+        assertEquals(first.substring(0, first.length() - 1) + "2", second);
+    }
+
+    @Test
+    public void testPoolsAreNumberedSeparately() {
+        String first = new DaemonThreadFactory("test").newThread(NOOP).getName();
+        String second = new DaemonThreadFactory("test").newThread(NOOP).getName();
+        assertFalse(first.equals(second));
+    }
+}
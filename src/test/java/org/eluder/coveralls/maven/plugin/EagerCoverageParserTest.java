@@ -0,0 +1,182 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.junit.Test;
+
+public class EagerCoverageParserTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingParser() {
+        new EagerCoverageParser(null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new EagerCoverageParser(new SourceParser(1), 0);
+    }
+
+    @Test
+    public void testGetCoverageFile() {
+        SourceParser parser = new SourceParser(1);
+        EagerCoverageParser eager = new EagerCoverageParser(parser, 1);
+        assertSame(parser, eager.getParser());
+        assertSame(parser.getCoverageFile(), eager.getCoverageFile());
+    }
+
+    @Test
+    public void testParseInOrder() throws Exception {
+        List<String> names = new ArrayList<String>();
+        new EagerCoverageParser(new SourceParser(500), 3).start().parse(collector(names));
+        assertEquals(500, names.size());
+        for (int i = 0; i < names.size(); i++) {
+            assertEquals("Source" + i + ".java", names.get(i));
+        }
+    }
+
+    @Test
+    public void testParseWithoutStart() throws Exception {
+        List<String> names = new ArrayList<String>();
+        new EagerCoverageParser(new SourceParser(5), 10).parse(collector(names));
+        assertEquals(5, names.size());
+    }
+
+    @Test
+    public void testParsingWaitsForFullWindow() throws Exception {
+        SourceParser parser = new SourceParser(100);
+        EagerCoverageParser eager = new EagerCoverageParser(parser, 8).start();
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (eager.getBuffered() < 8 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            Thread.sleep(50);
+            assertEquals(8, eager.getBuffered());
+            assertTrue(parser.produced.get() <= 9);
+            List<String> names = new ArrayList<String>();
+            eager.parse(collector(names));
+            assertEquals(100, names.size());
+        } finally {
+            eager.close();
+        }
+    }
+
+    @Test
+    public void testFailureIsRethrown() throws Exception {
+        SourceParser parser = new SourceParser(3);
+        parser.failure = new ProcessingException("broken");
+        List<String> names = new ArrayList<String>();
+        try {
+            new EagerCoverageParser(parser, 2).start().parse(collector(names));
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertSame(parser.failure, ex);
+        }
+        assertEquals(3, names.size());
+    }
+
+    @Test
+    public void testCloseStopsBlockedParser() throws Exception {
+        SourceParser parser = new SourceParser(100);
+        EagerCoverageParser eager = new EagerCoverageParser(parser, 1).start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (eager.getBuffered() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        eager.close();
+        assertTrue(parser.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(parser.produced.get() < 100);
+    }
+
+    @Test
+    public void testCloseWaitsForBackgroundParser() throws Exception {
+        SourceParser parser = new SourceParser(100);
+        EagerCoverageParser eager = new EagerCoverageParser(parser, 1).start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (eager.getBuffered() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        eager.close();
+        assertEquals(0, parser.finished.getCount());
+    }
+
+    private static SourceCallback collector(final List<String> names) {
+        return new SourceCallback() {
+            @Override
+            public void onSource(final Source source) {
+                names.add(source.getName());
+            }
+        };
+    }
+
+    private static final class SourceParser implements CoverageParser {
+
+        private final int sources;
+        private final File coverageFile = new File("coverage.xml");
+        private final AtomicInteger produced = new AtomicInteger();
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile ProcessingException failure;
+
+        private SourceParser(final int sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public void parse(final SourceCallback callback) throws ProcessingException, IOException {
+            try {
+                for (int i = 0; i < sources; i++) {
+                    callback.onSource(new Source("Source" + i + ".java", "line\n"));
+                    produced.incrementAndGet();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        @Override
+        public File getCoverageFile() {
+            return coverageFile;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package org.eluder.coveralls.maven.plugin;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SourcePrefetcherTest {
+
+    @Mock
+    private SourceLoader sourceLoaderMock;
+
+    private SourcePrefetcher prefetcher;
+
+    @Before
+    public void init() throws IOException {
+        when(sourceLoaderMock.load("Foo.java")).then(new SourceAnswer());
+        when(sourceLoaderMock.load("Bar.java")).then(new SourceAnswer());
+        when(sourceLoaderMock.load("Baz.java")).then(new SourceAnswer());
+    }
+
+    @After
+    public void destroy() {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWindow() {
+        new SourcePrefetcher(sourceLoaderMock, 0);
+    }
+
+    @Test
+    public void testLoadPrefetched() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 2);
+        prefetcher.submit("Foo.java");
+        prefetcher.submit("Bar.java");
+
+        assertEquals("Foo.java", prefetcher.load("Foo.java").getName());
+        assertEquals("Bar.java", prefetcher.load("Bar.java").getName());
+        assertEquals(2, prefetcher.getHits());
+        assertEquals(0, prefetcher.getMisses());
+        verify(sourceLoaderMock, times(1)).load("Foo.java");
+        verify(sourceLoaderMock, times(1)).load("Bar.java");
+    }
+
+    @Test
+    public void testLoadDuplicatesSeparately() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 2);
+        prefetcher.submit("Foo.java");
+        prefetcher.submit("Foo.java");
+
+        Source first = prefetcher.load("Foo.java");
+        Source second = prefetcher.load("Foo.java");
+        assertNotSame(first, second);
+        assertEquals(2, prefetcher.getHits());
+    }
+
+    @Test
+    public void testLoadNotSubmittedDirectly() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 2);
+        prefetcher.submit("Foo.java");
+
+        assertEquals("Bar.java", prefetcher.load("Bar.java").getName());
+        assertEquals(0, prefetcher.getHits());
+        assertEquals(1, prefetcher.getMisses());
+
+        // the look-ahead was behind, so the window is free again
+        prefetcher.submit("Bar.java");
+        prefetcher.submit("Baz.java");
+        assertEquals("Baz.java", prefetcher.load("Baz.java").getName());
+    }
+
+    @Test
+    public void testPassedSourcesAreDiscarded() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 2);
+        prefetcher.submit("Foo.java");
+        prefetcher.submit("Bar.java");
+
+        assertEquals("Bar.java", prefetcher.load("Bar.java").getName());
+        assertEquals(1, prefetcher.getHits());
+
+        prefetcher.submit("Baz.java");
+        prefetcher.submit("Foo.java");
+        assertEquals("Foo.java", prefetcher.load("Foo.java").getName());
+    }
+
+    @Test
+    public void testSubmitBlocksWhenWindowIsFull() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 1);
+        prefetcher.submit("Foo.java");
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread lookAhead = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetcher.submit("Bar.java");
+                    submitted.countDown();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        lookAhead.start();
+        assertFalse(submitted.await(100, TimeUnit.MILLISECONDS));
+
+        prefetcher.load("Foo.java");
+        assertTrue(submitted.await(5, TimeUnit.SECONDS));
+        lookAhead.join();
+    }
+
+    @Test
+    public void testLoadFailureIsPropagated() throws Exception {
+        when(sourceLoaderMock.load("Foo.java")).thenThrow(new IOException("failed"));
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 1);
+        prefetcher.submit("Foo.java");
+        try {
+            prefetcher.load("Foo.java");
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertEquals("failed", ex.getMessage());
+        }
+    }
+
+    @Test
+    public void testStartRunsLookAhead() throws Exception {
+        prefetcher = new SourcePrefetcher(sourceLoaderMock, 1);
+        final CountDownLatch started = new CountDownLatch(1);
+        prefetcher.start(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    prefetcher.submit("Foo.java");
+                    started.countDown();
+                    prefetcher.submit("Bar.java");
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals("Foo.java", prefetcher.load("Foo.java").getName());
+        assertEquals("Bar.java", prefetcher.load("Bar.java").getName());
+    }
+
+    private static class SourceAnswer implements Answer<Source> {
+
+        @Override
+        public Source answer(final InvocationOnMock invocation) throws Throwable {
+            return new Source((String) invocation.getArguments()[0], "public class Foo {\n}");
+        }
+    }
+}
@@ -31,6 +31,10 @@ import static org.hamcrest.Matchers.containsString;
 import static org.junit.Assert.*;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
@@ -145,6 +149,7 @@ public class ChainMojoTest {
         Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses("project", mojo.getClass());
         field.setAccessible(true);
         field.set(mojo, projectMock);
+        setField("mergeHits", "max");
 
         List<MavenProject> projects = new ArrayList<MavenProject>();
         projects.add(collectedProjectMock);
@@ -190,4 +195,42 @@ public class ChainMojoTest {
 
         verifySuccessfullSubmit(logMock, fixture);
     }
+
+    @Test
+    public void testMergeSourcesForCoberturaAndJaCoCo() throws Exception {
+        SourceLoader coverageLoaderMock = mock(SourceLoader.class);
+        when(coverageLoaderMock.load(anyString())).then(new Answer<Source>() {
+            @Override
+            public Source answer(final InvocationOnMock invocation) throws Throwable {
+                String sourceFile = invocation.getArguments()[0].toString();
+                return new Source(sourceFile, TestIoUtil.readFileContent(TestIoUtil.getFile(sourceFile)));
+            }
+        });
+        when(sourceLoaderMock.createCoverageLoader()).thenReturn(coverageLoaderMock);
+        mojo.coberturaFile = TestIoUtil.getFile("cobertura.xml");
+        mojo.jacocoFile = TestIoUtil.getFile("jacoco.xml");
+        mojo.mergeSources = true;
+        setField("mergeMemoryBudget", 1);
+
+        when(coverallsClientMock.submit(any(File.class))).thenReturn(new CoverallsResponse("success", false, null));
+        mojo.execute();
+        String json = TestIoUtil.readFileContent(coverallsFile);
+
+        String[][] fixture = CoverageFixture.JAVA_FILES;
+        for (String[] coverageFile : fixture) {
+            String name = "\"name\":\"" + coverageFile[0] + "\"";
+            assertEquals(json.indexOf(name), json.lastIndexOf(name));
+            assertThat(json, containsString(name));
+            verify(sourceLoaderMock, times(1)).load(coverageFile[0]);
+        }
+        verify(sourceLoaderMock).close();
+        verify(coverageLoaderMock, never()).close();
+        verifySuccessfullSubmit(logMock, fixture);
+    }
+
+    private void setField(final String name, final Object value) throws Exception {
+        Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses(name, mojo.getClass());
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
 }
@@ -26,10 +26,19 @@ package org.eluder.coveralls.maven.plugin.cobertura;
  * %[license]
  */
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Field;
+
+import org.codehaus.plexus.util.ReflectionUtils;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojoTest;
 import org.eluder.coveralls.maven.plugin.CoverageFixture;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Test;
 
 public class CoberturaMojoTest extends AbstractCoverallsMojoTest {
 
@@ -44,4 +53,25 @@ public class CoberturaMojoTest extends AbstractCoverallsMojoTest {
     protected String[][] getCoverageFixture() {
         return CoverageFixture.JAVA_FILES;
     }
+
+    @Test
+    public void testParallelismShardsWithByteScanner() throws Exception {
+        CoberturaMojo mojo = (CoberturaMojo) createMojo();
+        setField(mojo, "parallelism", 4);
+        setField(mojo, "byteScanner", true);
+        assertTrue(mojo.createCoverageParser(mock(SourceLoader.class)) instanceof ShardedCoberturaParser);
+    }
+
+    @Test
+    public void testParallelismParsesWithStaxWithoutByteScanner() throws Exception {
+        CoberturaMojo mojo = (CoberturaMojo) createMojo();
+        setField(mojo, "parallelism", 4);
+        assertEquals(CoberturaParser.class, mojo.createCoverageParser(mock(SourceLoader.class)).getClass());
+    }
+
+    private static void setField(final CoberturaMojo mojo, final String name, final Object value) throws Exception {
+        Field field = ReflectionUtils.getFieldByNameIncludingSuperclasses(name, CoberturaMojo.class);
+        field.setAccessible(true);
+        field.set(mojo, value);
+    }
 }
@@ -0,0 +1,133 @@
+package org.eluder.coveralls.maven.plugin.cobertura;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eluder.coveralls.maven.plugin.CoverageMerger;
+import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.MergingCoverageParser;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Tests coalescing the classes of a Cobertura source file with a coverage merger.
+ */
+public class CoberturaParserCoalescingTest extends CoberturaParserTest {
+
+    @Override
+    protected CoverageParser createCoverageParser(final File coverageFile, final SourceLoader sourceLoader) {
+        return coalesce(new CoberturaParser(coverageFile, sourceLoader), sourceLoader);
+    }
+
+    @Test
+    public void testInnerClassesAreMerged() throws Exception {
+        List<Source> sources = parse(createCoverageParser(TestIoUtil.getFile("cobertura.xml"), sourceLoaderMock));
+        assertEquals(2, sources.size());
+        assertEquals("org/eluder/coverage/sample/InnerClassCoverage.java", sources.get(0).getFullName());
+        assertNull(sources.get(0).getClassifier());
+    }
+
+    @Test
+    public void testRevisitedSourcesAreMerged() throws Exception {
+        File report = createRevisitingReport();
+        CoverageParser[] parsers = new CoverageParser[] {
+            createCoverageParser(report, sourceLoaderMock),
+            coalesce(new ShardedCoberturaParser(report, sourceLoaderMock, 4), sourceLoaderMock)
+        };
+        for (CoverageParser parser : parsers) {
+            List<Source> sources = parse(parser);
+            assertEquals(101, sources.size());
+            assertEquals("gen/F0.java", sources.get(0).getName());
+            assertArrayEquals(new int[] { 4, Source.NOT_RELEVANT, 5 }, sources.get(0).getCoverage());
+            for (Source source : sources) {
+                if (source.getName().equals("gen/F100.java")) {
+                    assertArrayEquals(new int[] { Source.NOT_RELEVANT, 5, Source.NOT_RELEVANT }, source.getCoverage());
+                }
+            }
+        }
+    }
+
+    private static CoverageParser coalesce(final CoverageParser parser, final SourceLoader sourceLoader) {
+        return new MergingCoverageParser(parser, new CoverageMerger(sourceLoader, CoverageMerger.Hits.SUM, 1024 * 1024));
+    }
+
+    /**
+     * Creates a report where the first file is visited again after 100 other files, so it has been
+     * passed on already.
+     */
+    private File createRevisitingReport() throws Exception {
+        when(sourceLoaderMock.load(startsWith("gen/"))).then(new Answer<Source>() {
+            @Override
+            public Source answer(final InvocationOnMock invocation) throws Throwable {
+                return new Source((String) invocation.getArguments()[0], "\n\n");
+            }
+        });
+        StringBuilder xml = new StringBuilder("<coverage><packages><package name=\"gen\"><classes>");
+        for (int i : new int[] { 0, 0 }) {
+            appendClass(xml, i, 1, 2);
+        }
+        for (int i = 1; i <= 100; i++) {
+            appendClass(xml, i, 2, 1);
+        }
+        appendClass(xml, 0, 3, 5);
+        appendClass(xml, 100, 2, 4);
+        xml.append("</classes></package></packages></coverage>");
+        File report = folder.newFile("coverage.xml");
+        TestIoUtil.writeFileContent(xml.toString(), report);
+        return report;
+    }
+
+    private static void appendClass(final StringBuilder xml, final int file, final int line, final int hits) {
+        xml.append("<class name=\"gen.F").append(file).append("$").append(line).append("\" filename=\"gen/F").append(file).append(".java\">");
+        xml.append("<lines><line number=\"").append(line).append("\" hits=\"").append(hits).append("\"/></lines></class>");
+    }
+
+    private static List<Source> parse(final CoverageParser parser) throws Exception {
+        final List<Source> sources = new ArrayList<Source>();
+        parser.parse(new SourceCallback() {
+            @Override
+            public void onSource(final Source source) {
+                sources.add(source);
+            }
+        });
+        return sources;
+    }
+}
@@ -26,15 +26,26 @@ package org.eluder.coveralls.maven.plugin.cobertura;
  * %[license]
  */
 
+import static org.mockito.Mockito.when;
+
 import java.io.File;
 
 import org.eluder.coveralls.maven.plugin.AbstractCoverageParserTest;
 import org.eluder.coveralls.maven.plugin.CoverageFixture;
 import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.Source;
 import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 public class CoberturaParserTest extends AbstractCoverageParserTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Override
     protected CoverageParser createCoverageParser(final File coverageFile, final SourceLoader sourceLoader) {
         return new CoberturaParser(coverageFile, sourceLoader);
@@ -49,4 +60,14 @@ public class CoberturaParserTest extends AbstractCoverageParserTest {
     protected String[][] getCoverageFixture() {
         return CoverageFixture.JAVA_FILES;
     }
+
+    @Test(expected = ProcessingException.class)
+    public void testLineOutsideOfSourceFails() throws Exception {
+        when(sourceLoaderMock.load("Stale.java")).thenReturn(new Source("Stale.java", "\n"));
+        File report = folder.newFile("stale.xml");
+        TestIoUtil.writeFileContent("<coverage><packages><package name=\"\"><classes>"
+                + "<class name=\"Stale\" filename=\"Stale.java\"><lines><line number=\"5\" hits=\"1\"/></lines></class>"
+                + "</classes></package></packages></coverage>", report);
+        createCoverageParser(report, sourceLoaderMock).parse(sourceCallbackMock);
+    }
 }
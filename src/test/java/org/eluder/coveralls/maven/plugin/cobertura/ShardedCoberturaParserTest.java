@@ -0,0 +1,124 @@
+package org.eluder.coveralls.maven.plugin.cobertura;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eluder.coveralls.maven.plugin.AbstractCoverageParserTest;
+import org.eluder.coveralls.maven.plugin.CoverageFixture;
+import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+public class ShardedCoberturaParserTest extends AbstractCoverageParserTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Override
+    protected CoverageParser createCoverageParser(final File coverageFile, final SourceLoader sourceLoader) {
+        return new ShardedCoberturaParser(coverageFile, sourceLoader, 4);
+    }
+
+    @Override
+    protected String getCoverageResource() {
+        return "cobertura.xml";
+    }
+
+    @Override
+    protected String[][] getCoverageFixture() {
+        return CoverageFixture.JAVA_FILES;
+    }
+
+    @Test
+    public void testSourcesInDocumentOrder() throws Exception {
+        when(sourceLoaderMock.load(startsWith("gen/"))).then(new Answer<Source>() {
+            @Override
+            public Source answer(final InvocationOnMock invocation) throws Throwable {
+                char[] lines = new char[20];
+                Arrays.fill(lines, '\n');
+                return new Source((String) invocation.getArguments()[0], new String(lines));
+            }
+        });
+        File report = writeReport(3, 57);
+        List<String> expected = parse(new CoberturaParser(report, sourceLoaderMock));
+        for (int parallelism : new int[] { 1, 2, 3, 8, 100 }) {
+            assertEquals(expected, parse(new ShardedCoberturaParser(report, sourceLoaderMock, parallelism)));
+        }
+        assertEquals(3 * 57, expected.size());
+    }
+
+    private File writeReport(final int packages, final int classes) throws IOException {
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\"?>\n<!DOCTYPE coverage SYSTEM \"http://cobertura.sourceforge.net/xml/coverage-04.dtd\">\n");
+        xml.append("<coverage><sources><source>src</source></sources><packages>\n");
+        for (int p = 0; p < packages; p++) {
+            xml.append("<package name=\"p").append(p).append("\"><classes>\n");
+            for (int c = 0; c < classes; c++) {
+                String name = "gen/p" + p + "/C" + c + ".java";
+                xml.append("<class name=\"p").append(p).append(".C").append(c).append("\" filename=\"").append(name).append("\">");
+                xml.append("<methods><method name=\"m\"><lines><line number=\"1\" hits=\"9\"/></lines></method></methods><lines>");
+                for (int l = 1; l <= 1 + (c % 7) * 2; l++) {
+                    xml.append("<line number=\"").append(l).append("\" hits=\"").append(p + c).append("\"/>");
+                }
+                xml.append("</lines></class>\n");
+            }
+            xml.append("</classes></package>\n");
+        }
+        xml.append("</packages></coverage>\n");
+        File file = folder.newFile("coverage.xml");
+        TestIoUtil.writeFileContent(xml.toString(), file);
+        return file;
+    }
+
+    private static List<String> parse(final CoverageParser parser) throws ProcessingException, IOException {
+        final List<String> sources = new ArrayList<String>();
+        parser.parse(new SourceCallback() {
+            @Override
+            public void onSource(final Source source) {
+                sources.add(source.getName() + Arrays.toString(source.getCoverage()));
+            }
+        });
+        return sources;
+    }
+}
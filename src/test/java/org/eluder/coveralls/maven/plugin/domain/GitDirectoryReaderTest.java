@@ -0,0 +1,209 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitDirectoryReaderTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workTree;
+    private org.eclipse.jgit.api.Git jgit;
+
+    @Before
+    public void init() throws Exception {
+        workTree = folder.newFolder();
+        jgit = org.eclipse.jgit.api.Git.init().setDirectory(workTree).call();
+    }
+
+    @Test
+    public void testReadEqualsJGit() throws Exception {
+        StoredConfig config = jgit.getRepository().getConfig();
+        config.setString("remote", "origin", "url", "git@github.com:foo/bar.git");
+        config.setString("remote", "up stream", "url", "https://github.com/\"quoted\"/bar.git");
+        config.setString("remote", "empty", "fetch", "+refs/heads/*:refs/remotes/empty/*");
+        config.save();
+        commit(new PersonIdent("Jöhn Doe", "john@mail.com"), new PersonIdent("Jane", "jane@mail.com"), "subject\n\nbody ☃\n");
+        jgit.branchCreate().setName("feature/x").call();
+        jgit.checkout().setName("feature/x").call();
+
+        File source = new File(workTree, "src/main/java");
+        source.mkdirs();
+        assertGit(load(source), new GitRepository(source).loadWithJGit());
+        assertEquals("feature/x", load(source).getBranch());
+        assertEquals(3, load(source).getRemotes().size());
+    }
+
+    @Test
+    public void testReadPackedRefs() throws Exception {
+        commit("first");
+        jgit.gc().call();
+        commit("second");
+        assertNotNull(GitDirectoryReader.read(gitDir()));
+        assertGit(load(workTree), new GitRepository(workTree).loadWithJGit());
+        assertEquals("second", load(workTree).getHead().getMessage());
+    }
+
+    @Test
+    public void testReadDetachedHead() throws Exception {
+        RevCommit first = commit("first");
+        commit("second");
+        jgit.checkout().setName(first.getName()).call();
+        Git git = load(workTree);
+        assertEquals(first.getName(), git.getBranch());
+        assertEquals(first.getName(), git.getHead().getId());
+        assertGit(git, new GitRepository(workTree).loadWithJGit());
+    }
+
+    @Test
+    public void testReadWorktree() throws Exception {
+        RevCommit commit = commit("first");
+        File worktreeDir = new File(gitDir(), "worktrees/other");
+        worktreeDir.mkdirs();
+        write(new File(worktreeDir, "HEAD"), "ref: refs/heads/other\n");
+        write(new File(worktreeDir, "commondir"), "../..\n");
+        write(new File(gitDir(), "refs/heads/other"), commit.getName() + "\n");
+        File otherTree = folder.newFolder();
+        write(new File(otherTree, ".git"), "gitdir: " + worktreeDir.getAbsolutePath() + "\n");
+
+        Git git = load(otherTree);
+        assertEquals("other", git.getBranch());
+        assertEquals(commit.getName(), git.getHead().getId());
+        assertEquals("first", git.getHead().getMessage());
+    }
+
+    @Test
+    public void testFallbackToJGitForPackedCommit() throws Exception {
+        commit("first");
+        jgit.gc().call();
+        assertNull(GitDirectoryReader.read(gitDir()));
+        Git git = new GitRepository(workTree).load();
+        assertEquals("first", git.getHead().getMessage());
+        assertEquals("master", git.getBranch());
+    }
+
+    @Test
+    public void testFallbackToJGitForIncludedConfig() throws Exception {
+        commit("first");
+        FileUtils.fileAppend(new File(gitDir(), "config").getAbsolutePath(), "[include]\n\tpath = other\n");
+        assertNull(GitDirectoryReader.read(gitDir()));
+    }
+
+    @Test
+    public void testUnbornBranch() throws Exception {
+        assertNull(GitDirectoryReader.read(gitDir()));
+    }
+
+    @Test
+    public void testNotInRepository() throws Exception {
+        assertNull(GitDirectoryReader.findGitDir(new File("/")));
+    }
+
+    @Test
+    public void testSnapshotIsReusedAndRefreshed() throws Exception {
+        commit("first");
+        Git first = load(workTree);
+        Git again = load(workTree);
+        assertSame(first.getHead(), again.getHead());
+        assertSame(first.getRemotes(), again.getRemotes());
+
+        commit("second");
+        StoredConfig config = jgit.getRepository().getConfig();
+        config.setString("remote", "origin", "url", "git@github.com:foo/bar.git");
+        config.save();
+        Git refreshed = load(workTree);
+        assertEquals("second", refreshed.getHead().getMessage());
+        assertEquals(1, refreshed.getRemotes().size());
+        assertEquals("git@github.com:foo/bar.git", refreshed.getRemotes().get(0).getUrl());
+    }
+
+    private File gitDir() {
+        return jgit.getRepository().getDirectory();
+    }
+
+    private RevCommit commit(final String message) throws Exception {
+        PersonIdent ident = new PersonIdent("john", "john@mail.com");
+        return commit(ident, ident, message);
+    }
+
+    private RevCommit commit(final PersonIdent author, final PersonIdent committer, final String message) throws Exception {
+        return jgit.commit().setAuthor(author).setCommitter(committer).setMessage(message).call();
+    }
+
+    private static Git load(final File directory) throws IOException {
+        File gitDir = GitDirectoryReader.findGitDir(directory);
+        assertNotNull(gitDir);
+        Git git = GitDirectoryReader.read(gitDir);
+        assertNotNull(git);
+        return git;
+    }
+
+    private static void assertGit(final Git expected, final Git actual) {
+        assertEquals(expected.getBranch(), actual.getBranch());
+        assertEquals(expected.getHead().getId(), actual.getHead().getId());
+        assertEquals(expected.getHead().getAuthorName(), actual.getHead().getAuthorName());
+        assertEquals(expected.getHead().getAuthorEmail(), actual.getHead().getAuthorEmail());
+        assertEquals(expected.getHead().getCommitterName(), actual.getHead().getCommitterName());
+        assertEquals(expected.getHead().getCommitterEmail(), actual.getHead().getCommitterEmail());
+        assertEquals(expected.getHead().getMessage(), actual.getHead().getMessage());
+        assertEquals(expected.getRemotes().size(), actual.getRemotes().size());
+        for (int i = 0; i < expected.getRemotes().size(); i++) {
+            assertEquals(expected.getRemotes().get(i).getName(), actual.getRemotes().get(i).getName());
+            assertEquals(expected.getRemotes().get(i).getUrl(), actual.getRemotes().get(i).getUrl());
+        }
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
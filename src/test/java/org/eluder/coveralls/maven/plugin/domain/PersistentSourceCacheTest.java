@@ -0,0 +1,224 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class PersistentSourceCacheTest {
+
+    private static final byte[] DIGEST = SourceLoader.fromHex("2ac359c9a152fd7cd79c4eb147069224");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheFile;
+    private File sourceFile;
+    private String path;
+
+    @Before
+    public void init() throws IOException {
+        cacheFile = new File(folder.getRoot(), "target/sources.cache");
+        sourceFile = folder.newFile("Foo.java");
+        TestIoUtil.writeFileContent("public class Foo {\n}", sourceFile);
+        path = sourceFile.getCanonicalPath();
+    }
+
+    @Test
+    public void testOpenMissingFile() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertEquals(0, cache.getSize());
+        assertSame(cacheFile, cache.getFile());
+        assertNull(cache.get(path, 20, 1, "Foo.java", false));
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testCloseWithoutUpdatesDoesNotWrite() throws IOException {
+        PersistentSourceCache.open(cacheFile, "UTF-8").close();
+        assertFalse(cacheFile.exists());
+    }
+
+    @Test
+    public void testPersistSource() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        assertNotNull(cache.get(path, 20, 1, "Foo.java", false));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertEquals(1, cache.getSize());
+        Source source = cache.get(path, 20, 1, "pkg/Foo.java", false);
+        assertEquals("pkg/Foo.java", source.getName());
+        assertEquals("public class Foo {\n}", new String(source.getUtf8Source(), "UTF-8"));
+        assertEquals("public class Foo {\n}", source.getSource());
+        assertEquals(2, source.getCoverage().length);
+
+        Source digest = cache.get(path, 20, 1, "Foo.java", true);
+        assertNull(digest.getSource());
+        assertEquals("2ac359c9a152fd7cd79c4eb147069224", digest.getDigest());
+        assertEquals(2, digest.getCoverage().length);
+        assertEquals(2, cache.getHits());
+    }
+
+    @Test
+    public void testChangedFileIsNotReturned() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertNull(cache.get(path, 20, 2, "Foo.java", false));
+        assertNull(cache.get(path, 21, 1, "Foo.java", true));
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testDigestSourceHasNoContent() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", 2, "2ac359c9a152fd7cd79c4eb147069224"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertNull(cache.get(path, 20, 1, "Foo.java", false));
+        assertNotNull(cache.get(path, 20, 1, "Foo.java", true));
+    }
+
+    @Test
+    public void testDigestSourceRetainsCachedContent() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", 2, "2ac359c9a152fd7cd79c4eb147069224"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertEquals("public class Foo {\n}", cache.get(path, 20, 1, "Foo.java", false).getSource());
+    }
+
+    @Test
+    public void testUnchangedEntriesAreRetained() throws IOException {
+        File otherFile = folder.newFile("Bar.java");
+        String otherPath = otherFile.getCanonicalPath();
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(otherPath, 20, 1, DIGEST, new Source("Bar.java", "public class Bar {\n}"));
+        assertEquals(2, cache.getSize());
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertEquals("public class Foo {\n}", cache.get(path, 20, 1, "Foo.java", false).getSource());
+        assertEquals("public class Bar {\n}", cache.get(otherPath, 20, 1, "Bar.java", false).getSource());
+    }
+
+    @Test
+    public void testEntriesOfDeletedFilesAreDropped() throws IOException {
+        File otherFile = folder.newFile("Bar.java");
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(otherFile.getCanonicalPath(), 20, 1, DIGEST, new Source("Bar.java", "public class Bar {\n}"));
+        cache.close();
+        assertTrue(otherFile.delete());
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        assertEquals(1, PersistentSourceCache.open(cacheFile, "UTF-8").getSize());
+    }
+
+    @Test
+    public void testOtherEncodingIsIgnored() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        assertEquals(0, PersistentSourceCache.open(cacheFile, "ISO-8859-1").getSize());
+    }
+
+    @Test
+    public void testCorruptedFileIsIgnored() throws IOException {
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+        TestIoUtil.writeFileContent("corrupted", cacheFile);
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertEquals(0, cache.getSize());
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+        assertEquals(1, PersistentSourceCache.open(cacheFile, "UTF-8").getSize());
+    }
+
+    @Test
+    public void testIndexAlternatesBetweenFiles() throws IOException {
+        File alternateFile = new File(cacheFile.getPath() + ".alt");
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+        assertTrue(cacheFile.isFile());
+        assertFalse(alternateFile.exists());
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 2, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+        assertTrue(alternateFile.isFile());
+        assertFalse(cache.isReplaceFailed());
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertNotNull(cache.get(path, 20, 2, "Foo.java", false));
+        cache.put(path, 20, 3, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        assertNotNull(cache.get(path, 20, 3, "Foo.java", false));
+    }
+
+    @Test
+    public void testFailedReplaceIsReported() throws IOException {
+        assertTrue(new File(cacheFile, "blocked").mkdirs());
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        cache.put(path, 20, 1, DIGEST, new Source("Foo.java", "public class Foo {\n}"));
+        cache.close();
+
+        assertTrue(cache.isReplaceFailed());
+        assertTrue(cacheFile.isDirectory());
+        assertEquals(1, cacheFile.getParentFile().list().length);
+    }
+}
@@ -0,0 +1,153 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SourceCacheTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeMaxBytes() {
+        new SourceCache(-1);
+    }
+
+    @Test
+    public void testGetShared() {
+        assertSame(SourceCache.getShared(), SourceCache.getShared());
+    }
+
+    @Test
+    public void testGetMissing() {
+        SourceCache cache = new SourceCache(10000);
+        assertNull(cache.get("/src/Foo.java", 10, 1, "Foo.java"));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testGetCreatesNewSource() {
+        SourceCache cache = new SourceCache(10000);
+        Source source = new Source("Foo.java", "public class Foo {\n}");
+        source.addCoverage(1, 3);
+        cache.put("/src/Foo.java", 20, 1, source);
+
+        Source first = cache.get("/src/Foo.java", 20, 1, "pkg/Foo.java");
+        Source second = cache.get("/src/Foo.java", 20, 1, "Foo.java");
+        assertNotSame(first, second);
+        assertEquals("pkg/Foo.java", first.getName());
+        assertEquals(source.getSource(), first.getSource());
+        assertArrayEquals(new int[] { Source.NOT_RELEVANT, Source.NOT_RELEVANT }, first.getCoverage());
+        first.addCoverage(2, 1);
+        assertEquals(Source.NOT_RELEVANT, second.getCoverage()[1]);
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testGetDigestSource() {
+        SourceCache cache = new SourceCache(10000);
+        cache.put("/src/Foo.java", 20, 1, new Source("Foo.java", 3, "2ac359c9a152fd7cd79c4eb147069224"));
+
+        Source source = cache.get("/src/Foo.java", 20, 1, "Foo.java");
+        assertNull(source.getSource());
+        assertEquals("2ac359c9a152fd7cd79c4eb147069224", source.getDigest());
+        assertEquals(3, source.getCoverage().length);
+    }
+
+    @Test
+    public void testChangedFileIsNotReturned() {
+        SourceCache cache = new SourceCache(10000);
+        cache.put("/src/Foo.java", 20, 1, new Source("Foo.java", "public class Foo {\n}"));
+
+        assertNull(cache.get("/src/Foo.java", 20, 2, "Foo.java"));
+        assertNull(cache.get("/src/Foo.java", 20, 1, "Foo.java"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedIsEvicted() {
+        Source source = new Source("Foo.java", "public class Foo {\n}");
+        SourceCache cache = new SourceCache(0);
+        cache.setMaxBytes(Long.MAX_VALUE);
+        cache.put("/src/A.java", 20, 1, source);
+        long weight = cache.getBytes();
+        cache.setMaxBytes(weight * 2);
+        cache.put("/src/B.java", 20, 1, source);
+        assertNotNull(cache.get("/src/A.java", 20, 1, "A.java"));
+
+        cache.put("/src/C.java", 20, 1, source);
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNotNull(cache.get("/src/A.java", 20, 1, "A.java"));
+        assertNull(cache.get("/src/B.java", 20, 1, "B.java"));
+        assertNotNull(cache.get("/src/C.java", 20, 1, "C.java"));
+    }
+
+    @Test
+    public void testSourceLargerThanBudgetIsNotCached() {
+        SourceCache cache = new SourceCache(100);
+        cache.put("/src/Foo.java", 20, 1, new Source("Foo.java", "public class Foo {\n}"));
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testShrinkingBudgetEvicts() {
+        SourceCache cache = new SourceCache(10000);
+        cache.put("/src/A.java", 20, 1, new Source("A.java", "public class A {\n}"));
+        cache.put("/src/B.java", 20, 1, new Source("B.java", "public class B {\n}"));
+        cache.setMaxBytes(0);
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void testGrowBudget() {
+        SourceCache cache = new SourceCache(10000);
+        cache.put("/src/Foo.java", 20, 1, new Source("Foo.java", "public class Foo {\n}"));
+        cache.growMaxBytes(5000);
+        assertEquals(10000, cache.getMaxBytes());
+        assertEquals(1, cache.getSize());
+        cache.growMaxBytes(20000);
+        assertEquals(20000, cache.getMaxBytes());
+    }
+
+    @Test
+    public void testClear() {
+        SourceCache cache = new SourceCache(10000);
+        cache.put("/src/Foo.java", 20, 1, new Source("Foo.java", "public class Foo {\n}"));
+        cache.clear();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getBytes());
+        assertEquals(10000, cache.getMaxBytes());
+    }
+}
@@ -0,0 +1,131 @@
+package org.eluder.coveralls.maven.plugin.domain;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SourceIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testResolveFiles() throws Exception {
+        File root = folder.newFolder("root");
+        File file = createFile(root, "org/eluder/Foo.java");
+        createFile(root, "Bar.java");
+        SourceIndex index = SourceIndex.build(Arrays.asList(root), 1);
+        assertEquals(2, index.size());
+        assertEquals(file, index.get("org/eluder/Foo.java"));
+        assertEquals(file, index.get("org\\eluder\\Foo.java"));
+        assertNull(index.get("org/eluder"));
+        assertNull(index.get("Baz.java"));
+        assertTrue(index.getDuplicates().isEmpty());
+    }
+
+    @Test
+    public void testDuplicatesAreReportedInResolutionOrder() throws Exception {
+        for (int parallelism : new int[] { 1, 4 }) {
+            File[] roots = new File[6];
+            for (int i = 0; i < roots.length; i++) {
+                roots[i] = folder.newFolder("module" + parallelism + "-" + i);
+                createFile(roots[i], "org/eluder/Module" + i + ".java");
+            }
+            File first = createFile(roots[1], "org/eluder/Shared.java");
+            File second = createFile(roots[4], "org/eluder/Shared.java");
+            SourceIndex index = SourceIndex.build(Arrays.asList(roots), parallelism);
+            assertEquals(7, index.size());
+            assertEquals(first, index.get("org/eluder/Shared.java"));
+            assertEquals(Collections.singletonMap("org/eluder/Shared.java", Arrays.asList(first, second)), index.getDuplicates());
+        }
+    }
+
+    @Test
+    public void testEmptySourceDirectories() throws Exception {
+        SourceIndex index = SourceIndex.build(Collections.<File>emptyList(), 4);
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void testLoadWithIndex() throws Exception {
+        File root1 = folder.newFolder("root1");
+        File root2 = folder.newFolder("root2");
+        createFile(root2, "org/eluder/Foo.java");
+        List<File> roots = Arrays.asList(root1, root2);
+        SourceLoader loader = new SourceLoader(roots, "UTF-8").withSourceIndex(SourceIndex.build(roots, 2));
+        assertEquals("org/eluder/Foo.java", loader.load("org/eluder/Foo.java").getName());
+    }
+
+    @Test
+    public void testResolveNormalizedPaths() throws Exception {
+        File root = folder.newFolder("root");
+        File foo = createFile(root, "org/eluder/Foo.java");
+        File bar = createFile(root, "Bar.java");
+        SourceIndex index = SourceIndex.build(Arrays.asList(root), 1);
+        assertEquals(bar, index.get("/Bar.java"));
+        assertEquals(bar, index.get("./Bar.java"));
+        assertEquals(foo, index.get("org//eluder/Foo.java"));
+        assertEquals(foo, index.get("\\org\\eluder\\Foo.java"));
+    }
+
+    @Test
+    public void testLoadDefaultPackageJaCoCoSourceWithIndex() throws Exception {
+        File root = folder.newFolder("root");
+        createFile(root, "Bar.java");
+        List<File> roots = Arrays.asList(root);
+        SourceLoader loader = new SourceLoader(roots, "UTF-8").withSourceIndex(SourceIndex.build(roots, 1));
+        assertEquals("/Bar.java", loader.load("/Bar.java").getName());
+    }
+
+    @Test
+    public void testLoadFallsBackToSourceDirectoriesWithoutIndexedFile() throws Exception {
+        File root = folder.newFolder("root");
+        List<File> roots = Arrays.asList(root);
+        SourceLoader loader = new SourceLoader(roots, "UTF-8").withSourceIndex(SourceIndex.build(roots, 1));
+        createFile(root, "org/eluder/Late.java");
+        assertEquals("org/eluder/Late.java", loader.load("org/eluder/Late.java").getName());
+    }
+
+    private static File createFile(final File root, final String path) throws Exception {
+        File file = new File(root, path);
+        file.getParentFile().mkdirs();
+        TestIoUtil.writeFileContent("class " + file.getName() + " {\n}\n", file);
+        return file;
+    }
+}
@@ -27,14 +27,19 @@ package org.eluder.coveralls.maven.plugin.domain;
  */
 
 import static org.junit.Assert.*;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 
+import org.codehaus.plexus.util.IOUtil;
 import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
 import org.junit.Rule;
 import org.junit.Test;
@@ -52,6 +57,9 @@ public class SourceLoaderTest {
     @Mock
     private File fileMock;
 
+    @Mock
+    private SourceFetcher sourceFetcherMock;
+
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
     
@@ -110,6 +118,49 @@ public class SourceLoaderTest {
         assertEquals(4, source.getCoverage().length);
     }
 
+    @Test
+    public void testLoadLargeSource() throws Exception {
+        File file = folder.newFile();
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            content.append("var a").append(i).append(" = '\u00e4';").append(i % 2 == 0 ? "\r\n" : "\r");
+        }
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.toString().getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(output);
+        }
+        Source source = new SourceLoader(Arrays.asList(folder.getRoot()), new ArrayList<URL>(), "UTF-8").load(file.getName());
+        assertEquals(content.toString().replace("\r\n", "\n").replace('\r', '\n'), source.getSource());
+        assertEquals(20001, source.getCoverage().length);
+    }
+
+    @Test
+    public void testLoadSourceDigest() throws Exception {
+        File file = folder.newFile();
+        TestIoUtil.writeFileContent("public class Foo {\r\n    \n}\r", file);
+        Source source = new SourceLoader(Arrays.asList(folder.getRoot()), new ArrayList<URL>(), "UTF-8").withSourceDigest(true).load(file.getName());
+        assertEquals(file.getName(), source.getName());
+        assertNull(source.getSource());
+        assertEquals("2ac359c9a152fd7cd79c4eb147069224", source.getDigest());
+        assertEquals(4, source.getCoverage().length);
+    }
+
+    @Test
+    public void testLoadSourceDigestWithMultiByteEncoding() throws Exception {
+        File file = folder.newFile();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write("a\r\nb\rc\n".getBytes("UTF-16BE"));
+        } finally {
+            IOUtil.close(output);
+        }
+        Source source = new SourceLoader(Arrays.asList(folder.getRoot()), new ArrayList<URL>(), "UTF-16BE").withSourceDigest(true).load(file.getName());
+        assertEquals(32, source.getDigest().length());
+        assertEquals(4, source.getCoverage().length);
+    }
+
     @Test
     public void testLoadSourceFromUrl() throws IOException {
         String fileName = "scripts/file.coffee";
@@ -125,4 +176,162 @@ public class SourceLoaderTest {
         assertEquals("math =\n  root:   Math.sqrt\n  square: square", source.getSource());
         assertEquals(3, source.getCoverage().length);
     }
+
+    @Test
+    public void testLoadSourceFromSourceFetcher() throws IOException {
+        URL sourceUrl = new URL("http://localhost/sources/");
+        when(sourceFetcherMock.fetch("Foo.java")).thenReturn("public class Foo {\r\n}".getBytes("UTF-8"));
+
+        Source source = new SourceLoader(null, Arrays.asList(sourceUrl), "UTF-8").withSourceFetcher(sourceFetcherMock).load("Foo.java");
+
+        assertEquals("Foo.java", source.getName());
+        assertEquals("public class Foo {\n}", source.getSource());
+        assertEquals(2, source.getCoverage().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSourceFileFromSourceFetcher() throws IOException {
+        URL sourceUrl = new URL("http://localhost/sources/");
+        new SourceLoader(null, Arrays.asList(sourceUrl), "UTF-8").withSourceFetcher(sourceFetcherMock).load("Foo.java");
+    }
+
+    @Test
+    public void testPrefetchSkipsSourceDirectories() throws IOException {
+        TestIoUtil.writeFileContent("public class Foo {\n}", folder.newFile("Foo.java"));
+        URL sourceUrl = new URL("http://localhost/sources/");
+        when(sourceFetcherMock.prefetch("Bar.java")).thenReturn(false);
+
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(folder.getRoot()), Arrays.asList(sourceUrl), "UTF-8").withSourceFetcher(sourceFetcherMock);
+
+        assertTrue(sourceLoader.prefetch("Foo.java"));
+        assertFalse(sourceLoader.prefetch("Bar.java"));
+        verify(sourceFetcherMock).prefetch("Bar.java");
+    }
+
+    @Test
+    public void testPrefetchWithoutSourceFetcher() throws IOException {
+        assertTrue(new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").prefetch("Foo.java"));
+    }
+
+    @Test
+    public void testCloseClosesSourceFetcher() throws IOException {
+        ClosingSourceFetcher sourceFetcher = new ClosingSourceFetcher();
+        new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceFetcher(sourceFetcher).close();
+        assertTrue(sourceFetcher.closed);
+    }
+
+    @Test
+    public void testCloseWithoutCloseableSourceFetcher() throws IOException {
+        new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceFetcher(sourceFetcherMock).close();
+        verifyZeroInteractions(sourceFetcherMock);
+    }
+
+    @Test
+    public void testCoverageLoaderLoadsWithoutContent() throws IOException {
+        TestIoUtil.writeFileContent("public class Foo {\r\n}", folder.newFile("Foo.java"));
+        SourceLoader coverageLoader = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").createCoverageLoader();
+
+        Source source = coverageLoader.load("Foo.java");
+
+        assertNull(source.getSource());
+        assertNotNull(source.getDigest());
+        assertEquals(2, source.getCoverage().length);
+    }
+
+    @Test
+    public void testCoverageLoaderDoesNotCloseSharedSourceFetcher() throws IOException {
+        ClosingSourceFetcher sourceFetcher = new ClosingSourceFetcher();
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceFetcher(sourceFetcher);
+        sourceLoader.createCoverageLoader().close();
+        assertFalse(sourceFetcher.closed);
+        sourceLoader.close();
+        assertTrue(sourceFetcher.closed);
+    }
+
+    @Test
+    public void testLoadSourceFromCache() throws IOException {
+        File file = folder.newFile("Foo.java");
+        TestIoUtil.writeFileContent("public class Foo {\r\n}", file);
+        SourceCache cache = new SourceCache(10000);
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceCache(cache);
+
+        Source first = sourceLoader.load("Foo.java");
+        first.addCoverage(1, 1);
+        Source second = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceCache(cache).load("Foo.java");
+
+        assertNotSame(first, second);
+        assertEquals("public class Foo {\n}", second.getSource());
+        assertEquals(Source.NOT_RELEVANT, second.getCoverage()[0]);
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testChangedSourceIsReloadedFromFile() throws IOException {
+        File file = folder.newFile("Foo.java");
+        TestIoUtil.writeFileContent("public class Foo {\n}", file);
+        SourceCache cache = new SourceCache(10000);
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceCache(cache);
+        sourceLoader.load("Foo.java");
+
+        TestIoUtil.writeFileContent("public class Foo {\n\n}", file);
+        file.setLastModified(file.lastModified() - 10000);
+
+        assertEquals("public class Foo {\n\n}", sourceLoader.load("Foo.java").getSource());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testCacheSeparatesDigestSources() throws IOException {
+        TestIoUtil.writeFileContent("public class Foo {\n}", folder.newFile("Foo.java"));
+        SourceCache cache = new SourceCache(10000);
+        new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceCache(cache).load("Foo.java");
+
+        Source source = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceCache(cache).withSourceDigest(true).load("Foo.java");
+
+        assertNull(source.getSource());
+        assertNotNull(source.getDigest());
+        assertEquals(2, cache.getSize());
+    }
+
+    @Test
+    public void testLoadSourceFromPersistentCache() throws IOException {
+        TestIoUtil.writeFileContent("public class Foo {\r\n}", folder.newFile("Foo.java"));
+        File cacheFile = new File(folder.newFolder("target"), "sources.cache");
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8")
+                .withPersistentSourceCache(PersistentSourceCache.open(cacheFile, "UTF-8"));
+        Source loaded = sourceLoader.load("Foo.java");
+        sourceLoader.close();
+
+        PersistentSourceCache cache = PersistentSourceCache.open(cacheFile, "UTF-8");
+        Source cached = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withPersistentSourceCache(cache).load("Foo.java");
+        Source digest = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withPersistentSourceCache(cache).withSourceDigest(true).load("Foo.java");
+        Source expectedDigest = new SourceLoader(Arrays.asList(folder.getRoot()), "UTF-8").withSourceDigest(true).load("Foo.java");
+
+        assertEquals(2, cache.getHits());
+        assertNotNull(cached.getUtf8Source());
+        assertEquals(loaded.getSource(), cached.getSource());
+        assertEquals(loaded.getCoverage().length, cached.getCoverage().length);
+        assertEquals(expectedDigest.getDigest(), digest.getDigest());
+    }
+
+    private static class ClosingSourceFetcher implements SourceFetcher, Closeable {
+
+        private boolean closed;
+
+        @Override
+        public boolean prefetch(final String sourceFile) {
+            return true;
+        }
+
+        @Override
+        public byte[] fetch(final String sourceFile) {
+            return null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
 }
@@ -26,7 +26,9 @@ package org.eluder.coveralls.maven.plugin.domain;
  * %[license]
  */
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Test;
 
@@ -39,4 +41,33 @@ public class SourceTest {
         assertEquals("src/main/java/Hello.java", source.getName());
         assertEquals("src/main/java/Hello.java$Inner", source.getFullName());
     }
+
+    @Test
+    public void testAddCoverage() throws Exception {
+        Source source = new Source("src/main/java/Hello.java", "public class Hello {\r\n    \r}\n");
+        source.addCoverage(1, 3);
+        source.addCoverage(3, 0);
+        assertArrayEquals(new int[] { 3, Source.NOT_RELEVANT, 0, Source.NOT_RELEVANT }, source.getCoverage());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNegativeCoverage() throws Exception {
+        new Source("src/main/java/Hello.java", "public class Hello { }").addCoverage(1, -1);
+    }
+
+    @Test
+    public void testLfOnlySourceIsNotCopied() throws Exception {
+        String content = "public class Hello {\n    \n}\n";
+        Source source = new Source("src/main/java/Hello.java", content);
+        assertSame(content, source.getSource());
+        assertEquals(4, source.getCoverage().length);
+    }
+
+    @Test
+    public void testFromChars() throws Exception {
+        char[] chars = "a\r\nb\rc\n\r\nd\r".toCharArray();
+        Source source = Source.fromChars("a.js", chars, chars.length - 1);
+        assertEquals("a\nb\nc\n\nd", source.getSource());
+        assertEquals(5, source.getCoverage().length);
+    }
 }
@@ -31,9 +31,15 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.HttpEntity;
@@ -41,8 +47,10 @@ import org.apache.http.HttpResponse;
 import org.apache.http.HttpVersion;
 import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.message.BasicStatusLine;
+import org.codehaus.plexus.util.IOUtil;
 import org.eluder.coveralls.maven.plugin.ProcessingException;
 import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
 import org.junit.Before;
@@ -51,7 +59,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
+import org.mockito.invocation.InvocationOnMock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CoverallsClientTest {
@@ -123,6 +133,130 @@ public class CoverallsClientTest {
         client.submit(file);
     }
     
+    @Test
+    public void testSubmitCompressed() throws Exception {
+        File compressed = compressedFile("{\"source_files\":[]}");
+        final List<String> bodies = new ArrayList<String>();
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(recordBody(bodies));
+        when(httpResponseMock.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(coverallsResponse(new CoverallsResponse("success", false, "")));
+        CoverallsClient client = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper());
+        client.submit(compressed);
+        
+        assertEquals(1, bodies.size());
+        assertTrue(bodies.get(0).contains("filename=\"coveralls.json.gz\""));
+        assertFalse(bodies.get(0).contains("source_files"));
+    }
+    
+    @Test
+    public void testSubmitCompressedFallsBackToUncompressed() throws Exception {
+        File compressed = compressedFile("{\"source_files\":[]}");
+        final List<String> bodies = new ArrayList<String>();
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(recordBody(bodies));
+        when(httpResponseMock.getStatusLine()).thenReturn(
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 415, "Unsupported Media Type"),
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(coverallsResponse(new CoverallsResponse("success", false, "")));
+        CoverallsClient client = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper());
+        client.submit(compressed);
+        
+        assertEquals(2, bodies.size());
+        assertTrue(bodies.get(1).contains("filename=\"coveralls.json\""));
+        assertTrue(bodies.get(1).contains("{\"source_files\":[]}"));
+    }
+    
+    @Test
+    public void testSubmitCompressedFallsBackWhenErrorNamesEncoding() throws Exception {
+        File compressed = compressedFile("{\"source_files\":[]}");
+        final List<String> bodies = new ArrayList<String>();
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(recordBody(bodies));
+        when(httpResponseMock.getStatusLine()).thenReturn(
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 400, "Bad Request"),
+                new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(
+                new ByteArrayInputStream("Unsupported gzip encoding".getBytes()),
+                coverallsResponse(new CoverallsResponse("success", false, "")));
+        CoverallsClient client = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper());
+        client.submit(compressed);
+        
+        assertEquals(2, bodies.size());
+        assertTrue(bodies.get(1).contains("filename=\"coveralls.json\""));
+    }
+    
+    @Test
+    public void testSubmitCompressedDoesNotRetryOtherErrors() throws Exception {
+        File compressed = compressedFile("{\"source_files\":[]}");
+        final List<String> bodies = new ArrayList<String>();
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(recordBody(bodies));
+        when(httpResponseMock.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 422, "Unprocessable Entity"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(coverallsResponse(new CoverallsResponse("Couldn't find a repository matching this job.", true, "")));
+        CoverallsClient client = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper());
+        try {
+            client.submit(compressed);
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertTrue(ex.getMessage().contains("422"));
+            assertTrue(ex.getMessage().contains("Couldn't find a repository matching this job."));
+        }
+        
+        assertEquals(1, bodies.size());
+        assertTrue(bodies.get(0).contains("filename=\"coveralls.json.gz\""));
+    }
+    
+    @Test
+    public void testSubmitStreaming() throws Exception {
+        final List<String> bodies = new ArrayList<String>();
+        final List<Boolean> chunked = new ArrayList<Boolean>();
+        when(httpClientMock.execute(any(HttpUriRequest.class))).then(new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                chunked.add(((HttpPost) invocation.getArguments()[0]).getEntity().isChunked());
+                return recordBody(bodies).answer(invocation);
+            }
+        });
+        when(httpResponseMock.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+        when(httpResponseMock.getEntity()).thenReturn(httpEntityMock);
+        when(httpEntityMock.getContent()).thenReturn(coverallsResponse(new CoverallsResponse("success", false, "")));
+        CoverallsClient client = new CoverallsClient("http://test.com/coveralls", httpClientMock, new ObjectMapper());
+        StreamingSubmission submission = client.submitStreaming();
+        submission.getOutputStream().write("{\"source_files\":[]}".getBytes("UTF-8"));
+        submission.getOutputStream().close();
+        
+        assertEquals("success", submission.finish().getMessage());
+        assertEquals(1, bodies.size());
+        assertTrue(chunked.get(0));
+        assertTrue(bodies.get(0).contains("filename=\"coveralls.json\""));
+        assertTrue(bodies.get(0).contains("{\"source_files\":[]}"));
+    }
+    
+    private File compressedFile(final String content) throws IOException {
+        File compressed = folder.newFile("coveralls.json.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed));
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(out);
+        }
+        return compressed;
+    }
+    
+    private Answer<HttpResponse> recordBody(final List<String> bodies) {
+        return new Answer<HttpResponse>() {
+            @Override
+            public HttpResponse answer(final InvocationOnMock invocation) throws Throwable {
+                HttpPost post = (HttpPost) invocation.getArguments()[0];
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                post.getEntity().writeTo(body);
+                bodies.add(new String(body.toByteArray(), "ISO-8859-1"));
+                return httpResponseMock;
+            }
+        };
+    }
+    
     private InputStream coverallsResponse(final CoverallsResponse coverallsResponse) throws Exception {
         String content = new ObjectMapper().writeValueAsString(coverallsResponse);
         return new ByteArrayInputStream(content.getBytes());
@@ -0,0 +1,359 @@
+package org.eluder.coveralls.maven.plugin.httpclient;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HttpSourceFetcherTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private SourceHandler mirror;
+    private SourceHandler primary;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        primary = new SourceHandler("/primary/");
+        mirror = new SourceHandler("/mirror/");
+        server.createContext("/primary/", primary);
+        server.createContext("/mirror/", mirror);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    @After
+    public void destroy() {
+        server.stop(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingSourceUrls() {
+        new HttpSourceFetcher(Collections.<URL>emptyList(), null, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidConnections() throws IOException {
+        new HttpSourceFetcher(Arrays.asList(url("/primary/")), null, 0);
+    }
+
+    @Test
+    public void testFetchFromFirstSourceUrl() throws IOException {
+        primary.sources.put("Foo.java", "class Foo {}");
+        mirror.sources.put("Foo.java", "class Mirror {}");
+        HttpSourceFetcher fetcher = createFetcher(null);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(0, mirror.requests.get());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testFetchFromMirrorCachesNotFound() throws IOException {
+        mirror.sources.put("Foo.java", "class Foo {}");
+        HttpSourceFetcher fetcher = createFetcher(null);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(1, primary.requests.get());
+            assertEquals(2, mirror.requests.get());
+            assertEquals(1, fetcher.getNotFound());
+            assertEquals(3, fetcher.getRequests());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testFetchMissingSource() throws IOException {
+        HttpSourceFetcher fetcher = createFetcher(null);
+        try {
+            assertNull(fetcher.fetch("Foo.java"));
+            assertNull(fetcher.fetch("Foo.java"));
+            assertEquals(1, primary.requests.get());
+            assertEquals(1, mirror.requests.get());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testFetchFailureIsReported() throws IOException {
+        primary.status = 500;
+        HttpSourceFetcher fetcher = createFetcher(null);
+        try {
+            fetcher.fetch("Foo.java");
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage().contains("500"));
+            assertTrue(ex.getMessage().contains("/primary/Foo.java"));
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testFetchFailureIsIgnoredWhenFoundFromOtherUrl() throws IOException {
+        primary.status = 503;
+        mirror.sources.put("Foo.java", "class Foo {}");
+        HttpSourceFetcher fetcher = createFetcher(null);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(0, fetcher.getNotFound());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testSlowSourceUrlTimesOut() throws IOException {
+        primary.sources.put("Foo.java", "class Foo {}");
+        primary.delay = 2000;
+        HttpSourceFetcher fetcher = new HttpSourceFetcher(Arrays.asList(url("/primary/")), null, 1, 200);
+        long now = System.currentTimeMillis();
+        try {
+            fetcher.fetch("Foo.java");
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertTrue(System.currentTimeMillis() - now < 2000);
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchConcurrently() throws Exception {
+        primary.latch = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            primary.sources.put("Foo" + i + ".java", "class Foo" + i + " {}");
+        }
+        HttpSourceFetcher fetcher = new HttpSourceFetcher(Arrays.asList(url("/primary/")), null, 4);
+        try {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(fetcher.prefetch("Foo" + i + ".java"));
+            }
+            for (int i = 0; i < 4; i++) {
+                assertEquals("class Foo" + i + " {}", new String(fetcher.fetch("Foo" + i + ".java"), "UTF-8"));
+            }
+            assertEquals(4, primary.requests.get());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchWindowIsBounded() throws Exception {
+        HttpSourceFetcher fetcher = new HttpSourceFetcher(Arrays.asList(url("/primary/")), null, 1);
+        try {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(fetcher.prefetch("Foo" + i + ".java"));
+            }
+            assertTrue(fetcher.prefetch("Foo0.java"));
+            assertFalse(fetcher.prefetch("Foo4.java"));
+            assertNull(fetcher.fetch("Foo0.java"));
+            assertTrue(fetcher.prefetch("Foo4.java"));
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testCachedSourceIsRevalidatedWithETag() throws IOException {
+        File cacheDirectory = new File(folder.getRoot(), "cache");
+        primary.sources.put("Foo.java", "class Foo {}");
+        primary.etag = "\"v1\"";
+        HttpSourceFetcher fetcher = createFetcher(cacheDirectory);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(0, fetcher.getCacheHits());
+        } finally {
+            fetcher.close();
+        }
+
+        fetcher = createFetcher(cacheDirectory);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(1, fetcher.getCacheHits());
+            assertEquals(1, primary.notModified.get());
+        } finally {
+            fetcher.close();
+        }
+
+        primary.sources.put("Foo.java", "class Bar {}");
+        primary.etag = "\"v2\"";
+        fetcher = createFetcher(cacheDirectory);
+        try {
+            assertEquals("class Bar {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertEquals(0, fetcher.getCacheHits());
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    @Test
+    public void testCachedSourceIsRevalidatedWithLastModified() throws IOException {
+        File cacheDirectory = new File(folder.getRoot(), "cache");
+        primary.sources.put("Foo.java", "class Foo {}");
+        primary.lastModified = "Thu, 01 Jan 2015 00:00:00 GMT";
+        for (int i = 0; i < 2; i++) {
+            HttpSourceFetcher fetcher = createFetcher(cacheDirectory);
+            try {
+                assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+                assertEquals(i, fetcher.getCacheHits());
+            } finally {
+                fetcher.close();
+            }
+        }
+        assertEquals(1, primary.notModified.get());
+    }
+
+    @Test
+    public void testSourceWithoutValidatorsIsNotCached() throws IOException {
+        File cacheDirectory = new File(folder.getRoot(), "cache");
+        primary.sources.put("Foo.java", "class Foo {}");
+        HttpSourceFetcher fetcher = createFetcher(cacheDirectory);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+        } finally {
+            fetcher.close();
+        }
+        assertFalse(cacheDirectory.exists());
+    }
+
+    @Test
+    public void testFetchFromFileUrl() throws IOException {
+        TestIoUtil.writeFileContent("class Foo {}", folder.newFile("Foo.java"));
+        HttpSourceFetcher fetcher = new HttpSourceFetcher(Arrays.asList(url("/primary/"), folder.getRoot().toURI().toURL()), null, 1);
+        try {
+            assertEquals("class Foo {}", new String(fetcher.fetch("Foo.java"), "UTF-8"));
+            assertNull(fetcher.fetch("Bar.java"));
+        } finally {
+            fetcher.close();
+        }
+    }
+
+    private HttpSourceFetcher createFetcher(final File cacheDirectory) throws IOException {
+        return new HttpSourceFetcher(Arrays.asList(url("/primary/"), url("/mirror/")), cacheDirectory, 2);
+    }
+
+    private URL url(final String path) throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static class SourceHandler implements HttpHandler {
+
+        private final String context;
+        private final ConcurrentMap<String, String> sources = new ConcurrentHashMap<String, String>();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger notModified = new AtomicInteger();
+        private volatile int status = 200;
+        private volatile long delay;
+        private volatile String etag;
+        private volatile String lastModified;
+        private volatile CountDownLatch latch;
+
+        SourceHandler(final String context) {
+            this.context = context;
+        }
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                await();
+                String source = sources.get(exchange.getRequestURI().getPath().substring(context.length()));
+                if (status != 200) {
+                    exchange.sendResponseHeaders(status, -1);
+                } else if (source == null) {
+                    exchange.sendResponseHeaders(404, -1);
+                } else if ((etag != null && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match")))
+                        || (lastModified != null && lastModified.equals(exchange.getRequestHeaders().getFirst("If-Modified-Since")))) {
+                    notModified.incrementAndGet();
+                    exchange.sendResponseHeaders(304, -1);
+                } else {
+                    byte[] content = source.getBytes("UTF-8");
+                    if (etag != null) {
+                        exchange.getResponseHeaders().set("ETag", etag);
+                    }
+                    if (lastModified != null) {
+                        exchange.getResponseHeaders().set("Last-Modified", lastModified);
+                    }
+                    exchange.sendResponseHeaders(200, content.length);
+                    OutputStream body = exchange.getResponseBody();
+                    body.write(content);
+                    body.close();
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void await() throws IOException {
+            try {
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+                if (latch != null) {
+                    latch.countDown();
+                    latch.await(5, TimeUnit.SECONDS);
+                }
+            } catch (InterruptedException ex) {
+                throw new IOException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package org.eluder.coveralls.maven.plugin.httpclient;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
+import org.eluder.coveralls.maven.plugin.domain.Job;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.json.JobPartitioner;
+import org.eluder.coveralls.maven.plugin.json.JsonWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class ParallelJobsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private HttpServer server;
+    private JobsHandler jobs;
+    private WebhookHandler webhook;
+    private String baseUrl;
+    private CoverallsClient client;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        jobs = new JobsHandler();
+        webhook = new WebhookHandler();
+        server.createContext("/api/v1/jobs", jobs);
+        server.createContext("/webhook", webhook);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://localhost:" + server.getAddress().getPort();
+        client = new CoverallsClient(baseUrl + "/api/v1/jobs");
+    }
+
+    @After
+    public void destroy() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSubmitParallelJobs() throws Exception {
+        List<File> partitions = new JobPartitioner(5).split(writeCoverallsFile(40));
+        List<CoverallsResponse> responses = client.submitParallel(partitions, 2);
+
+        assertEquals(5, responses.size());
+        assertEquals(5, jobs.bodies.size());
+        assertEquals(2, jobs.maxActive.get());
+        Set<String> flags = new HashSet<String>();
+        Set<String> names = new HashSet<String>();
+        for (JsonNode body : jobs.bodies) {
+            assertEquals("token", body.get("repo_token").asText());
+            assertEquals("build5", body.get("service_number").asText());
+            assertTrue(body.get("parallel").asBoolean());
+            flags.add(body.get("flag_name").asText());
+            for (JsonNode source : body.get("source_files")) {
+                names.add(source.get("name").asText());
+            }
+        }
+        assertEquals(5, flags.size());
+        assertEquals(40, names.size());
+
+        CoverallsResponse response = client.completeParallelBuild(baseUrl + "/webhook", "token", "build5");
+
+        assertEquals("Build completed", response.getMessage());
+        assertEquals("repo_token=token", webhook.query);
+        assertEquals("{\"payload\":{\"build_num\":\"build5\",\"status\":\"done\"}}", webhook.body);
+    }
+
+    @Test
+    public void testSubmitParallelJobsFailure() throws Exception {
+        jobs.failures.set(1);
+        List<File> partitions = new JobPartitioner(3).split(writeCoverallsFile(10));
+        try {
+            client.submitParallel(partitions, 3);
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertTrue(ex.getMessage().contains("422"));
+        }
+        assertEquals(3, jobs.requests.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSubmitParallelInvalidConcurrency() throws Exception {
+        client.submitParallel(Collections.<File>emptyList(), 0);
+    }
+
+    @Test
+    public void testCompleteParallelBuildWithoutToken() throws Exception {
+        client.completeParallelBuild(baseUrl + "/webhook", null, "10");
+        assertEquals(null, webhook.query);
+        assertEquals("{\"payload\":{\"build_num\":\"10\",\"status\":\"done\"}}", webhook.body);
+    }
+
+    private File writeCoverallsFile(final int sources) throws Exception {
+        File file = new File(folder.newFolder(), "coveralls.json");
+        JsonWriter writer = new JsonWriter(new Job().withRepoToken("token").withServiceBuildNumber("build5"), file);
+        try {
+            writer.writeStart();
+            for (int i = 0; i < sources; i++) {
+                StringBuilder content = new StringBuilder();
+                for (int line = 0; line <= i; line++) {
+                    content.append("line ").append(line).append('\n');
+                }
+                Source source = new Source("Source" + i + ".java", content.toString());
+                source.addCoverage(1, i);
+                writer.onSource(source);
+            }
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+
+    private static String read(final InputStream input) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int n;
+        while ((n = input.read(buffer)) != -1) {
+            body.write(buffer, 0, n);
+        }
+        return body.toString("UTF-8");
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final String response) throws IOException {
+        byte[] bytes = response.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private class JobsHandler implements HttpHandler {
+
+        private final List<JsonNode> bodies = new CopyOnWriteArrayList<JsonNode>();
+        private final AtomicInteger active = new AtomicInteger();
+        private final AtomicInteger maxActive = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            int current = active.incrementAndGet();
+            try {
+                int max = maxActive.get();
+                while (current > max && !maxActive.compareAndSet(max, current)) {
+                    max = maxActive.get();
+                }
+                int request = requests.incrementAndGet();
+                String boundary = exchange.getRequestHeaders().getFirst("Content-Type").replaceFirst(".*boundary=", "");
+                String body = read(exchange.getRequestBody());
+                int start = body.indexOf("\r\n\r\n") + 4;
+                int end = body.indexOf("\r\n--" + boundary + "--");
+                bodies.add(mapper.readTree(body.substring(start, end)));
+                Thread.sleep(200);
+                if (failures.getAndDecrement() > 0) {
+                    respond(exchange, 422, "{\"message\":\"Invalid job\",\"error\":true}");
+                } else {
+                    respond(exchange, 200, "{\"message\":\"Job #5." + request + "\",\"error\":false,\"url\":\"https://coveralls.io/jobs/" + request + "\"}");
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+                exchange.close();
+            }
+        }
+    }
+
+    private static class WebhookHandler implements HttpHandler {
+
+        private volatile String query;
+        private volatile String body;
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                query = exchange.getRequestURI().getRawQuery();
+                body = read(exchange.getRequestBody());
+                respond(exchange, 200, "{\"message\":\"Build completed\",\"error\":false,\"url\":\"https://coveralls.io/builds/5\"}");
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
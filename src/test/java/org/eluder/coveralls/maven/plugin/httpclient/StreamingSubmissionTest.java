@@ -0,0 +1,277 @@
+package org.eluder.coveralls.maven.plugin.httpclient;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.eluder.coveralls.maven.plugin.domain.CoverallsResponse;
+import org.eluder.coveralls.maven.plugin.domain.Job;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.json.JsonWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class StreamingSubmissionTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private SubmissionHandler handler;
+    private CoverallsClient client;
+
+    @Before
+    public void init() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        handler = new SubmissionHandler();
+        server.createContext("/api/v1/jobs", handler);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        client = new CoverallsClient("http://localhost:" + server.getAddress().getPort() + "/api/v1/jobs");
+    }
+
+    @After
+    public void destroy() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testSubmitWhileWriting() throws Exception {
+        File tee = folder.newFile();
+        StreamingSubmission submission = client.submitStreaming();
+        JsonWriter writer = new JsonWriter(new Job().withRepoToken("token"), tee, submission.getOutputStream());
+        try {
+            writer.writeStart();
+            writeSources(writer, 0, 2000);
+            assertTrue("data was not sent while writing", handler.received.await(10, TimeUnit.SECONDS));
+            writeSources(writer, 2000, 4000);
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        CoverallsResponse response = submission.finish();
+
+        assertEquals("Job #1.1", response.getMessage());
+        assertNull(handler.failure);
+        assertEquals("chunked", handler.transferEncoding);
+        assertEquals("form-data; name=\"json_file\"; filename=\"coveralls.json\"", handler.disposition);
+        assertArrayEquals(readFile(tee), handler.content);
+        String json = new String(handler.content, "UTF-8");
+        assertTrue(json.startsWith("{\"repo_token\":\"token\",\"source_files\":[{\"name\":\"Source0.java\""));
+        assertTrue(json.endsWith("\"name\":\"Source3999.java\",\"source\":\"public class Source3999 {}\",\"coverage\":[1]}]}"));
+    }
+
+    @Test
+    public void testSubmitWithoutTee() throws Exception {
+        StreamingSubmission submission = client.submitStreaming();
+        JsonWriter writer = new JsonWriter(new Job(), null, submission.getOutputStream());
+        try {
+            writer.writeStart();
+            writeSources(writer, 0, 1);
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        assertEquals("Job #1.1", submission.finish().getMessage());
+        assertEquals("{\"source_files\":[{\"name\":\"Source0.java\",\"source\":\"public class Source0 {}\",\"coverage\":[1]}]}", new String(handler.content, "UTF-8"));
+    }
+
+    @Test
+    public void testAbortDoesNotCompleteSubmission() throws Exception {
+        StreamingSubmission submission = client.submitStreaming();
+        JsonWriter writer = new JsonWriter(new Job(), null, submission.getOutputStream());
+        try {
+            writer.writeStart();
+            writeSources(writer, 0, 2000);
+            assertTrue(handler.received.await(10, TimeUnit.SECONDS));
+        } finally {
+            writer.close();
+        }
+        submission.abort();
+
+        assertTrue(handler.done.await(10, TimeUnit.SECONDS));
+        assertNull(handler.content);
+        assertNotNull(handler.failure);
+        try {
+            submission.finish();
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        handler.response = "{\"message\":\"Couldn't find a repository matching this job.\",\"error\":true}";
+        handler.status = 422;
+        StreamingSubmission submission = client.submitStreaming();
+        JsonWriter writer = new JsonWriter(new Job(), null, submission.getOutputStream());
+        try {
+            writer.writeStart();
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        try {
+            submission.finish();
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertTrue(ex.getMessage().contains("422"));
+        }
+    }
+
+    @Test
+    public void testWriteFailsWhenSubmissionEnds() throws Exception {
+        server.stop(0);
+        StreamingSubmission submission = client.submitStreaming();
+        OutputStream output = submission.getOutputStream();
+        try {
+            for (int i = 0; i < 10000; i++) {
+                output.write(new byte[1024]);
+            }
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertNotNull(ex.getCause());
+        } finally {
+            submission.abort();
+        }
+    }
+
+    private static void writeSources(final JsonWriter writer, final int from, final int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            Source source = new Source("Source" + i + ".java", "public class Source" + i + " {}");
+            source.addCoverage(1, 1);
+            writer.onSource(source);
+        }
+    }
+
+    private static byte[] readFile(final File file) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            return IOUtil.toByteArray(stream);
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private static int indexOf(final byte[] data, final byte[] pattern, final int from) {
+        for (int i = from; i <= data.length - pattern.length; i++) {
+            if (Arrays.equals(Arrays.copyOfRange(data, i, i + pattern.length), pattern)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static class SubmissionHandler implements HttpHandler {
+
+        private final CountDownLatch received = new CountDownLatch(1);
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile String response = "{\"message\":\"Job #1.1\",\"error\":false,\"url\":\"https://coveralls.io/jobs/1\"}";
+        private volatile int status = 200;
+        private volatile String transferEncoding;
+        private volatile String disposition;
+        private volatile byte[] content;
+        private volatile IOException failure;
+
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-Encoding");
+                String boundary = exchange.getRequestHeaders().getFirst("Content-Type").replaceFirst(".*boundary=", "");
+                byte[] body = readBody(exchange.getRequestBody());
+                parseMultipart(body, boundary);
+                byte[] bytes = response.getBytes("UTF-8");
+                exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+                exchange.sendResponseHeaders(status, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            } catch (IOException ex) {
+                failure = ex;
+            } finally {
+                exchange.close();
+                done.countDown();
+            }
+        }
+
+        private byte[] readBody(final InputStream input) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = input.read(buffer)) != -1) {
+                body.write(buffer, 0, n);
+                received.countDown();
+            }
+            return body.toByteArray();
+        }
+
+        private void parseMultipart(final byte[] body, final String boundary) throws IOException {
+            byte[] delimiter = ("--" + boundary + "\r\n").getBytes("US-ASCII");
+            byte[] separator = "\r\n\r\n".getBytes("US-ASCII");
+            byte[] end = ("\r\n--" + boundary + "--").getBytes("US-ASCII");
+            int start = indexOf(body, delimiter, 0);
+            int headers = indexOf(body, separator, start);
+            int tail = indexOf(body, end, headers);
+            if (start != 0 || headers < 0 || tail < 0) {
+                throw new IOException("Invalid multipart body");
+            }
+            for (String header : new String(body, start + delimiter.length, headers - start - delimiter.length, "US-ASCII").split("\r\n")) {
+                if (header.startsWith("Content-Disposition: ")) {
+                    disposition = header.substring("Content-Disposition: ".length());
+                }
+            }
+            content = Arrays.copyOfRange(body, headers + separator.length, tail);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.model.Build;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.jacoco.core.data.ExecutionDataWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JaCoCoAggregateMojoTest {
+
+    private static final String SAMPLE_PACKAGE = "org/eluder/coverage/sample/";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExecutionDataIsAnalyzedWithModuleClasses() throws Exception {
+        // both modules are analyzed, but only the first module has execution data
+        MavenProject covered = createModule("covered", TestIoUtil.getFile("jacoco.exec"), "SimpleCoverage");
+        MavenProject uncovered = createModule("uncovered", null, "InnerClassCoverage", "InnerClassCoverage$1", "InnerClassCoverage$InnerClass");
+        MavenProject parent = mock(MavenProject.class);
+        when(parent.getPackaging()).thenReturn("pom");
+
+        JaCoCoAggregateMojo mojo = new JaCoCoAggregateMojo();
+        mojo.useExecutionData = true;
+        mojo.executionDataFile = "jacoco.exec";
+        mojo.partialFile = "coveralls-partial.bin";
+        ReflectionUtils.setVariableValueInObject(mojo, "reactorProjects", Arrays.asList(parent, covered, uncovered));
+        ReflectionUtils.setVariableValueInObject(mojo, "project", parent);
+        mojo.collectReports();
+
+        List<File> sourceRoots = new ArrayList<File>();
+        for (MavenProject module : Arrays.asList(covered, uncovered)) {
+            sourceRoots.add(new File(module.getCompileSourceRoots().get(0)));
+        }
+        final List<Source> sources = new ArrayList<Source>();
+        SourceLoader sourceLoader = new SourceLoader(sourceRoots, "UTF-8");
+        try {
+            mojo.createCoverageParser(sourceLoader).parse(new SourceCallback() {
+                @Override
+                public void onSource(final Source source) {
+                    sources.add(source);
+                }
+            });
+        } finally {
+            sourceLoader.close();
+        }
+
+        assertEquals(2, sources.size());
+        assertEquals(SAMPLE_PACKAGE + "SimpleCoverage.java", sources.get(0).getName());
+        assertCoverage(sources.get(0), 14, 3, 1, 6, 1, 10, 0, 11, 0);
+        assertEquals(SAMPLE_PACKAGE + "InnerClassCoverage.java", sources.get(1).getName());
+        assertCoverage(sources.get(1), 30, 3, 0, 6, 0, 9, 0, 10, 0, 12, 0, 15, 0, 18, 0, 21, 0, 25, 0, 26, 0);
+    }
+
+    private MavenProject createModule(final String name, final File executionData, final String... classes) throws Exception {
+        File basedir = folder.newFolder(name);
+        File target = new File(basedir, "target");
+        File outputDirectory = new File(target, "classes");
+        File sourceDirectory = new File(basedir, "src");
+        for (String className : classes) {
+            File classFile = new File(TestIoUtil.getFile("jacoco-classes"), SAMPLE_PACKAGE + className + ".class");
+            FileUtils.copyFile(classFile, new File(outputDirectory, SAMPLE_PACKAGE + className + ".class"));
+        }
+        FileUtils.copyFile(TestIoUtil.getFile(classes[0] + ".java"), new File(sourceDirectory, SAMPLE_PACKAGE + classes[0] + ".java"));
+        File executionDataFile = new File(target, "jacoco.exec");
+        if (executionData != null) {
+            FileUtils.copyFile(executionData, executionDataFile);
+        } else {
+            OutputStream out = new FileOutputStream(executionDataFile);
+            try {
+                new ExecutionDataWriter(out);
+            } finally {
+                IOUtil.close(out);
+            }
+        }
+
+        Build build = new Build();
+        build.setDirectory(target.getAbsolutePath());
+        build.setOutputDirectory(outputDirectory.getAbsolutePath());
+        MavenProject module = mock(MavenProject.class);
+        when(module.getPackaging()).thenReturn("jar");
+        when(module.getBuild()).thenReturn(build);
+        when(module.getBasedir()).thenReturn(basedir);
+        when(module.getCompileSourceRoots()).thenReturn(Collections.singletonList(sourceDirectory.getAbsolutePath()));
+        return module;
+    }
+
+    private static void assertCoverage(final Source source, final int lines, final int... coverage) {
+        int[] expected = new int[lines];
+        Arrays.fill(expected, Source.NOT_RELEVANT);
+        for (int i = 0; i < coverage.length; i += 2) {
+            expected[coverage[i] - 1] = coverage[i + 1];
+        }
+        assertArrayEquals(expected, source.getCoverage());
+    }
+}
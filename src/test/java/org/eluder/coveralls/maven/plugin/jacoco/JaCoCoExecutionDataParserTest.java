@@ -0,0 +1,106 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.eluder.coveralls.maven.plugin.AbstractCoverageParserTest;
+import org.eluder.coveralls.maven.plugin.CoverageFixture;
+import org.eluder.coveralls.maven.plugin.CoverageParser;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Test;
+
+public class JaCoCoExecutionDataParserTest extends AbstractCoverageParserTest {
+
+    @Override
+    protected CoverageParser createCoverageParser(final File coverageFile, final SourceLoader sourceLoader) {
+        return new JaCoCoExecutionDataParser(coverageFile, Arrays.asList(TestIoUtil.getFile("jacoco-classes")), sourceLoader);
+    }
+
+    @Override
+    protected String getCoverageResource() {
+        return "jacoco.exec";
+    }
+
+    @Override
+    protected String[][] getCoverageFixture() {
+        return CoverageFixture.JAVA_FILES;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingClassesDirectories() {
+        new JaCoCoExecutionDataParser(TestIoUtil.getFile("jacoco.exec"), Collections.<File>emptyList(), sourceLoaderMock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingExecutionDataFiles() {
+        new JaCoCoExecutionDataParser(Collections.<File>emptyList(), Arrays.asList(TestIoUtil.getFile("jacoco-classes")), sourceLoaderMock);
+    }
+
+    @Test
+    public void testMultipleExecutionDataFilesAreCombined() throws Exception {
+        File executionData = TestIoUtil.getFile("jacoco.exec");
+        CoverageParser parser = new JaCoCoExecutionDataParser(Arrays.asList(executionData, executionData), Arrays.asList(TestIoUtil.getFile("jacoco-classes")), sourceLoaderMock);
+        assertEquals(executionData, parser.getCoverageFile());
+        parser.parse(sourceCallbackMock);
+        verify(sourceCallbackMock, times(CoverageFixture.getTotalFiles(getCoverageFixture()))).onSource(any(Source.class));
+    }
+
+    @Test
+    public void testMissingClassesDirectoryIsSkipped() throws Exception {
+        File missing = new File(TestIoUtil.getFile("jacoco-classes"), "missing");
+        new JaCoCoExecutionDataParser(TestIoUtil.getFile("jacoco.exec"), Arrays.asList(missing), sourceLoaderMock).parse(sourceCallbackMock);
+        verify(sourceCallbackMock, never()).onSource(any(Source.class));
+    }
+
+    @Test
+    public void testSourcesInPackageAndFileNameOrder() throws Exception {
+        when(sourceLoaderMock.prefetch("org/eluder/coverage/sample/SimpleCoverage.java")).thenReturn(true);
+        CoverageParser parser = createCoverageParser(TestIoUtil.getFile("jacoco.exec"), sourceLoaderMock);
+        assertEquals(TestIoUtil.getFile("jacoco.exec"), parser.getCoverageFile());
+        final StringBuilder names = new StringBuilder();
+        parser.parse(new org.eluder.coveralls.maven.plugin.SourceCallback() {
+            @Override
+            public void onSource(final Source source) {
+                names.append(source.getName()).append(';');
+            }
+        });
+        assertEquals("org/eluder/coverage/sample/InnerClassCoverage.java;org/eluder/coverage/sample/SimpleCoverage.java;", names.toString());
+        verify(sourceLoaderMock).prefetch("org/eluder/coverage/sample/SimpleCoverage.java");
+    }
+}
@@ -26,10 +26,27 @@ package org.eluder.coveralls.maven.plugin.jacoco;
  * %[license]
  */
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.ReflectionUtils;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojo;
 import org.eluder.coveralls.maven.plugin.AbstractCoverallsMojoTest;
 import org.eluder.coveralls.maven.plugin.CoverageFixture;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
 import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Test;
 
 public class JaCoCoMojoTest extends AbstractCoverallsMojoTest {
 
@@ -44,4 +61,100 @@ public class JaCoCoMojoTest extends AbstractCoverallsMojoTest {
     protected String[][] getCoverageFixture() {
         return CoverageFixture.JAVA_FILES;
     }
+
+    @Test
+    public void testMergeMultipleCoverageFiles() throws Exception {
+        JaCoCoMojo mojo = createMergingMojo();
+        mojo.coverageFiles = Arrays.asList(TestIoUtil.getFile("jacoco.xml"), TestIoUtil.getFile("jacoco-it.xml"), new File(folder.getRoot(), "missing.xml"));
+
+        List<Source> sources = parse(mojo);
+
+        assertEquals(2, sources.size());
+        assertEquals("org/eluder/coverage/sample/InnerClassCoverage.java", sources.get(0).getName());
+        assertCoverage(sources.get(0), 30, 3, 1, 6, 1, 9, 1, 10, 1, 12, 1, 15, 1, 18, 1, 21, 1, 25, 1, 26, 0);
+        assertEquals("org/eluder/coverage/sample/SimpleCoverage.java", sources.get(1).getName());
+        assertCoverage(sources.get(1), 14, 3, 1, 6, 1, 10, 1, 11, 1);
+    }
+
+    @Test
+    public void testSingleCoverageFileInList() throws Exception {
+        JaCoCoMojo mojo = createMergingMojo();
+        mojo.coverageFiles = Arrays.asList(TestIoUtil.getFile("jacoco-it.xml"));
+
+        List<Source> sources = parse(mojo);
+
+        assertEquals(2, sources.size());
+        assertCoverage(sources.get(1), 14, 3, 1, 10, 1, 11, 1);
+    }
+
+    @Test
+    public void testUseExecutionData() throws Exception {
+        JaCoCoMojo mojo = createMergingMojo();
+        mojo.useExecutionData = true;
+        mojo.executionDataFile = TestIoUtil.getFile("jacoco.exec");
+        mojo.classesDirectory = TestIoUtil.getFile("jacoco-classes");
+
+        List<Source> sources = parse(mojo);
+
+        assertEquals(2, sources.size());
+        assertEquals("org/eluder/coverage/sample/InnerClassCoverage.java", sources.get(0).getName());
+        assertCoverage(sources.get(0), 30, 3, 1, 6, 1, 9, 1, 10, 1, 12, 1, 15, 1, 18, 1, 21, 1, 25, 0, 26, 0);
+        assertEquals("org/eluder/coverage/sample/SimpleCoverage.java", sources.get(1).getName());
+        assertCoverage(sources.get(1), 14, 3, 1, 6, 1, 10, 0, 11, 0);
+    }
+
+    @Test
+    public void testMergeMultipleExecutionDataFiles() throws Exception {
+        JaCoCoMojo mojo = createMergingMojo();
+        mojo.useExecutionData = true;
+        mojo.executionDataFiles = Arrays.asList(TestIoUtil.getFile("jacoco.exec"), TestIoUtil.getFile("jacoco.exec"), new File(folder.getRoot(), "missing.exec"));
+        mojo.classesDirectory = TestIoUtil.getFile("jacoco-classes");
+
+        List<Source> sources = parse(mojo);
+
+        assertEquals(2, sources.size());
+        assertCoverage(sources.get(0), 30, 3, 1, 6, 1, 9, 1, 10, 1, 12, 1, 15, 1, 18, 1, 21, 1, 25, 0, 26, 0);
+        assertCoverage(sources.get(1), 14, 3, 1, 6, 1, 10, 0, 11, 0);
+    }
+
+    private JaCoCoMojo createMergingMojo() throws Exception {
+        JaCoCoMojo mojo = new JaCoCoMojo();
+        MavenProject project = mock(MavenProject.class);
+        when(project.getBasedir()).thenReturn(folder.getRoot());
+        ReflectionUtils.setVariableValueInObject(mojo, "project", project);
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeHits", "max");
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeMemoryBudget", 1);
+        return mojo;
+    }
+
+    private List<Source> parse(final JaCoCoMojo mojo) throws Exception {
+        File sourceDirectory = folder.newFolder();
+        File packageDirectory = new File(sourceDirectory, "org/eluder/coverage/sample");
+        for (String[] coverageFile : CoverageFixture.JAVA_FILES) {
+            File source = TestIoUtil.getFile(coverageFile[0]);
+            FileUtils.copyFile(source, new File(packageDirectory, source.getName()));
+        }
+        final List<Source> sources = new ArrayList<Source>();
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(sourceDirectory), "UTF-8");
+        try {
+            mojo.createCoverageParser(sourceLoader).parse(new SourceCallback() {
+                @Override
+                public void onSource(final Source source) {
+                    sources.add(source);
+                }
+            });
+        } finally {
+            sourceLoader.close();
+        }
+        return sources;
+    }
+
+    private static void assertCoverage(final Source source, final int lines, final int... coverage) {
+        int[] expected = new int[lines];
+        Arrays.fill(expected, Source.NOT_RELEVANT);
+        for (int i = 0; i < coverage.length; i += 2) {
+            expected[coverage[i] - 1] = coverage[i + 1];
+        }
+        assertArrayEquals(expected, source.getCoverage());
+    }
 }
@@ -0,0 +1,208 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.ReflectionUtils;
+import org.eluder.coveralls.maven.plugin.CoverageFixture;
+import org.eluder.coveralls.maven.plugin.CoverageMerger;
+import org.eluder.coveralls.maven.plugin.SourceCallback;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class JaCoCoPartialMojoTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File sourceDirectory;
+    private MavenProject project;
+    private JaCoCoPartialMojo mojo;
+
+    @Before
+    public void init() throws Exception {
+        sourceDirectory = folder.newFolder();
+        File packageDirectory = new File(sourceDirectory, "org/eluder/coverage/sample");
+        for (String[] coverageFile : CoverageFixture.JAVA_FILES) {
+            File source = TestIoUtil.getFile(coverageFile[0]);
+            FileUtils.copyFile(source, new File(packageDirectory, source.getName()));
+        }
+        project = mock(MavenProject.class);
+        when(project.getPackaging()).thenReturn("jar");
+        when(project.getCompileSourceRoots()).thenReturn(Arrays.asList(sourceDirectory.getAbsolutePath(), new File(folder.getRoot(), "missing").getAbsolutePath()));
+        mojo = new JaCoCoPartialMojo();
+        mojo.coverageFiles = Arrays.asList(copy("jacoco.xml"), copy("jacoco-it.xml"));
+        mojo.partialFile = new File(folder.getRoot(), "target/coveralls-partial.bin");
+        ReflectionUtils.setVariableValueInObject(mojo, "project", project);
+        ReflectionUtils.setVariableValueInObject(mojo, "sourceEncoding", "UTF-8");
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeHits", "max");
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeMemoryBudget", 1);
+    }
+
+    @Test
+    public void testWritePartial() throws Exception {
+        mojo.execute();
+
+        List<Source> sources = read(mojo.partialFile);
+        assertEquals(2, sources.size());
+        assertEquals("org/eluder/coverage/sample/InnerClassCoverage.java", sources.get(0).getName());
+        assertCoverage(sources.get(0), 30, 3, 1, 6, 1, 9, 1, 10, 1, 12, 1, 15, 1, 18, 1, 21, 1, 25, 1, 26, 0);
+        assertEquals("org/eluder/coverage/sample/SimpleCoverage.java", sources.get(1).getName());
+        assertCoverage(sources.get(1), 14, 3, 1, 6, 1, 10, 1, 11, 1);
+    }
+
+    @Test
+    public void testSkipUpToDatePartial() throws Exception {
+        mojo.execute();
+        long lastModified = System.currentTimeMillis() + 60000L;
+        assertTrue(mojo.partialFile.setLastModified(lastModified));
+        mojo.execute();
+        assertEquals(lastModified, mojo.partialFile.lastModified());
+
+        assertTrue(mojo.coverageFiles.get(1).setLastModified(lastModified + 60000L));
+        mojo.execute();
+        assertTrue(mojo.partialFile.lastModified() < lastModified);
+    }
+
+    @Test
+    public void testRewritePartialWithChangedHits() throws Exception {
+        mojo.execute();
+        long lastModified = System.currentTimeMillis() + 60000L;
+        assertTrue(mojo.partialFile.setLastModified(lastModified));
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeHits", "sum");
+        mojo.execute();
+        assertTrue(mojo.partialFile.lastModified() < lastModified);
+        assertEquals(CoverageMerger.Hits.SUM, CoverageMerger.readPartialHeader(mojo.partialFile).getHits());
+    }
+
+    @Test
+    public void testConfiguredSourceDirectories() throws Exception {
+        when(project.getCompileSourceRoots()).thenReturn(Collections.<String>emptyList());
+        ReflectionUtils.setVariableValueInObject(mojo, "sourceDirectories", Arrays.asList(sourceDirectory));
+        mojo.execute();
+        assertEquals(2, read(mojo.partialFile).size());
+    }
+
+    @Test(expected = MojoExecutionException.class)
+    public void testInvalidMergeHits() throws Exception {
+        ReflectionUtils.setVariableValueInObject(mojo, "mergeHits", "average");
+        mojo.execute();
+    }
+
+    @Test
+    public void testDeletePartialWithoutReports() throws Exception {
+        mojo.execute();
+        mojo.coverageFiles = Arrays.asList(new File(folder.getRoot(), "missing.xml"));
+        mojo.execute();
+        assertFalse(mojo.partialFile.exists());
+    }
+
+    @Test
+    public void testSkipPomProject() throws Exception {
+        when(project.getPackaging()).thenReturn("pom");
+        mojo.execute();
+        assertFalse(mojo.partialFile.exists());
+    }
+
+    @Test
+    public void testIsUpToDate() throws Exception {
+        List<File> reports = Collections.singletonList(folder.newFile());
+        File partial = new File(folder.getRoot(), "partial.bin");
+        assertFalse(JaCoCoPartialMojo.isUpToDate(partial, reports, CoverageMerger.Hits.MAX));
+        CoverageMerger merger = new CoverageMerger(mock(SourceLoader.class), CoverageMerger.Hits.MAX, 1024);
+        merger.writePartial(partial, reports);
+        merger.close();
+        assertTrue(partial.setLastModified(reports.get(0).lastModified() + 1000L));
+        assertTrue(JaCoCoPartialMojo.isUpToDate(partial, reports, CoverageMerger.Hits.MAX));
+        assertFalse(JaCoCoPartialMojo.isUpToDate(partial, reports, CoverageMerger.Hits.SUM));
+        assertFalse(JaCoCoPartialMojo.isUpToDate(partial, Arrays.asList(reports.get(0), folder.newFile()), CoverageMerger.Hits.MAX));
+        assertTrue(reports.get(0).setLastModified(partial.lastModified() + 1000L));
+        assertFalse(JaCoCoPartialMojo.isUpToDate(partial, reports, CoverageMerger.Hits.MAX));
+    }
+
+    @Test
+    public void testIsNotUpToDateWithoutHeader() throws Exception {
+        List<File> reports = Collections.singletonList(folder.newFile());
+        File partial = folder.newFile();
+        assertTrue(partial.setLastModified(reports.get(0).lastModified() + 1000L));
+        assertFalse(JaCoCoPartialMojo.isUpToDate(partial, reports, CoverageMerger.Hits.MAX));
+    }
+
+    private File copy(final String resource) throws Exception {
+        File file = new File(folder.getRoot(), resource);
+        FileUtils.copyFile(TestIoUtil.getFile(resource), file);
+        return file;
+    }
+
+    private List<Source> read(final File partial) throws Exception {
+        final List<Source> sources = new ArrayList<Source>();
+        SourceLoader sourceLoader = new SourceLoader(Arrays.asList(sourceDirectory), "UTF-8");
+        CoverageMerger merger = new CoverageMerger(sourceLoader, CoverageMerger.Hits.MAX, 1024 * 1024);
+        try {
+            merger.addPartial(partial);
+            merger.flush(new SourceCallback() {
+                @Override
+                public void onSource(final Source source) {
+                    sources.add(source);
+                }
+            });
+        } finally {
+            merger.close();
+            sourceLoader.close();
+        }
+        return sources;
+    }
+
+    private static void assertCoverage(final Source source, final int lines, final int... coverage) {
+        int[] expected = new int[lines];
+        Arrays.fill(expected, Source.NOT_RELEVANT);
+        for (int i = 0; i < coverage.length; i += 2) {
+            expected[coverage[i] - 1] = coverage[i + 1];
+        }
+        assertArrayEquals(expected, source.getCoverage());
+    }
+}
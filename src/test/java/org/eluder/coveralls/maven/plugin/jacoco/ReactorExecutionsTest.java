@@ -0,0 +1,109 @@
+package org.eluder.coveralls.maven.plugin.jacoco;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+public class ReactorExecutionsTest {
+
+    @Test
+    public void testCompleteAfterAllProjects() {
+        Object session = new Object();
+        MavenProject first = mock(MavenProject.class);
+        MavenProject second = mock(MavenProject.class);
+        List<MavenProject> reactorProjects = Arrays.asList(first, second);
+
+        assertFalse(ReactorExecutions.execute(session, reactorProjects, second));
+        assertFalse(ReactorExecutions.execute(session, reactorProjects, second));
+        assertTrue(ReactorExecutions.execute(session, reactorProjects, first));
+    }
+
+    @Test
+    public void testSessionsAreSeparated() {
+        MavenProject first = mock(MavenProject.class);
+        MavenProject second = mock(MavenProject.class);
+        List<MavenProject> reactorProjects = Arrays.asList(first, second);
+
+        assertFalse(ReactorExecutions.execute(new Object(), reactorProjects, first));
+        assertFalse(ReactorExecutions.execute(new Object(), reactorProjects, second));
+    }
+
+    @Test
+    public void testSingleProject() {
+        MavenProject project = mock(MavenProject.class);
+        assertTrue(ReactorExecutions.execute(new Object(), Collections.singletonList(project), project));
+    }
+
+    @Test
+    public void testConcurrentExecutionsCompleteOnce() throws Exception {
+        final Object session = new Object();
+        final List<MavenProject> reactorProjects = new ArrayList<MavenProject>();
+        for (int i = 0; i < 64; i++) {
+            reactorProjects.add(mock(MavenProject.class));
+        }
+        final CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (final MavenProject project : reactorProjects) {
+                results.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        start.await();
+                        return ReactorExecutions.execute(session, reactorProjects, project);
+                    }
+                }));
+            }
+            start.countDown();
+            int completed = 0;
+            for (Future<Boolean> result : results) {
+                if (result.get()) {
+                    completed++;
+                }
+            }
+            assertEquals(1, completed);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
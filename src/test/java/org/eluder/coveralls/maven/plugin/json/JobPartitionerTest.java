@@ -0,0 +1,215 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JobPartitionerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPartitions() {
+        new JobPartitioner(0);
+    }
+
+    @Test
+    public void testSplit() throws Exception {
+        File coverallsFile = copyGolden("coveralls.json", false);
+        List<File> partitions = new JobPartitioner(3).split(coverallsFile);
+
+        assertEquals(3, partitions.size());
+        for (int i = 0; i < partitions.size(); i++) {
+            assertEquals("coveralls-" + (i + 1) + ".json", partitions.get(i).getName());
+        }
+        assertPartitions(readTree(coverallsFile, false), partitions, false);
+    }
+
+    @Test
+    public void testSplitCompressed() throws Exception {
+        File coverallsFile = copyGolden("coveralls.json.gz", true);
+        List<File> partitions = new JobPartitioner(2).split(coverallsFile);
+
+        assertEquals(2, partitions.size());
+        assertEquals("coveralls-1.json.gz", partitions.get(0).getName());
+        assertEquals("coveralls-2.json.gz", partitions.get(1).getName());
+        assertPartitions(readTree(coverallsFile, true), partitions, true);
+    }
+
+    @Test
+    public void testSplitBalancesBySize() throws Exception {
+        File coverallsFile = folder.newFile("coveralls.json");
+        StringBuilder json = new StringBuilder("{\"repo_token\":\"token\",\"source_files\":[");
+        int[] lengths = new int[] { 9000, 100, 5000, 4000, 200, 100 };
+        for (int i = 0; i < lengths.length; i++) {
+            StringBuilder source = new StringBuilder();
+            while (source.length() < lengths[i]) {
+                source.append('x');
+            }
+            json.append(i > 0 ? "," : "").append("{\"name\":\"Source").append(i).append(".java\",\"source\":\"").append(source).append("\",\"coverage\":[1]}");
+        }
+        writeBytes(coverallsFile, json.append("]}").toString().getBytes("UTF-8"), false);
+
+        List<File> partitions = new JobPartitioner(2).split(coverallsFile);
+
+        assertEquals("[Source0.java, Source4.java]", names(readTree(partitions.get(0), false)).toString());
+        assertEquals("[Source1.java, Source2.java, Source3.java, Source5.java]", names(readTree(partitions.get(1), false)).toString());
+    }
+
+    @Test
+    public void testSplitToFewerPartitionsThanSources() throws Exception {
+        File coverallsFile = copyGolden("coveralls-empty-git.json", false);
+        List<File> partitions = new JobPartitioner(4).split(coverallsFile);
+
+        assertEquals(1, partitions.size());
+        JsonNode partition = readTree(partitions.get(0), false);
+        assertTrue(partition.get("parallel").asBoolean());
+        assertEquals(0, partition.get("source_files").size());
+        assertEquals(readTree(coverallsFile, false).get("git"), partition.get("git"));
+    }
+
+    @Test
+    public void testPartitionsAreSeparateJobs() throws Exception {
+        File coverallsFile = copyGolden("coveralls.json", false);
+        String jobId = readTree(coverallsFile, false).get("service_job_id").asText();
+        List<File> partitions = new JobPartitioner(2).split(coverallsFile);
+
+        assertEquals(jobId + "-1", readTree(partitions.get(0), false).get("service_job_id").asText());
+        assertEquals(jobId + "-2", readTree(partitions.get(1), false).get("service_job_id").asText());
+    }
+
+    @Test(expected = ProcessingException.class)
+    public void testSplitInvalidData() throws Exception {
+        File coverallsFile = folder.newFile("coveralls.json");
+        writeBytes(coverallsFile, "[]".getBytes("UTF-8"), false);
+        new JobPartitioner(2).split(coverallsFile);
+    }
+
+    private void assertPartitions(final JsonNode original, final List<File> files, final boolean compressed) throws IOException {
+        List<JsonNode> sources = new ArrayList<JsonNode>();
+        for (int i = 0; i < files.size(); i++) {
+            JsonNode partition = readTree(files.get(i), compressed);
+            assertTrue(partition.get("parallel").asBoolean());
+            assertEquals("partition-" + (i + 1), partition.get("flag_name").asText());
+            Iterator<Map.Entry<String, JsonNode>> fields = original.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                if ("service_job_id".equals(field.getKey())) {
+                    assertEquals(field.getValue().asText() + "-" + (i + 1), partition.get(field.getKey()).asText());
+                } else if (!"source_files".equals(field.getKey())) {
+                    assertEquals(field.getValue(), partition.get(field.getKey()));
+                }
+            }
+            assertFalse(partition.get("source_files").size() == 0);
+            int previous = -1;
+            for (JsonNode source : partition.get("source_files")) {
+                int index = indexOf(original.get("source_files"), source);
+                assertTrue("sources must keep their order", index > previous);
+                previous = index;
+                sources.add(source);
+            }
+        }
+        assertEquals(original.get("source_files").size(), sources.size());
+    }
+
+    private static int indexOf(final JsonNode array, final JsonNode element) {
+        for (int i = 0; i < array.size(); i++) {
+            if (array.get(i).equals(element)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<String> names(final JsonNode partition) {
+        List<String> names = new ArrayList<String>();
+        for (JsonNode source : partition.get("source_files")) {
+            names.add(source.get("name").asText());
+        }
+        return names;
+    }
+
+    private JsonNode readTree(final File file, final boolean compressed) throws IOException {
+        InputStream stream = new FileInputStream(file);
+        try {
+            return mapper.readTree(compressed ? new GZIPInputStream(stream) : stream);
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private File copyGolden(final String name, final boolean compressed) throws IOException {
+        String golden = name.replace(".gz", "");
+        InputStream stream = JobPartitionerTest.class.getResourceAsStream("/golden/" + golden);
+        try {
+            File file = new File(folder.newFolder(), name);
+            writeBytes(file, IOUtil.toByteArray(stream), compressed);
+            return file;
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private static void writeBytes(final File file, final byte[] bytes, final boolean compressed) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            if (compressed) {
+                out = new GZIPOutputStream(out);
+            }
+            out.write(bytes);
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Properties;
+
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.domain.Git;
+import org.eluder.coveralls.maven.plugin.domain.Job;
+import org.eluder.coveralls.maven.plugin.domain.PersistentSourceCache;
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.eluder.coveralls.maven.plugin.domain.SourceLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class JsonObjectWriterTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGoldenCoverallsFile() throws Exception {
+        Git.Head head = new Git.Head("aefg837fge", "J\u00f6hn", "john@mail.com", "john", "john@mail.com", "test \"commit\"\n\nwith body\t\u2603");
+        Git git = new Git(head, "master", Arrays.asList(new Git.Remote("origin", "git@git.com:foo.git"), new Git.Remote("upstream", "https://git.com/bar.git")));
+        Properties environment = new Properties();
+        environment.setProperty("custom_property", "foobar");
+        Job job = new Job()
+            .withRepoToken("token")
+            .withServiceName("service")
+            .withServiceJobId("job123")
+            .withServiceBuildNumber("build5")
+            .withServiceBuildUrl("http://ci.com/build5")
+            .withServiceEnvironment(environment)
+            .withBranch("master")
+            .withPullRequest("pull10")
+            .withGit(git);
+        assertGolden("/golden/coveralls.json", write(job, sources(), 1));
+        assertGolden("/golden/coveralls.json", write(job, sources(), 3));
+    }
+
+    @Test
+    public void testGoldenPartialGit() throws Exception {
+        Git.Head head = new Git.Head("aefg837fge", null, null, null, null, null);
+        Git git = new Git(head, null, Arrays.asList(new Git.Remote("origin", null)));
+        assertGolden("/golden/coveralls-partial-git.json", write(new Job().withGit(git), new Source[0], 1));
+    }
+
+    @Test
+    public void testGoldenEmptyGit() throws Exception {
+        assertGolden("/golden/coveralls-empty-git.json", write(new Job().withGit(new Git(null, null, null)), new Source[0], 1));
+    }
+
+    @Test
+    public void testWriteGitEqualsDataBinding() throws Exception {
+        Git.Head head = new Git.Head("aefg837fge", "john", null, "john", "john@mail.com", "test commit");
+        Git[] gits = new Git[] {
+            new Git(head, "master", Arrays.asList(new Git.Remote("origin", "git@git.com:foo.git"), null)),
+            new Git(null, "master", Collections.<Git.Remote>emptyList()),
+            new Git(null, null, null)
+        };
+        for (Git git : gits) {
+            StringWriter json = new StringWriter();
+            JsonGenerator generator = new JsonFactory().createGenerator(json);
+            JsonObjectWriter.writeGit(generator, git);
+            generator.close();
+            assertEquals(new ObjectMapper().writeValueAsString(git), json.toString());
+        }
+    }
+
+    private Source[] sources() throws IOException {
+        Source plain = new Source("Foo.java", "public class Foo {\n    \"bar\";\n}\n");
+        plain.addCoverage(1, 0);
+        plain.addCoverage(2, 15);
+
+        Source escaped = new Source("org/Esc\u00e4ped.java", "tab\there\u0001\u001f </script> \\ \u00e9\u20ac\ud83d\ude00 \u2028\r\nend");
+        escaped.setClassifier("$Inner");
+        escaped.addCoverage(2, Integer.MAX_VALUE);
+
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+        Source large = new Source("Large.java", content.toString());
+        for (int i = 1; i <= 300; i += 3) {
+            large.addCoverage(i, i % 2);
+        }
+
+        File directory = folder.newFolder();
+        writeBytes(new File(directory, "Digest.java"), "public class Digest {\n}\n");
+        Source digest = new SourceLoader(Arrays.asList(directory), "UTF-8").withSourceDigest(true).load("Digest.java");
+        digest.addCoverage(2, 1);
+
+        writeBytes(new File(directory, "Utf8.java"), "public class Utf8 {\r\n    \"b\u00e4r\\\t\";\n}");
+        File cacheFile = new File(directory, "sources.cache");
+        SourceLoader loader = new SourceLoader(Arrays.asList(directory), "UTF-8").withPersistentSourceCache(PersistentSourceCache.open(cacheFile, "UTF-8"));
+        loader.load("Utf8.java");
+        loader.close();
+        loader = new SourceLoader(Arrays.asList(directory), "UTF-8").withPersistentSourceCache(PersistentSourceCache.open(cacheFile, "UTF-8"));
+        Source utf8 = loader.load("Utf8.java");
+        loader.close();
+        utf8.addCoverage(1, 3);
+        assertNotNull(utf8.getUtf8Source());
+
+        return new Source[] { plain, escaped, large, digest, utf8, new Source("Empty.java", "") };
+    }
+
+    private byte[] write(final Job job, final Source[] sources, final int encodingThreads) throws Exception {
+        File file = folder.newFile();
+        JsonWriter writer = new JsonWriter(job, file).withParallelEncoding(encodingThreads);
+        try {
+            writer.writeStart();
+            for (Source source : sources) {
+                writer.onSource(source);
+            }
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        return read(new FileInputStream(file));
+    }
+
+    private static void assertGolden(final String resource, final byte[] actual) throws IOException {
+        InputStream stream = JsonObjectWriterTest.class.getResourceAsStream(resource);
+        assertArrayEquals(read(stream), actual);
+    }
+
+    private static byte[] read(final InputStream stream) throws IOException {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            IOUtil.copy(stream, bytes);
+            return bytes.toByteArray();
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+
+    private static void writeBytes(final File file, final String content) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            IOUtil.close(out);
+        }
+    }
+}
@@ -27,10 +27,15 @@ package org.eluder.coveralls.maven.plugin.json;
  */
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Date;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -38,7 +43,9 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
+import java.util.zip.GZIPInputStream;
 
+import org.codehaus.plexus.util.IOUtil;
 import org.eluder.coveralls.maven.plugin.domain.Git;
 import org.eluder.coveralls.maven.plugin.domain.Job;
 import org.eluder.coveralls.maven.plugin.domain.Source;
@@ -120,6 +127,109 @@ public class JsonWriterTest {
         assertEquals(1, ((Collection<?>) jsonMap.get("coverage")).size());
     }
     
+    @Test
+    public void testWriteCoverage() throws Exception {
+        Source source = new Source("Foo.java", "public class Foo {\n    int bar;\n}");
+        source.addCoverage(2, 3);
+        JsonWriter writer = new JsonWriter(job(), file);
+        try {
+            writer.onSource(source);
+        } finally {
+            writer.close();
+        }
+        String content = TestIoUtil.readFileContent(file);
+        Map<String, Object> jsonMap = stringToJsonMap(content);
+        assertEquals(Arrays.asList(null, 3, null), jsonMap.get("coverage"));
+    }
+    
+    @Test
+    public void testWriteCompressed() throws Exception {
+        JsonWriter writer = new JsonWriter(job(), file, 9);
+        try {
+            writer.writeStart();
+            writer.onSource(source());
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        File uncompressed = folder.newFile();
+        writer = new JsonWriter(job(), uncompressed);
+        try {
+            writer.writeStart();
+            writer.onSource(source());
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        InputStream stream = new GZIPInputStream(new FileInputStream(file));
+        try {
+            assertEquals(TestIoUtil.readFileContent(uncompressed), IOUtil.toString(stream, "UTF-8"));
+        } finally {
+            IOUtil.close(stream);
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCompressionLevel() throws Exception {
+        new JsonWriter(job(), file, 10);
+    }
+    
+    @Test
+    public void testWriteToStream() throws Exception {
+        final boolean[] closed = new boolean[1];
+        ByteArrayOutputStream stream = new ByteArrayOutputStream() {
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        JsonWriter writer = new JsonWriter(job(), file, stream);
+        try {
+            writer.writeStart();
+            writer.onSource(source());
+            writer.writeEnd();
+        } finally {
+            writer.close();
+        }
+        assertFalse(closed[0]);
+        assertEquals(TestIoUtil.readFileContent(file), stream.toString("UTF-8"));
+        assertEquals(file, writer.getCoverallsFile());
+        assertNull(new JsonWriter(job(), null, stream).getCoverallsFile());
+    }
+    
+    @Test
+    public void testParallelEncoding() throws Exception {
+        File parallel = folder.newFile();
+        JsonWriter writer = new JsonWriter(job(), parallel).withParallelEncoding(4);
+        JsonWriter sequential = new JsonWriter(job(), file);
+        try {
+            writer.writeStart();
+            sequential.writeStart();
+            for (int i = 0; i < 100; i++) {
+                Source source = new Source("Foo" + i + ".java", "public class Foo" + i + " { }\n");
+                source.addCoverage(1, i);
+                writer.onSource(source);
+                sequential.onSource(source);
+            }
+            writer.writeEnd();
+            sequential.writeEnd();
+        } finally {
+            writer.close();
+            sequential.close();
+        }
+        assertEquals(TestIoUtil.readFileContent(file), TestIoUtil.readFileContent(parallel));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testParallelEncodingEnabledTwice() throws Exception {
+        JsonWriter writer = new JsonWriter(job(), file).withParallelEncoding(2);
+        try {
+            writer.withParallelEncoding(2);
+        } finally {
+            writer.close();
+        }
+    }
+    
     private Job job() {
         Git.Head head = new Git.Head("aefg837fge", "john", "john@mail.com", "john", "john@mail.com", "test commit");
         Git.Remote remote = new Git.Remote("origin", "git@git.com:foo.git");
@@ -0,0 +1,173 @@
+package org.eluder.coveralls.maven.plugin.json;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eluder.coveralls.maven.plugin.domain.Source;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+public class ParallelSourceEncoderTest {
+
+    private final JsonFactory factory = new JsonFactory();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreads() {
+        new ParallelSourceEncoder(factory, new ByteArrayOutputStream(), 0);
+    }
+
+    @Test
+    public void testEncodeEqualsSequential() throws Exception {
+        List<Source> sources = sources(300, 1000);
+        for (int threads = 1; threads <= 4; threads++) {
+            assertArrayEquals(sequential(sources), parallel(sources, threads));
+        }
+    }
+
+    @Test
+    public void testEncodeNothing() throws Exception {
+        assertArrayEquals(sequential(new ArrayList<Source>()), parallel(new ArrayList<Source>(), 2));
+    }
+
+    @Test
+    public void testBuffersAreReused() throws Exception {
+        ParallelSourceEncoder encoder = new ParallelSourceEncoder(factory, new ByteArrayOutputStream(), 2);
+        try {
+            for (Source source : sources(200, 100)) {
+                encoder.encode(source);
+            }
+            encoder.flush();
+            int pooled = encoder.getPooledBuffers();
+            assertTrue("pooled " + pooled, pooled > 0 && pooled <= 9);
+            for (Source source : sources(200, 100)) {
+                encoder.encode(source);
+            }
+            encoder.flush();
+            assertEquals(pooled, encoder.getPooledBuffers());
+        } finally {
+            encoder.close();
+        }
+    }
+
+    @Test
+    public void testLargeBuffersAreNotPooled() throws Exception {
+        ParallelSourceEncoder encoder = new ParallelSourceEncoder(factory, new ByteArrayOutputStream(), 2);
+        try {
+            StringBuilder content = new StringBuilder();
+            while (content.length() < 2 * 1024 * 1024) {
+                content.append("public static final String VALUE = \"\\t\";\n");
+            }
+            encoder.encode(new Source("Large.java", content.toString()));
+            encoder.flush();
+            assertEquals(0, encoder.getPooledBuffers());
+        } finally {
+            encoder.close();
+        }
+    }
+
+    @Test
+    public void testOutputFailure() throws Exception {
+        OutputStream failing = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        ParallelSourceEncoder encoder = new ParallelSourceEncoder(factory, failing, 2);
+        try {
+            for (Source source : sources(10, 100)) {
+                encoder.encode(source);
+            }
+            encoder.flush();
+            fail("Should have failed with IOException");
+        } catch (IOException ex) {
+            assertEquals("disk full", ex.getMessage());
+        } finally {
+            encoder.close();
+        }
+    }
+
+    private byte[] sequential(final List<Source> sources) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        JsonGenerator generator = factory.createGenerator(bytes, JsonEncoding.UTF8);
+        generator.writeStartArray();
+        for (Source source : sources) {
+            JsonObjectWriter.writeSource(generator, source);
+        }
+        generator.writeEndArray();
+        generator.close();
+        return bytes.toByteArray();
+    }
+
+    private byte[] parallel(final List<Source> sources, final int threads) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write('[');
+        ParallelSourceEncoder encoder = new ParallelSourceEncoder(factory, bytes, threads);
+        try {
+            for (Source source : sources) {
+                encoder.encode(source);
+            }
+            encoder.flush();
+        } finally {
+            encoder.close();
+        }
+        bytes.write(']');
+        return bytes.toByteArray();
+    }
+
+    private static List<Source> sources(final int count, final int maxLines) {
+        Random random = new Random(count);
+        List<Source> sources = new ArrayList<Source>();
+        for (int i = 0; i < count; i++) {
+            StringBuilder content = new StringBuilder();
+            int lines = 1 + random.nextInt(maxLines);
+            for (int line = 0; line < lines; line++) {
+                content.append("    \"line\" ").append(line).append(random.nextBoolean() ? "\t\u00e4\u20ac\n" : "\n");
+            }
+            Source source = new Source("pkg" + (i % 7) + "/Source" + i + ".java", content.toString());
+            for (int line = 1; line <= lines; line += 1 + random.nextInt(3)) {
+                source.addCoverage(line, random.nextInt(5));
+            }
+            sources.add(source);
+        }
+        return sources;
+    }
+}
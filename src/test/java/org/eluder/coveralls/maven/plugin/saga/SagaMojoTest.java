@@ -48,4 +48,9 @@ public class SagaMojoTest extends AbstractCoverallsMojoTest {
         return CoverageFixture.JAVASCRIPT_FILES;
     }
 
+    @Override
+    protected String getSourcePath(final String sourceFile) {
+        return "src/" + sourceFile;
+    }
+
 }
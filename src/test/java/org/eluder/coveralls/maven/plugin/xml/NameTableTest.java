@@ -0,0 +1,62 @@
+package org.eluder.coveralls.maven.plugin.xml;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class NameTableTest {
+
+    @Test
+    public void testGetByName() {
+        NameTable<Integer> table = new NameTable<Integer>();
+        table.put("line", 1);
+        table.put("class", 2);
+        assertEquals(Integer.valueOf(1), table.get("line"));
+        assertEquals(Integer.valueOf(2), table.get("class"));
+        assertNull(table.get("lines"));
+    }
+
+    @Test
+    public void testGetByBytes() {
+        NameTable<Integer> table = new NameTable<Integer>();
+        for (int i = 0; i < 100; i++) {
+            table.put("element" + i, i);
+        }
+        table.put("element7", 700);
+        ByteBuffer buffer = ByteBuffer.wrap("<element7><element99><element100>".getBytes(Charset.forName("UTF-8")));
+        assertEquals(Integer.valueOf(700), table.get(buffer, 1, 9));
+        assertEquals(Integer.valueOf(99), table.get(buffer, 11, 20));
+        assertNull(table.get(buffer, 22, 32));
+        assertNull(table.get(buffer, 1, 8));
+    }
+}
@@ -0,0 +1,257 @@
+package org.eluder.coveralls.maven.plugin.xml;
+
+/*
+ * #[license]
+ * coveralls-maven-plugin
+ * %%
+ * Copyright (C) 2013 - 2014 Tapio Rautonen
+ * %%
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ * %[license]
+ */
+
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import javax.xml.stream.XMLStreamConstants;
+
+import org.eluder.coveralls.maven.plugin.ProcessingException;
+import org.codehaus.plexus.util.IOUtil;
+import org.eluder.coveralls.maven.plugin.util.TestIoUtil;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class XmlScannerTest {
+
+    private static final byte[] LINE = XmlScanner.name("line");
+    private static final byte[] NR = XmlScanner.name("nr");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testScanElements() throws Exception {
+        XmlScanner xml = scanner("<?xml version=\"1.0\"?><!DOCTYPE report PUBLIC \"-//x//DTD Report//EN\" 'report.dtd'>"
+                + "<!-- <line nr=\"0\"/> --><report><line nr=\"1\" ci=\"2\"/><line nr='3'>text</line></report>");
+        assertEquals(XMLStreamConstants.START_ELEMENT, xml.next());
+        assertEquals("report", xml.getLocalName());
+        assertEquals(XMLStreamConstants.START_ELEMENT, xml.next());
+        assertTrue(xml.isStartElement(LINE));
+        assertEquals(1, xml.getIntAttributeValue(NR));
+        assertEquals("2", xml.getAttributeValue(XmlScanner.name("ci")));
+        assertEquals(XMLStreamConstants.END_ELEMENT, xml.next());
+        assertTrue(xml.isEndElement(LINE));
+        assertEquals(XMLStreamConstants.START_ELEMENT, xml.next());
+        assertEquals(3, xml.getIntAttributeValue(NR));
+        assertNull(xml.getAttributeValue(XmlScanner.name("ci")));
+        assertEquals(XMLStreamConstants.END_ELEMENT, xml.next());
+        assertTrue(xml.isEndElement(LINE));
+        assertEquals(XMLStreamConstants.END_ELEMENT, xml.next());
+        assertEquals("report", xml.getLocalName());
+        assertTrue(xml.hasNext());
+        assertEquals(XMLStreamConstants.END_DOCUMENT, xml.next());
+        assertFalse(xml.hasNext());
+    }
+
+    @Test
+    public void testStringAttributeNamesAndLookup() throws Exception {
+        NameTable<String> table = new NameTable<String>();
+        table.put("line", "mapped");
+        XmlScanner xml = scanner("<report><line nr=\"5\" n=\"1\"/></report>");
+        xml.next();
+        assertNull(xml.lookup(table));
+        xml.next();
+        assertEquals("mapped", xml.lookup(table));
+        assertEquals(5, xml.getIntAttributeValue("nr"));
+        assertEquals("1", xml.getAttributeValue("n"));
+        assertNull(xml.getAttributeValue("\u00e4"));
+        xml.next();
+        assertEquals("mapped", xml.lookup(table));
+    }
+
+    @Test
+    public void testSkipCdataAndProcessingInstructions() throws Exception {
+        XmlScanner xml = scanner("<a><![CDATA[<b>]]><?pi <c>?><d/></a>");
+        xml.next();
+        xml.next();
+        assertEquals("d", xml.getLocalName());
+    }
+
+    @Test
+    public void testAttributeEntities() throws Exception {
+        XmlScanner xml = scanner("<a name=\"&lt;init&gt; &amp; &#65;&#x42; &unknown;\"/>");
+        xml.next();
+        assertEquals("<init> & AB &unknown;", xml.getAttributeValue(XmlScanner.name("name")));
+    }
+
+    @Test
+    public void testMalformedCharacterReferences() throws Exception {
+        File file = write("<a name=\"&#xZZ;\" nr=\"&#99999999;\"/>", "UTF-8");
+        XmlScanner xml = XmlScanner.map(file);
+        xml.next();
+        for (String name : new String[] { "name", "nr" }) {
+            try {
+                xml.getAttributeValue(name);
+                fail("Should have failed with ProcessingException");
+            } catch (ProcessingException ex) {
+                assertThat(ex.getMessage(), containsString("byte offset"));
+                assertThat(ex.getMessage(), containsString(file.getAbsolutePath()));
+            }
+        }
+    }
+
+    @Test
+    public void testIntAttributeValues() throws Exception {
+        XmlScanner xml = scanner("<a zero=\"0\" max=\"2147483647\" min=\"-2147483648\" space=\" 12 \" over=\"2147483648\" text=\"1a\" empty=\"\"/>");
+        xml.next();
+        assertEquals(0, xml.getIntAttributeValue(XmlScanner.name("zero")));
+        assertEquals(Integer.MAX_VALUE, xml.getIntAttributeValue(XmlScanner.name("max")));
+        assertEquals(Integer.MIN_VALUE, xml.getIntAttributeValue(XmlScanner.name("min")));
+        assertEquals(12, xml.getIntAttributeValue(XmlScanner.name("space")));
+        assertInvalidInt(xml, "over");
+        assertInvalidInt(xml, "text");
+        assertInvalidInt(xml, "empty");
+        assertInvalidInt(xml, "missing");
+    }
+
+    @Test
+    public void testSkipElement() throws Exception {
+        XmlScanner xml = scanner("<a><b><c x=\"/>\"><b/></c><d/></b><e/></a>");
+        xml.next();
+        xml.next();
+        assertEquals("b", xml.getLocalName());
+        xml.skipElement();
+        assertTrue(xml.isEndElement(XmlScanner.name("b")));
+        xml.next();
+        assertEquals("e", xml.getLocalName());
+        xml.skipElement();
+        assertTrue(xml.isEndElement(XmlScanner.name("e")));
+        xml.next();
+        assertTrue(xml.isEndElement(XmlScanner.name("a")));
+    }
+
+    @Test
+    public void testSkipToEndElement() throws Exception {
+        XmlScanner xml = scanner("<a><b><bb/><c/></b ><b/><d/></a>");
+        xml.next();
+        xml.next();
+        xml.skipToEndElement();
+        assertTrue(xml.isEndElement(XmlScanner.name("b")));
+        assertEquals(XMLStreamConstants.START_ELEMENT, xml.next());
+        xml.skipToEndElement();
+        assertTrue(xml.isEndElement(XmlScanner.name("b")));
+        xml.next();
+        assertEquals("d", xml.getLocalName());
+    }
+
+    @Test
+    public void testRegion() throws Exception {
+        XmlScanner xml = scanner("<a><b nr=\"1\"><c/></b><b nr=\"2\"/></a>");
+        xml.next();
+        xml.next();
+        int start = xml.getTagOffset();
+        xml.skipElement();
+        xml.next();
+        xml.skipElement();
+        XmlScanner region = xml.region(start, xml.getOffset());
+        region.next();
+        assertEquals(1, region.getIntAttributeValue(NR));
+        region.skipElement();
+        region.next();
+        assertEquals(2, region.getIntAttributeValue(NR));
+        region.next();
+        assertEquals(XMLStreamConstants.END_DOCUMENT, region.next());
+    }
+
+    @Test
+    public void testUnterminatedDocument() throws Exception {
+        XmlScanner xml = scanner("<a><b nr=\"1");
+        xml.next();
+        try {
+            xml.next();
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertThat(ex.getMessage(), containsString("byte offset"));
+        }
+    }
+
+    @Test
+    public void testMapFile() throws Exception {
+        XmlScanner xml = XmlScanner.map(TestIoUtil.getFile("jacoco.xml"));
+        int lines = 0;
+        while (xml.hasNext()) {
+            xml.next();
+            if (xml.isStartElement(LINE)) {
+                lines++;
+            }
+        }
+        assertTrue(lines > 0);
+    }
+
+    @Test
+    public void testIsSupported() throws Exception {
+        assertTrue(XmlScanner.isSupported(TestIoUtil.getFile("cobertura.xml")));
+        assertTrue(XmlScanner.isSupported(write("<a/>", "UTF-8")));
+        assertTrue(XmlScanner.isSupported(write("<?xml version='1.0' encoding='ISO-8859-1'?><a/>", "ISO-8859-1")));
+        assertFalse(XmlScanner.isSupported(write("<?xml version=\"1.0\" encoding=\"UTF-16\"?><a/>", "UTF-16")));
+        assertFalse(XmlScanner.isSupported(write("<?xml version=\"1.0\" encoding=\"EBCDIC-US\"?><a/>", "UTF-8")));
+    }
+
+    @Test
+    public void testDecodeDeclaredEncoding() throws Exception {
+        XmlScanner xml = XmlScanner.map(write("<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><a name=\"\u00e4\"/>", "ISO-8859-1"));
+        xml.next();
+        assertEquals("\u00e4", xml.getAttributeValue(XmlScanner.name("name")));
+    }
+
+    private static void assertInvalidInt(final XmlScanner xml, final String name) {
+        try {
+            xml.getIntAttributeValue(XmlScanner.name(name));
+            fail("Should have failed with ProcessingException");
+        } catch (ProcessingException ex) {
+            assertThat(ex.getMessage(), containsString(name));
+        }
+    }
+
+    private File write(final String content, final String charset) throws Exception {
+        File file = folder.newFile();
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes(charset));
+        } finally {
+            IOUtil.close(output);
+        }
+        return file;
+    }
+
+    private static XmlScanner scanner(final String content) {
+        return new XmlScanner(ByteBuffer.wrap(content.getBytes(Charset.forName("UTF-8"))), Charset.forName("UTF-8"));
+    }
+}